@@ -36,6 +36,9 @@ import java.io.ObjectOutputStream;
 import java.io.OutputStream;
 import java.io.Serializable;
 import java.net.URL;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
@@ -63,7 +66,8 @@ import java.util.Set;
  * <p>
  * If the states or transitions are manipulated manually, the {@link #restoreInvariant()}
  * and {@link #setDeterministic(boolean)} methods should be used afterwards to restore 
- * representation invariants that are assumed by the built-in automata operations.
+ * representation invariants that are assumed by the built-in automata operations
+ * (this also discards the reachable states cached by the automaton).
  * 
  * @author Anders M&oslash;ller &lt;<a href="mailto:amoeller@cs.au.dk">amoeller@cs.au.dk</a>&gt;
  */
@@ -100,8 +104,21 @@ public class Automaton implements Serializable, Cloneable {
 	 */
 	public static final int MINIMIZE_VALMARI = 3;
 	
-	/** Selects minimization algorithm (default: <code>MINIMIZE_HOPCROFT</code>). */
-	static int minimization = MINIMIZE_HOPCROFT;
+	/**
+	 * Minimize using Hopcroft's O(n log n) algorithm on flat integer arrays, 
+	 * where the refinement work is partly done in parallel on the fork-join pool.
+	 * Intended for large automata.
+	 * @see #setMinimization(int)
+	 */
+	public static final int MINIMIZE_PARALLEL = 4;
+	
+	/**
+	 * Minimize by subset construction followed by Hopcroft's algorithm on flat arrays, or by 
+	 * Brzozowski's algorithm if the deterministic automaton would be large,
+	 * see {@link MinimizationOperations#minimizeSubsetOrBrzozowski(Automaton)}.
+	 * @see #setMinimization(int)
+	 */
+	public static final int MINIMIZE_SUBSET_OR_BRZOZOWSKI = 5;
 	
 	/** Initial state of this automaton. */
 	State initial;
@@ -116,17 +133,54 @@ public class Automaton implements Serializable, Cloneable {
 	/** Hash code. Recomputed by {@link #minimize()}. */
 	int hash_code;
 	
+	/** Language fingerprint, null if not computed (see {@link #fingerprint()}). Cleared together with the hash code. */
+	transient String fingerprint;
+	
 	/** Singleton string. Null if not applicable. */
 	String singleton;
 	
-	/** Minimize always flag. */
-	static boolean minimize_always = false;
+	/** Set if this automaton has been frozen (see {@link #freeze()}). */
+	transient boolean frozen;
 	
-	/** Selects whether operations may modify the input automata (default: <code>false</code>). */
-	static boolean allow_mutation = false;
+	/** Set if the states of this automaton may be referenced by other automata. */
+	transient boolean shared;
 	
-	/** Caches the <code>isDebug</code> state. */
-	static Boolean is_debug = null;
+	/** 
+	 * Modification counter, incremented by {@link #clearHashCode()} and by the operations
+	 * that modify states without clearing the hash code. Manual modifications of states
+	 * are counted by {@link State#mod_count}.
+	 */
+	transient int mod_count;
+	
+	/** Cached reachable states, null if not computed (see {@link #getStateArray()}). */
+	transient StateCache cache;
+	
+	/**
+	 * Reachable states with sorted transitions and interval start points.
+	 * Valid as long as the initial state, the modification counters and the debug flag are unchanged.
+	 */
+	static final class StateCache {
+		
+		final State initial;
+		final int mod_count;
+		final int state_mod_count;
+		final boolean debug;
+		final State[] states;
+		final Transition[][] transitions;
+		final int[][] targets;
+		final char[] points;
+		
+		StateCache(State initial, int mod_count, int state_mod_count, boolean debug, State[] states, Transition[][] transitions, int[][] targets, char[] points) {
+			this.initial = initial;
+			this.mod_count = mod_count;
+			this.state_mod_count = state_mod_count;
+			this.debug = debug;
+			this.states = states;
+			this.transitions = transitions;
+			this.targets = targets;
+			this.points = points;
+		}
+	}
 	
 	/** 
 	 * Constructs a new automaton that accepts the empty language.
@@ -143,17 +197,17 @@ public class Automaton implements Serializable, Cloneable {
 	}
 	
 	boolean isDebug() {
-		if (is_debug == null)
-			is_debug = System.getProperty("dk.brics.automaton.debug") != null;
-		return is_debug;
+		return AutomatonContext.getCurrent().debug;
 	}
 	
 	/** 
 	 * Selects minimization algorithm (default: <code>MINIMIZE_HOPCROFT</code>). 
+	 * Affects the default context.
 	 * @param algorithm minimization algorithm
+	 * @see AutomatonContext
 	 */
 	static public void setMinimization(int algorithm) {
-		minimization = algorithm;
+		AutomatonContext.getDefault().minimization = algorithm;
 	}
 	
 	/**
@@ -161,10 +215,12 @@ public class Automaton implements Serializable, Cloneable {
 	 * If this flag is set, then {@link #minimize()} will automatically
 	 * be invoked after all operations that otherwise may produce non-minimal automata.
 	 * By default, the flag is not set.
+	 * Affects the default context.
 	 * @param flag if true, the flag is set
+	 * @see AutomatonContext
 	 */
 	static public void setMinimizeAlways(boolean flag) {
-		minimize_always = flag;
+		AutomatonContext.getDefault().minimize_always = flag;
 	}
 	
 	/**
@@ -172,12 +228,15 @@ public class Automaton implements Serializable, Cloneable {
 	 * If this flag is set, then all automata operations may modify automata given as input;
 	 * otherwise, operations will always leave input automata languages unmodified. 
 	 * By default, the flag is not set.
+	 * Affects the default context.
 	 * @param flag if true, the flag is set
 	 * @return previous value of the flag
+	 * @see AutomatonContext
 	 */
 	static public boolean setAllowMutate(boolean flag) {
-		boolean b = allow_mutation;
-		allow_mutation = flag;
+		AutomatonContext c = AutomatonContext.getDefault();
+		boolean b = c.allow_mutation;
+		c.allow_mutation = flag;
 		return b;
 	}
 	
@@ -189,11 +248,11 @@ public class Automaton implements Serializable, Cloneable {
 	 * @return current value of the flag
 	 */
 	static boolean getAllowMutate() {
-		return allow_mutation;
+		return AutomatonContext.getCurrent().allow_mutation;
 	}
 	
 	void checkMinimizeAlways() {
-		if (minimize_always)
+		if (AutomatonContext.getCurrent().minimize_always)
 			minimize();
 	}
 	
@@ -218,6 +277,9 @@ public class Automaton implements Serializable, Cloneable {
 	public void setInitialState(State s) {
 		initial = s;
 		singleton = null;
+		frozen = false;
+		shared = false;
+		clearHashCode();
 	}
 	
 	/** 
@@ -246,6 +308,7 @@ public class Automaton implements Serializable, Cloneable {
 	 */
 	public void setDeterministic(boolean deterministic) {
 		this.deterministic = deterministic;
+		mod_count++;
 	}
 	
 	/**
@@ -270,29 +333,47 @@ public class Automaton implements Serializable, Cloneable {
 	 * @return set of {@link State} objects
 	 */
 	public Set<State> getStates() {
-		expandSingleton();
-		Set<State> visited;
+		State[] states = getStateArray();
+		Set<State> set;
 		if (isDebug())
-			visited = new LinkedHashSet<State>();
+			set = new LinkedHashSet<State>(states.length * 2);
 		else
-			visited = new HashSet<State>();
-		LinkedList<State> worklist = new LinkedList<State>();
-		worklist.add(initial);
-		visited.add(initial);
-		while (worklist.size() > 0) {
-			State s = worklist.removeFirst();
-			Collection<Transition> tr;
-			if (isDebug())
-				tr = s.getSortedTransitions(false);
-			else
-				tr = s.transitions;
-			for (Transition t : tr)
-				if (!visited.contains(t.to)) {
-					visited.add(t.to);
-					worklist.add(t.to);
-				}
+			set = new HashSet<State>(states.length * 2);
+		for (State s : states)
+			set.add(s);
+		return set;
+	}
+	
+	/**
+	 * Returns the states that are reachable from the initial state, in breadth-first order.
+	 * The array is cached until the next modification of this automaton and must not be
+	 * modified by the caller.
+	 */
+	State[] getStateArray() {
+		expandSingleton();
+		boolean debug = isDebug();
+		StateCache c = cache;
+		int state_mod_count = State.mod_count.get();
+		if (c == null || c.initial != initial || c.mod_count != mod_count || c.state_mod_count != state_mod_count || c.debug != debug) {
+			HashSet<State> visited = new HashSet<State>();
+			ArrayList<State> states = new ArrayList<State>();
+			states.add(initial);
+			visited.add(initial);
+			for (int i = 0; i < states.size(); i++) {
+				State s = states.get(i);
+				Collection<Transition> tr;
+				if (debug)
+					tr = s.getSortedTransitions(false);
+				else
+					tr = s.transitions;
+				for (Transition t : tr)
+					if (visited.add(t.to))
+						states.add(t.to);
+			}
+			c = new StateCache(initial, mod_count, state_mod_count, debug, states.toArray(new State[states.size()]), null, null, null);
+			cache = c;
 		}
-		return visited;
+		return c.states;
 	}
 	
 	/** 
@@ -300,22 +381,10 @@ public class Automaton implements Serializable, Cloneable {
 	 * @return set of {@link State} objects
 	 */
 	public Set<State> getAcceptStates() {
-		expandSingleton();
 		HashSet<State> accepts = new HashSet<State>();
-		HashSet<State> visited = new HashSet<State>();
-		LinkedList<State> worklist = new LinkedList<State>();
-		worklist.add(initial);
-		visited.add(initial);
-		while (worklist.size() > 0) {
-			State s = worklist.removeFirst();
+		for (State s : getStateArray())
 			if (s.accept)
 				accepts.add(s);
-			for (Transition t : s.transitions)
-				if (!visited.contains(t.to)) {
-					visited.add(t.to);
-					worklist.add(t.to);
-				}
-		}
 		return accepts;
 	}
 	
@@ -334,6 +403,7 @@ public class Automaton implements Serializable, Cloneable {
 	 * Adds transitions to explicit crash state to ensure that transition function is total. 
 	 */
 	void totalize() {
+		unshare();
 		State s = new State();
 		s.transitions.add(new Transition(Character.MIN_VALUE, Character.MAX_VALUE, s));
 		for (State p : getStates()) {
@@ -347,6 +417,7 @@ public class Automaton implements Serializable, Cloneable {
 			if (maxi <= Character.MAX_VALUE)
 				p.transitions.add(new Transition((char)maxi, Character.MAX_VALUE, s));
 		}
+		mod_count++;
 	}
 	
 	/**
@@ -364,8 +435,9 @@ public class Automaton implements Serializable, Cloneable {
 	 * An automaton is "reduced" by combining overlapping and adjacent edge intervals with same destination. 
 	 */
 	public void reduce() {
-		if (isSingleton())
+		if (isSingleton() || frozen)
 			return;
+		unshare();
 		Set<State> states = getStates();
 		setStateNumbers(states);
 		for (State s : states) {
@@ -402,21 +474,30 @@ public class Automaton implements Serializable, Cloneable {
 	 * Returns sorted array of all interval start points. 
 	 */
 	char[] getStartPoints() {
-		Set<Character> pointset = new HashSet<>();
-		pointset.add(Character.MIN_VALUE);
-		for (State s : getStates()) {
-			for (Transition t : s.transitions) {
-				pointset.add(t.min);
-				if (t.max < Character.MAX_VALUE)
-					pointset.add((char)(t.max + 1));
-			}
+		State[] states = getStateArray();
+		StateCache c = cache;
+		if (c.points == null) {
+			int n = 1;
+			for (State s : states)
+				n += 2 * s.transitions.size();
+			char[] points = new char[n];
+			n = 1;
+			points[0] = Character.MIN_VALUE;
+			for (State s : states)
+				for (Transition t : s.transitions) {
+					points[n++] = t.min;
+					if (t.max < Character.MAX_VALUE)
+						points[n++] = (char)(t.max + 1);
+				}
+			Arrays.sort(points, 0, n);
+			int k = 1;
+			for (int i = 1; i < n; i++)
+				if (points[i] != points[k - 1])
+					points[k++] = points[i];
+			c = new StateCache(c.initial, c.mod_count, c.state_mod_count, c.debug, states, c.transitions, c.targets, Arrays.copyOf(points, k));
+			cache = c;
 		}
-		char[] points = new char[pointset.size()];
-		int n = 0;
-		for (Character m : pointset)
-			points[n++] = m;
-		Arrays.sort(points);
-		return points;
+		return c.points.clone();
 	}
 	
 	/** 
@@ -453,9 +534,12 @@ public class Automaton implements Serializable, Cloneable {
 	 * (A state is "dead" if no accept state is reachable from it.)
 	 */
 	public void removeDeadTransitions() {
+		if (frozen)
+			return;
 		clearHashCode();
 		if (isSingleton())
 			return;
+		unshare();
 		Set<State> states = getStates();
 		Set<State> live = getLiveStates(states);
 		for (State s : states) {
@@ -465,18 +549,61 @@ public class Automaton implements Serializable, Cloneable {
 				if (live.contains(t.to))
 					s.transitions.add(t);
 		}
+		mod_count++;
 		reduce();
 	}
 	
+	/**
+	 * Returns a sorted array of transitions for each reachable state, indexed by the
+	 * position of the state in {@link #getStateArray()} (the initial state has index 0).
+	 * The arrays are cached until the next modification of this automaton and must not
+	 * be modified by the caller. The state numbers are not set, so the states may be
+	 * shared with other automata.
+	 * @see #getSortedTransitionTargets()
+	 */
+	Transition[][] getSortedTransitions() {
+		return getSortedTransitionCache().transitions;
+	}
+	
+	/**
+	 * Returns the destination state indexes of the transitions returned by {@link #getSortedTransitions()}.
+	 */
+	int[][] getSortedTransitionTargets() {
+		return getSortedTransitionCache().targets;
+	}
+	
+	private StateCache getSortedTransitionCache() {
+		State[] states = getStateArray();
+		StateCache c = cache;
+		if (c.transitions == null) {
+			HashMap<State, Integer> index = new HashMap<State, Integer>(states.length * 2);
+			for (int i = 0; i < states.length; i++)
+				index.put(states[i], i);
+			Transition[][] transitions = new Transition[states.length][];
+			int[][] targets = new int[states.length][];
+			for (int i = 0; i < states.length; i++) {
+				Transition[] ts = states[i].getSortedTransitionArray(false);
+				int[] to = new int[ts.length];
+				for (int j = 0; j < ts.length; j++)
+					to[j] = index.get(ts[j].to);
+				transitions[i] = ts;
+				targets[i] = to;
+			}
+			c = new StateCache(c.initial, c.mod_count, c.state_mod_count, c.debug, states, transitions, targets, c.points);
+			cache = c;
+		}
+		return c;
+	}
+	
 	/** 
-	 * Returns a sorted array of transitions for each state (and sets state numbers). 
+	 * Returns an array of acceptance status for each reachable state, indexed as in {@link #getStateArray()}. 
 	 */
-	static Transition[][] getSortedTransitions(Set<State> states) {
-		setStateNumbers(states);
-		Transition[][] transitions = new Transition[states.size()][];
-		for (State s : states)
-			transitions[s.number] = s.getSortedTransitionArray(false);
-		return transitions;
+	boolean[] getAcceptArray() {
+		State[] states = getStateArray();
+		boolean[] accept = new boolean[states.length];
+		for (int i = 0; i < states.length; i++)
+			accept[i] = states[i].accept;
+		return accept;
 	}
 	
 	/** 
@@ -496,6 +623,7 @@ public class Automaton implements Serializable, Cloneable {
 			p.accept = true;
 			deterministic = true;
 			singleton = null;
+			mod_count++;
 		}
 	}
 	
@@ -505,7 +633,7 @@ public class Automaton implements Serializable, Cloneable {
 	public int getNumberOfStates() {
 		if (isSingleton())
 			return singleton.length() + 1;
-		return getStates().size();
+		return getStateArray().length;
 	}
 	
 	/**
@@ -516,7 +644,7 @@ public class Automaton implements Serializable, Cloneable {
 		if (isSingleton())
 			return singleton.length();
 		int c = 0;
-		for (State s : getStates())
+		for (State s : getStateArray())
 			c += s.transitions.size();
 		return c;
 	}
@@ -565,6 +693,75 @@ public class Automaton implements Serializable, Cloneable {
 	 */
 	void clearHashCode() {
 		hash_code = 0;
+		fingerprint = null;
+		mod_count++;
+	}
+	
+	/**
+	 * Returns a fingerprint of the language of this automaton.
+	 * The fingerprint is a 128-bit MD5 digest (as 32 hexadecimal digits) of the minimal
+	 * deterministic automaton, with the states numbered in breadth-first order following the
+	 * transitions sorted by interval. Automata with the same language have the same fingerprint,
+	 * and unlike {@link #hashCode()}, different fingerprints for different languages can be 
+	 * assumed in practice, so it can be used as key for sharing automata with the same language.
+	 * The fingerprint is stored until the automaton is modified.
+	 * Invoking this method may involve minimizing the automaton.
+	 */
+	public String fingerprint() {
+		String f = fingerprint;
+		if (f == null || hash_code == 0) {
+			if (hash_code == 0)
+				minimize();
+			Automaton a = isSingleton() ? cloneExpanded() : this;
+			Transition[][] transitions = a.getSortedTransitions();
+			int[][] targets = a.getSortedTransitionTargets();
+			State[] states = a.getStateArray();
+			int[] order = new int[states.length];
+			int[] number = new int[states.length];
+			Arrays.fill(number, -1);
+			number[0] = 0;
+			int n = 1;
+			for (int i = 0; i < n; i++)
+				for (int q : targets[order[i]])
+					if (number[q] == -1) {
+						number[q] = n;
+						order[n++] = q;
+					}
+			MessageDigest md;
+			try {
+				md = MessageDigest.getInstance("MD5");
+			} catch (NoSuchAlgorithmException e) {
+				throw new RuntimeException(e);
+			}
+			byte[] b = new byte[8];
+			for (int i = 0; i < n; i++) {
+				int p = order[i];
+				md.update((byte)(states[p].accept ? 1 : 0));
+				putInt(b, 0, transitions[p].length);
+				md.update(b, 0, 4);
+				for (int j = 0; j < transitions[p].length; j++) {
+					Transition t = transitions[p][j];
+					b[0] = (byte)(t.min >> 8);
+					b[1] = (byte)t.min;
+					b[2] = (byte)(t.max >> 8);
+					b[3] = (byte)t.max;
+					putInt(b, 4, number[targets[p][j]]);
+					md.update(b, 0, 8);
+				}
+			}
+			StringBuilder sb = new StringBuilder();
+			for (byte x : md.digest())
+				sb.append(Character.forDigit((x >> 4) & 0xf, 16)).append(Character.forDigit(x & 0xf, 16));
+			f = fingerprint = sb.toString();
+		}
+		return f;
+	}
+	
+	private static void putInt(byte[] b, int i, int v) {
+		b[i] = (byte)(v >> 24);
+		b[i + 1] = (byte)(v >> 16);
+		b[i + 2] = (byte)(v >> 8);
+		b[i + 3] = (byte)v;
 	}
 	
 	/**
@@ -579,11 +776,12 @@ public class Automaton implements Serializable, Cloneable {
 				Transition.appendCharString(c, b);
 			b.append("\n");
 		} else {
-			Set<State> states = getStates();
-			setStateNumbers(states);
-			b.append("initial state: ").append(initial.number).append("\n");
-			for (State s : states)
-				b.append(s.toString());
+			State[] states = getStateArray();
+			Transition[][] transitions = getSortedTransitions();
+			int[][] targets = getSortedTransitionTargets();
+			b.append("initial state: 0\n");
+			for (int i = 0; i < states.length; i++)
+				states[i].appendString(b, i, transitions[i], targets[i]);
 		}
 		return b.toString();
 	}
@@ -595,21 +793,23 @@ public class Automaton implements Serializable, Cloneable {
 	public String toDot() {
 		StringBuilder b = new StringBuilder("digraph Automaton {\n");
 		b.append("  rankdir = LR;\n");
-		Set<State> states = getStates();
-		setStateNumbers(states);
-		for (State s : states) {
-			b.append("  ").append(s.number);
+		State[] states = getStateArray();
+		Transition[][] transitions = getSortedTransitions();
+		int[][] targets = getSortedTransitionTargets();
+		for (int i = 0; i < states.length; i++) {
+			State s = states[i];
+			b.append("  ").append(i);
 			if (s.accept)
-				b.append(String.format(" [shape=doublecircle,label=\"%d\"];\n", s.number));
+				b.append(String.format(" [shape=doublecircle,label=\"%d\"];\n", i));
 			else
-				b.append(String.format(" [shape=circle,label=\"%d\"];\n", s.number));
+				b.append(String.format(" [shape=circle,label=\"%d\"];\n", i));
 			if (s == initial) {
 				b.append("  initial [shape=plaintext,label=\"\"];\n");
-				b.append("  initial -> ").append(s.number).append("\n");
+				b.append("  initial -> ").append(i).append("\n");
 			}
-			for (Transition t : s.transitions) {
-				b.append("  ").append(s.number);
-				t.appendDot(b);
+			for (int j = 0; j < transitions[i].length; j++) {
+				b.append("  ").append(i);
+				transitions[i][j].appendDot(b, targets[i][j]);
 			}
 		}
 		return b.append("}\n").toString();
@@ -626,9 +826,10 @@ public class Automaton implements Serializable, Cloneable {
 
 	/**
 	 * Returns a clone of this automaton unless <code>allow_mutation</code> is set, expands if singleton.
+	 * Automata with shared states are always cloned.
 	 */
 	Automaton cloneExpandedIfRequired() {
-		if (allow_mutation) {
+		if (getAllowMutate() && !shared) {
 			expandSingleton();
 			return this;
 		} else
@@ -642,6 +843,9 @@ public class Automaton implements Serializable, Cloneable {
 	public Automaton clone() {
 		try {
 			Automaton a = (Automaton)super.clone();
+			a.frozen = false;
+			a.shared = false;
+			a.cache = null;
 			if (!isSingleton()) {
 				HashMap<State, State> m = new HashMap<State, State>();
 				Set<State> states = getStates();
@@ -663,15 +867,93 @@ public class Automaton implements Serializable, Cloneable {
 	}
 	
 	/**
-	 * Returns a clone of this automaton, or this automaton itself if <code>allow_mutation</code> flag is set. 
+	 * Returns a clone of this automaton, or this automaton itself if <code>allow_mutation</code> flag is set
+	 * and the states are not shared. 
 	 */
 	Automaton cloneIfRequired() {
-		if (allow_mutation)
+		if (getAllowMutate() && !shared)
 			return this;
 		else
 			return clone();
 	}
 	
+	/**
+	 * Returns a copy of this automaton that references the same states if they are shared,
+	 * otherwise the same as {@link #cloneExpandedIfRequired()}.
+	 * The states of the result must not be modified, only its initial state may be replaced.
+	 */
+	Automaton cloneExpandedUnlessShared() {
+		if (!shared)
+			return cloneExpandedIfRequired();
+		try {
+			Automaton a = (Automaton)super.clone();
+			a.frozen = false;
+			a.expandSingleton();
+			return a;
+		} catch (CloneNotSupportedException e) {
+			throw new RuntimeException(e);
+		}
+	}
+	
+	/**
+	 * Replaces the states of this automaton by a private copy if they are shared.
+	 * Must be invoked before the states are modified in place.
+	 */
+	void unshare() {
+		if (shared) {
+			if (!isSingleton())
+				initial = clone().initial;
+			mod_count++;
+			frozen = false;
+			shared = false;
+		}
+	}
+	
+	/**
+	 * Freezes this automaton.
+	 * The automaton is minimized, and from then on its states are never modified by automata
+	 * operations, also when the allow mutate flag is set. Operations such as
+	 * {@link #union(Automaton)}, {@link #optional()} and {@link #concatenate(Automaton)} (as
+	 * the second operand) reference the states of a frozen automaton instead of cloning them,
+	 * and an operation that needs to modify them in place works on a private copy.
+	 * Operations that only read the automaton, such as {@link #run(String)}, {@link #toString()} 
+	 * and the construction of a {@link RunAutomaton}, number the states locally instead of 
+	 * in the states themselves. A frozen automaton can therefore be shared between threads. 
+	 * Its states must not be modified manually.
+	 * @return this automaton
+	 */
+	public Automaton freeze() {
+		if (!frozen) {
+			expandSingleton();
+			if (hash_code == 0) // not known to be minimal
+				MinimizationOperations.minimize(this);
+			frozen = true;
+			shared = true;
+		}
+		return this;
+	}
+	
+	/**
+	 * Freezes this automaton without minimizing it, so its states are shared by the automata
+	 * operations like those of a frozen automaton. Unlike {@link #freeze()}, the automaton 
+	 * may be nondeterministic and is not minimized by {@link MinimizationOperations#minimize(Automaton)}.
+	 */
+	void freezeUnminimized() {
+		if (!frozen) {
+			expandSingleton();
+			frozen = true;
+			shared = true;
+		}
+	}
+	
+	/**
+	 * Returns true if this automaton has been frozen.
+	 * @see #freeze()
+	 */
+	public boolean isFrozen() {
+		return frozen;
+	}
+	
 	/** 
 	 * Retrieves a serialized <code>Automaton</code> located by a URL.
 	 * @param url URL of serialized automaton
@@ -887,14 +1169,42 @@ public class Automaton implements Serializable, Cloneable {
 	public Automaton intersection(Automaton a) {
 		return BasicOperations.intersection(this, a);
 	}
-	
+
+	/**
+	 * See {@link BasicOperations#intersection(Collection)}.
+	 */
+	static public Automaton intersection(Collection<Automaton> l) {
+		return BasicOperations.intersection(l);
+	}
+
+	/**
+	 * See {@link BasicOperations#intersects(Automaton, Automaton)}.
+	 */
+	public boolean intersects(Automaton a) {
+		return BasicOperations.intersects(this, a);
+	}
+
+	/**
+	 * See {@link BasicOperations#getIntersectionExample(Automaton, Automaton)}.
+	 */
+	public String getIntersectionExample(Automaton a) {
+		return BasicOperations.getIntersectionExample(this, a);
+	}
+
 	/**
 	 * See {@link BasicOperations#subsetOf(Automaton, Automaton)}.
 	 */
 	public boolean subsetOf(Automaton a) {
 		return BasicOperations.subsetOf(this, a);
 	}
-	
+
+	/**
+	 * See {@link BasicOperations#getSubsetCounterexample(Automaton, Automaton)}.
+	 */
+	public String getSubsetCounterexample(Automaton a) {
+		return BasicOperations.getSubsetCounterexample(this, a);
+	}
+
 	/**
 	 * See {@link BasicOperations#union(Automaton, Automaton)}.
 	 */
@@ -909,6 +1219,13 @@ public class Automaton implements Serializable, Cloneable {
 		return BasicOperations.union(l);
 	}
 
+	/**
+	 * See {@link BasicOperations#minimalUnion(Collection)}.
+	 */
+	static public Automaton minimalUnion(Collection<Automaton> l) {
+		return BasicOperations.minimalUnion(l);
+	}
+
 	/**
 	 * See {@link BasicOperations#determinize(Automaton)}.
 	 */
@@ -919,7 +1236,7 @@ public class Automaton implements Serializable, Cloneable {
 	/** 
 	 * See {@link BasicOperations#addEpsilons(Automaton, Collection)}.
 	 */
-	public void addEpsilons(Collection<StatePair> pairs) {
+	public void addEpsilons(Collection<StatePair> pairs) throws IllegalArgumentException {
 		BasicOperations.addEpsilons(this, pairs);
 	}
 	
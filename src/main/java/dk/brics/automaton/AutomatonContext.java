@@ -0,0 +1,301 @@
+/*
+ * dk.brics.automaton
+ * 
+ * Copyright (c) 2001-2017 Anders Moeller
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package dk.brics.automaton;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Supplier;
+
+/**
+ * Configuration of automata operations.
+ * <p>
+ * Operations read their configuration (minimization algorithm, minimize always flag,
+ * allow mutate flag, debug flag, DFA state budget, subexpression cache, minimization policy
+ * and compilation pool) from the context of the calling thread.
+ * A context is made current for the duration of {@link #call(Supplier)} or {@link #run(Runnable)};
+ * otherwise, the default context is used, which is the one modified by the static methods
+ * {@link Automaton#setMinimization(int)}, {@link Automaton#setMinimizeAlways(boolean)},
+ * {@link Automaton#setAllowMutate(boolean)} and {@link BasicOperations#setDefaultDfaBudget(long)}.
+ * <p>
+ * Different threads may use different contexts at the same time. A context should not be
+ * modified while it is in use by other threads.
+ */
+final public class AutomatonContext {
+
+	private static final AutomatonContext default_context = new AutomatonContext();
+
+	private static final ThreadLocal<AutomatonContext> current = new ThreadLocal<AutomatonContext>();
+
+	int minimization = Automaton.MINIMIZE_HOPCROFT;
+
+	boolean minimize_always = false;
+
+	boolean allow_mutation = false;
+
+	boolean debug = System.getProperty("dk.brics.automaton.debug") != null;
+
+	long dfa_budget = 10_000;
+
+	SubexpressionCache subexpression_cache = null;
+
+	MinimizationPolicy minimization_policy = new MinimizationPolicy();
+
+	ForkJoinPool compilation_pool = null;
+
+	boolean timed = false;
+
+	long deadline; // System.nanoTime() value, if timed
+
+	/**
+	 * Constructs a new context with the default settings of the library
+	 * (independently of changes made to the default context).
+	 */
+	public AutomatonContext() {}
+
+	/**
+	 * Returns the default context.
+	 */
+	public static AutomatonContext getDefault() {
+		return default_context;
+	}
+
+	/**
+	 * Returns the context of the calling thread, the default context if none is set.
+	 */
+	public static AutomatonContext getCurrent() {
+		AutomatonContext c = current.get();
+		return c != null ? c : default_context;
+	}
+
+	/**
+	 * Returns a new context with the same settings as this context.
+	 */
+	public AutomatonContext copy() {
+		AutomatonContext c = new AutomatonContext();
+		c.minimization = minimization;
+		c.minimize_always = minimize_always;
+		c.allow_mutation = allow_mutation;
+		c.debug = debug;
+		c.dfa_budget = dfa_budget;
+		c.subexpression_cache = subexpression_cache;
+		c.minimization_policy = minimization_policy;
+		c.compilation_pool = compilation_pool;
+		c.timed = timed;
+		c.deadline = deadline;
+		return c;
+	}
+
+	/**
+	 * Runs the given action with this context as the context of the calling thread.
+	 * @return the result of the action
+	 */
+	public <T> T call(Supplier<T> action) {
+		AutomatonContext previous = current.get();
+		current.set(this);
+		try {
+			return action.get();
+		} finally {
+			if (previous == null)
+				current.remove();
+			else
+				current.set(previous);
+		}
+	}
+
+	/**
+	 * Runs the given action with this context as the context of the calling thread.
+	 */
+	public void run(Runnable action) {
+		call(() -> {
+			action.run();
+			return null;
+		});
+	}
+
+	/**
+	 * Selects minimization algorithm (default: <code>MINIMIZE_HOPCROFT</code>).
+	 * @param algorithm minimization algorithm
+	 * @return this context
+	 * @see Automaton#setMinimization(int)
+	 */
+	public AutomatonContext setMinimization(int algorithm) {
+		minimization = algorithm;
+		return this;
+	}
+
+	/**
+	 * Returns the minimization algorithm.
+	 */
+	public int getMinimization() {
+		return minimization;
+	}
+
+	/**
+	 * Sets or resets minimize always flag (default: not set).
+	 * @return this context
+	 * @see Automaton#setMinimizeAlways(boolean)
+	 */
+	public AutomatonContext setMinimizeAlways(boolean flag) {
+		minimize_always = flag;
+		return this;
+	}
+
+	/**
+	 * Returns the minimize always flag.
+	 */
+	public boolean getMinimizeAlways() {
+		return minimize_always;
+	}
+
+	/**
+	 * Sets or resets allow mutate flag (default: not set).
+	 * @return this context
+	 * @see Automaton#setAllowMutate(boolean)
+	 */
+	public AutomatonContext setAllowMutate(boolean flag) {
+		allow_mutation = flag;
+		return this;
+	}
+
+	/**
+	 * Returns the allow mutate flag.
+	 */
+	public boolean getAllowMutate() {
+		return allow_mutation;
+	}
+
+	/**
+	 * Sets or resets debug flag.
+	 * If this flag is set, states and transitions are visited in a deterministic order.
+	 * By default, the flag is set if the system property <code>dk.brics.automaton.debug</code> is defined.
+	 * @return this context
+	 */
+	public AutomatonContext setDebug(boolean flag) {
+		debug = flag;
+		return this;
+	}
+
+	/**
+	 * Returns the debug flag.
+	 */
+	public boolean isDebug() {
+		return debug;
+	}
+
+	/**
+	 * Sets the maximal number of states that determinization may construct (default: 10000).
+	 * @return this context
+	 * @see DfaBudgetExceededException
+	 */
+	public AutomatonContext setDfaBudget(long budget) {
+		dfa_budget = budget;
+		return this;
+	}
+
+	/**
+	 * Returns the DFA state budget.
+	 */
+	public long getDfaBudget() {
+		return dfa_budget;
+	}
+
+	/**
+	 * Sets the cache of subexpression automata used by {@link RegExp#toAutomaton()} (default: none).
+	 * The same cache may be set in contexts used by different threads.
+	 * @param cache the cache, <code>null</code> for none
+	 * @return this context
+	 */
+	public AutomatonContext setSubexpressionCache(SubexpressionCache cache) {
+		subexpression_cache = cache;
+		return this;
+	}
+
+	/**
+	 * Returns the cache of subexpression automata, <code>null</code> if none.
+	 */
+	public SubexpressionCache getSubexpressionCache() {
+		return subexpression_cache;
+	}
+
+	/**
+	 * Sets the policy deciding which intermediate automata are minimized by {@link RegExp#toAutomaton()}
+	 * (default: a {@link MinimizationPolicy} with the default thresholds).
+	 * @param policy the policy
+	 * @return this context
+	 */
+	public AutomatonContext setMinimizationPolicy(MinimizationPolicy policy) {
+		minimization_policy = policy;
+		return this;
+	}
+
+	/**
+	 * Returns the minimization policy.
+	 */
+	public MinimizationPolicy getMinimizationPolicy() {
+		return minimization_policy;
+	}
+
+	/**
+	 * Sets the pool used by {@link RegExp#toAutomaton()} for constructing the automata of the 
+	 * operands of unions and intersections in parallel (default: none).
+	 * In parallel compilation, the operands are combined pairwise in a balanced tree.
+	 * @param pool the pool, <code>null</code> for sequential compilation
+	 * @return this context
+	 */
+	public AutomatonContext setCompilationPool(ForkJoinPool pool) {
+		compilation_pool = pool;
+		return this;
+	}
+
+	/**
+	 * Returns the pool for parallel compilation, <code>null</code> if none.
+	 */
+	public ForkJoinPool getCompilationPool() {
+		return compilation_pool;
+	}
+
+	/**
+	 * Sets the deadline of constructions in this context, as a {@link System#nanoTime()} value.
+	 */
+	AutomatonContext setDeadline(long deadline) {
+		timed = true;
+		this.deadline = deadline;
+		return this;
+	}
+
+	/**
+	 * Throws an exception if the deadline of this context has passed.
+	 * @throws TimeBudgetExceededException if the deadline has passed
+	 */
+	void checkDeadline() {
+		if (timed && System.nanoTime() - deadline >= 0)
+			throw new TimeBudgetExceededException();
+	}
+}
@@ -58,6 +58,12 @@ public class AutomatonMatcher implements MatchResult {
 	 * <br>
 	 * This also updates the values for the {@code start}, {@code end}, and
 	 * {@code group} methods.
+	 * <br>
+	 * If the automaton is start anchored, only a match at the beginning of the input
+	 * is found, with a single run of the automaton. If it is end anchored, only matches 
+	 * that end at the end of the input are found; the leftmost start of such a match is 
+	 * found with a single backward run of the automaton of the reversed language (see
+	 * {@link RunAutomaton#RunAutomaton(Automaton, boolean, boolean, boolean)}).
 	 *
 	 * @return {@code true} if there is a matching subsequence.
 	 */
@@ -81,23 +87,31 @@ public class AutomatonMatcher implements MatchResult {
 				}
 		}
 
+		final boolean start_anchored = automaton.isStartAnchored();
+		final boolean end_anchored = automaton.isEndAnchored();
+		if (start_anchored && begin > 0) {
+			setMatch(-2, -2);
+			return false;
+		}
+		int l = getChars().length();
+		if (end_anchored && automaton.reverse != null)
+			return findEndAnchored(begin, l);
 		int match_start;
 		int match_end;
-		if (automaton.isAccept(automaton.getInitialState())) {
+		if (automaton.isAccept(automaton.getInitialState()) && (!end_anchored || begin == l)) {
 			match_start = begin;
 			match_end = begin;
 		} else {
 			match_start = -1;
 			match_end = -1;
 		}
-		int l = getChars().length();
 		while (begin < l) {
 			int p = automaton.getInitialState();
 			for (int i = begin; i < l; i++) {
 				final int new_state = automaton.step(p, getChars().charAt(i));
 				if (new_state == -1) {
 				    break;
-				} else if (automaton.isAccept(new_state)) {
+				} else if (automaton.isAccept(new_state) && (!end_anchored || i + 1 == l)) {
 				    // found a match from begin to (i+1)
 				    match_start = begin;
 				    match_end=(i+1);
@@ -108,8 +122,15 @@ public class AutomatonMatcher implements MatchResult {
 				setMatch(match_start, match_end);
 				return true;
 			}
+			if (start_anchored)
+				break;
 			begin += 1;
 		}
+		if (match_start == -1 && begin == l && end_anchored && automaton.isAccept(automaton.getInitialState())) {
+			// empty match at the end
+			match_start = l;
+			match_end = l;
+		}
 		if (match_start != -1) {
 			setMatch(match_start, match_end);
 			return true;
@@ -119,6 +140,30 @@ public class AutomatonMatcher implements MatchResult {
 		}
 	}
 
+	/**
+	 * Finds the leftmost match from <code>begin</code> that ends at the end of the input, 
+	 * by running the automaton of the reversed language from the end of the input.
+	 */
+	private boolean findEndAnchored(int begin, int l) {
+		final RunAutomaton reverse = automaton.reverse;
+		int p = reverse.getInitialState();
+		int match_start = reverse.isAccept(p) ? l : -1;
+		for (int i = l - 1; i >= begin; i--) {
+			p = reverse.step(p, getChars().charAt(i));
+			if (p == -1)
+				break;
+			if (reverse.isAccept(p))
+				match_start = i;
+		}
+		if (match_start != -1) {
+			setMatch(match_start, l);
+			return true;
+		} else {
+			setMatch(-2, -2);
+			return false;
+		}
+	}
+
 	private void setMatch(final int matchStart, final int matchEnd) throws IllegalArgumentException {
 		if (matchStart > matchEnd) {
 			throw new IllegalArgumentException("Start must be less than or equal to end: " + matchStart + ", " + matchEnd);
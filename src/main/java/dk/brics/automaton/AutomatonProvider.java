@@ -38,6 +38,8 @@ public interface AutomatonProvider {
 	
 	/**
 	 * Returns automaton of the given name.
+	 * A frozen automaton (see {@link Automaton#freeze()}) is used as is by
+	 * {@link RegExp#toAutomaton(AutomatonProvider)}, other automata are cloned.
 	 * @param name automaton name
 	 * @return automaton
 	 * @throws IOException if errors occur
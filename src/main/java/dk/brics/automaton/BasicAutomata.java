@@ -135,9 +135,9 @@ final public class BasicAutomata {
 	private static State anyOfRightLength(String x, int n) {
 		State s = new State();
 		if (x.length() == n)
-			s.setAccept(true);
+			s.accept = true;
 		else
-			s.addTransition(new Transition('0', '9', anyOfRightLength(x, n + 1)));
+			s.transitions.add(new Transition('0', '9', anyOfRightLength(x, n + 1)));
 		return s;
 	}
 	
@@ -148,14 +148,14 @@ final public class BasicAutomata {
 	private static State atLeast(String x, int n, Collection<State> initials, boolean zeros) {
 		State s = new State();
 		if (x.length() == n)
-			s.setAccept(true);
+			s.accept = true;
 		else {
 			if (zeros)
 				initials.add(s);
 			char c = x.charAt(n);
-			s.addTransition(new Transition(c, atLeast(x, n + 1, initials, zeros && c == '0')));
+			s.transitions.add(new Transition(c, atLeast(x, n + 1, initials, zeros && c == '0')));
 			if (c < '9')
-				s.addTransition(new Transition((char)(c + 1), '9', anyOfRightLength(x, n + 1)));
+				s.transitions.add(new Transition((char)(c + 1), '9', anyOfRightLength(x, n + 1)));
 		}
 		return s;
 	}
@@ -167,12 +167,12 @@ final public class BasicAutomata {
 	private static State atMost(String x, int n) {
 		State s = new State();
 		if (x.length() == n)
-			s.setAccept(true);
+			s.accept = true;
 		else {
 			char c = x.charAt(n);
-			s.addTransition(new Transition(c, atMost(x, (char)n + 1)));
+			s.transitions.add(new Transition(c, atMost(x, (char)n + 1)));
 			if (c > '0')
-				s.addTransition(new Transition('0', (char)(c - 1), anyOfRightLength(x, n + 1)));
+				s.transitions.add(new Transition('0', (char)(c - 1), anyOfRightLength(x, n + 1)));
 		}
 		return s;
 	}
@@ -185,19 +185,19 @@ final public class BasicAutomata {
 	private static State between(String x, String y, int n, Collection<State> initials, boolean zeros) {
 		State s = new State();
 		if (x.length() == n)
-			s.setAccept(true);
+			s.accept = true;
 		else {
 			if (zeros)
 				initials.add(s);
 			char cx = x.charAt(n);
 			char cy = y.charAt(n);
 			if (cx == cy)
-				s.addTransition(new Transition(cx, between(x, y, n + 1, initials, zeros && cx == '0')));
+				s.transitions.add(new Transition(cx, between(x, y, n + 1, initials, zeros && cx == '0')));
 			else { // cx<cy
-				s.addTransition(new Transition(cx, atLeast(x, n + 1, initials, zeros && cx == '0')));
-				s.addTransition(new Transition(cy, atMost(y, n + 1)));
+				s.transitions.add(new Transition(cx, atLeast(x, n + 1, initials, zeros && cx == '0')));
+				s.transitions.add(new Transition(cy, atMost(y, n + 1)));
 				if (cx + 1 < cy)
-					s.addTransition(new Transition((char)(cx + 1), (char)(cy - 1), anyOfRightLength(x, n + 1)));
+					s.transitions.add(new Transition((char)(cx + 1), (char)(cy - 1), anyOfRightLength(x, n + 1)));
 			}
 		}
 		return s;
@@ -243,7 +243,7 @@ final public class BasicAutomata {
 				if (a.initial != p)
 					pairs.add(new StatePair(a.initial, p));
 			a.addEpsilons(pairs);
-			a.initial.addTransition(new Transition('0', a.initial));
+			a.initial.transitions.add(new Transition('0', a.initial));
 			a.deterministic = false;
 		} else
 			a.deterministic = true;
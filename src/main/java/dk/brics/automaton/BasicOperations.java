@@ -30,24 +30,36 @@
 package dk.brics.automaton;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.BitSet;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeSet;
 
 /**
  * Basic automata operations.
  */
 final public class BasicOperations {
 
-	private static long defaultDfaBudget = 10_000;
-
+	/**
+	 * Sets the maximal number of states that determinization may construct
+	 * in the default context (default: 10000).
+	 * @see AutomatonContext#setDfaBudget(long)
+	 */
 	public static void setDefaultDfaBudget(long budget) {
-		defaultDfaBudget = budget;
+		AutomatonContext.getDefault().dfa_budget = budget;
+	}
+
+	static long getDefaultDfaBudget() {
+		return AutomatonContext.getCurrent().dfa_budget;
 	}
 
 	private BasicOperations() {}
@@ -66,15 +78,16 @@ final public class BasicOperations {
 		boolean deterministic = a1.isSingleton() && a2.isDeterministic();
 		if (a1 == a2) {
 			a1 = a1.cloneExpanded();
-			a2 = a2.cloneExpanded();
+			a2 = a2.shared ? a2.cloneExpandedUnlessShared() : a2.cloneExpanded();
 		} else {
 			a1 = a1.cloneExpandedIfRequired();
-			a2 = a2.cloneExpandedIfRequired();
+			a2 = a2.cloneExpandedUnlessShared();
 		}
 		for (State s : a1.getAcceptStates()) {
 			s.accept = false;
 			s.addEpsilon(a2.initial);
 		}
+		a1.shared |= a2.shared;
 		a1.deterministic = deterministic;
 		a1.clearHashCode();
 		a1.checkMinimizeAlways();
@@ -115,27 +128,28 @@ final public class BasicOperations {
 			else
 				b = b.cloneExpandedIfRequired();
 			Set<State> ac = b.getAcceptStates();
-			boolean first = true;
-			for (Automaton a : l)
-				if (first)
-					first = false;
-				else {
-					if (a.isEmptyString())
-						continue;
-					Automaton aa = a;
-					if (has_aliases)
-						aa = aa.cloneExpanded();
-					else
-						aa = aa.cloneExpandedIfRequired();
-					Set<State> ns = aa.getAcceptStates();
-					for (State s : ac) {
-						s.accept = false;
-						s.addEpsilon(aa.initial);
-						if (s.accept)
-							ns.add(s);
-					}
-					ac = ns;
+			for (int i = 1; i < l.size(); i++) {
+				Automaton a = l.get(i);
+				if (a.isEmptyString())
+					continue;
+				Automaton aa = a;
+				if (i == l.size() - 1 && aa.shared) {
+					// the states of the last automaton are not modified
+					aa = aa.cloneExpandedUnlessShared();
+					b.shared = true;
+				} else if (has_aliases)
+					aa = aa.cloneExpanded();
+				else
+					aa = aa.cloneExpandedIfRequired();
+				Set<State> ns = aa.getAcceptStates();
+				for (State s : ac) {
+					s.accept = false;
+					s.addEpsilon(aa.initial);
+					if (s.accept)
+						ns.add(s);
 				}
+				ac = ns;
+			}
 			b.deterministic = false;
 			b.clearHashCode();
 			b.checkMinimizeAlways();
@@ -150,7 +164,7 @@ final public class BasicOperations {
 	 * Complexity: linear in number of states.
 	 */
 	static public Automaton optional(Automaton a) {
-		a = a.cloneExpandedIfRequired();
+		a = a.cloneExpandedUnlessShared();
 		State s = new State();
 		s.addEpsilon(a.initial);
 		s.accept = true;
@@ -191,6 +205,9 @@ final public class BasicOperations {
 	static public Automaton repeat(Automaton a, int min) {
 		if (min == 0)
 			return repeat(a);
+		char[] intervals = getCharClass(a);
+		if (intervals != null)
+			return repeatCharClass(intervals, min, -1);
 		List<Automaton> as = new ArrayList<Automaton>();
 		while (min-- > 0)
 			as.add(a);
@@ -202,6 +219,9 @@ final public class BasicOperations {
 	 * Returns an automaton that accepts between <code>min</code> and
 	 * <code>max</code> (including both) concatenated repetitions of the
 	 * language of the given automaton.
+	 * If the language only contains strings of length one, the minimal deterministic 
+	 * automaton is built directly as a chain of <code>max</code> + 1 states, which must 
+	 * be within the DFA state budget of the current {@link AutomatonContext}.
 	 * <p>
 	 * Complexity: linear in number of states and in <code>min</code> and
 	 * <code>max</code>.
@@ -209,6 +229,9 @@ final public class BasicOperations {
 	static public Automaton repeat(Automaton a, int min, int max) {
 		if (min > max)
 			return BasicAutomata.makeEmpty();
+		char[] intervals = getCharClass(a);
+		if (intervals != null)
+			return repeatCharClass(intervals, min, max);
 		max -= min;
 		a.expandSingleton();
 		Automaton b;
@@ -223,7 +246,9 @@ final public class BasicOperations {
 			b = concatenate(as);
 		}
 		if (max > 0) {
-			Automaton d = a.clone();
+			b.unshare();
+			Automaton d = a.shared ? a.cloneExpandedUnlessShared() : a.clone();
+			b.shared |= d.shared;
 			while (--max > 0) {
 				Automaton c = a.clone();
 				for (State p : c.getAcceptStates())
@@ -239,6 +264,67 @@ final public class BasicOperations {
 		return b;
 	}
 
+	/**
+	 * Returns the character intervals of the given automaton if it only accepts
+	 * strings of length one, null otherwise.
+	 * The intervals are sorted and disjoint, stored as consecutive min/max pairs.
+	 */
+	private static char[] getCharClass(Automaton a) {
+		if (a.isSingleton())
+			return a.singleton.length() == 1 ? new char[] {a.singleton.charAt(0), a.singleton.charAt(0)} : null;
+		if (a.initial.accept)
+			return null;
+		Transition[] ts = a.initial.transitions.toArray(new Transition[a.initial.transitions.size()]);
+		for (Transition t : ts)
+			if (!t.to.accept || !t.to.transitions.isEmpty())
+				return null;
+		Arrays.sort(ts, new TransitionComparator(false));
+		char[] intervals = new char[2 * ts.length];
+		int n = 0;
+		for (Transition t : ts) {
+			if (n > 0 && t.min <= intervals[n - 1] + 1) {
+				if (t.max > intervals[n - 1])
+					intervals[n - 1] = t.max;
+			} else {
+				intervals[n++] = t.min;
+				intervals[n++] = t.max;
+			}
+		}
+		return Arrays.copyOf(intervals, n);
+	}
+
+	/**
+	 * Returns the minimal deterministic automaton that accepts between <code>min</code>
+	 * and <code>max</code> characters from the given intervals, or at least <code>min</code>
+	 * characters if <code>max</code> is negative.
+	 * The automaton is a chain of states, so no copies of the operand are made.
+	 * @exception DfaBudgetExceededException if the chain has more states than the DFA state budget
+	 */
+	private static Automaton repeatCharClass(char[] intervals, int min, int max) {
+		int n = max < 0 ? min : max;
+		long budget = AutomatonContext.getCurrent().dfa_budget;
+		if (n + 1L > budget)
+			throw new DfaBudgetExceededException(budget);
+		Automaton a = new Automaton();
+		State s = a.initial;
+		for (int i = 0; i < n; i++) {
+			s.accept = i >= min;
+			State q = new State();
+			for (int j = 0; j < intervals.length; j += 2)
+				s.transitions.add(new Transition(intervals[j], intervals[j + 1], q));
+			s = q;
+		}
+		s.accept = true;
+		if (max < 0)
+			for (int j = 0; j < intervals.length; j += 2)
+				s.transitions.add(new Transition(intervals[j], intervals[j + 1], s));
+		a.deterministic = true;
+		if (intervals.length == 0)
+			a.removeDeadTransitions();
+		a.checkMinimizeAlways();
+		return a;
+	}
+
 	/**
 	 * Returns a (deterministic) automaton that accepts the complement of the
 	 * language of the given automaton.
@@ -299,35 +385,44 @@ final public class BasicOperations {
 		}
 		if (a1 == a2)
 			return a1.cloneIfRequired();
-		Transition[][] transitions1 = Automaton.getSortedTransitions(a1.getStates());
-		Transition[][] transitions2 = Automaton.getSortedTransitions(a2.getStates());
+		Transition[][] transitions1 = a1.getSortedTransitions();
+		Transition[][] transitions2 = a2.getSortedTransitions();
+		int[][] targets1 = a1.getSortedTransitionTargets();
+		int[][] targets2 = a2.getSortedTransitionTargets();
+		boolean[] accept1 = a1.getAcceptArray();
+		boolean[] accept2 = a2.getAcceptArray();
 		Automaton c = new Automaton();
-		LinkedList<StatePair> worklist = new LinkedList<StatePair>();
-		HashMap<StatePair, StatePair> newstates = new HashMap<StatePair, StatePair>();
-		StatePair p = new StatePair(c.initial, a1.initial, a2.initial);
-		worklist.add(p);
-		newstates.put(p, p);
-		while (worklist.size() > 0) {
-			p = worklist.removeFirst();
-			p.s.accept = p.s1.accept && p.s2.accept;
-			Transition[] t1 = transitions1[p.s1.number];
-			Transition[] t2 = transitions2[p.s2.number];
+		ArrayList<State> newstates = new ArrayList<State>();
+		LongIntMap ids = new LongIntMap();
+		IntQueue worklist = new IntQueue();
+		newstates.add(c.initial);
+		ids.putIfAbsent(LongIntMap.pack(0, 0), 0);
+		worklist.add(0);
+		worklist.add(0);
+		while (!worklist.isEmpty()) {
+			int s1 = worklist.removeFirst();
+			int s2 = worklist.removeFirst();
+			State s = newstates.get(ids.get(LongIntMap.pack(s1, s2)));
+			s.accept = accept1[s1] && accept2[s2];
+			Transition[] t1 = transitions1[s1];
+			Transition[] t2 = transitions2[s2];
 			for (int n1 = 0, b2 = 0; n1 < t1.length; n1++) {
 				while (b2 < t2.length && t2[b2].max < t1[n1].min)
 					b2++;
 				for (int n2 = b2; n2 < t2.length && t1[n1].max >= t2[n2].min; n2++) 
 					if (t2[n2].max >= t1[n1].min) {
-						StatePair q = new StatePair(t1[n1].to, t2[n2].to);
-						StatePair r = newstates.get(q);
-						if (r == null) {
-							q.s = new State();
-							worklist.add(q);
-							newstates.put(q, q);
-							r = q;
+						int q1 = targets1[s1][n1];
+						int q2 = targets2[s2][n2];
+						int r = ids.putIfAbsent(LongIntMap.pack(q1, q2), newstates.size());
+						if (r == -1) {
+							r = newstates.size();
+							newstates.add(new State());
+							worklist.add(q1);
+							worklist.add(q2);
 						}
 						char min = t1[n1].min > t2[n2].min ? t1[n1].min : t2[n2].min;
 						char max = t1[n1].max < t2[n2].max ? t1[n1].max : t2[n2].max;
-						p.s.transitions.add(new Transition(min, max, r.s));
+						s.transitions.add(new Transition(min, max, newstates.get(r)));
 					}
 			}
 		}
@@ -336,7 +431,187 @@ final public class BasicOperations {
 		c.checkMinimizeAlways();
 		return c;
 	}
-		
+
+	/**
+	 * Returns an automaton that accepts the intersection of the languages of the given automata.
+	 * The product of all the automata is constructed directly over tuples of states,
+	 * without building the intermediate pairwise products.
+	 * A tuple is not explored further as soon as one of its components has no
+	 * matching transition.
+	 * Never modifies the input automata languages.
+	 * <p>
+	 * Complexity: polynomial in number of states (the product of the numbers of states).
+	 */
+	public static Automaton intersection(Collection<Automaton> l) {
+		List<Automaton> as = new ArrayList<Automaton>();
+		Set<Automaton> seen = Collections.newSetFromMap(new IdentityHashMap<Automaton, Boolean>());
+		for (Automaton a : l) {
+			if (a.isEmpty())
+				return BasicAutomata.makeEmpty();
+			if (seen.add(a))
+				as.add(a);
+		}
+		if (as.isEmpty())
+			return BasicAutomata.makeAnyString();
+		for (Automaton a : as)
+			if (a.isSingleton()) {
+				for (Automaton b : as)
+					if (b != a && !b.run(a.singleton))
+						return BasicAutomata.makeEmpty();
+				return a.cloneIfRequired();
+			}
+		if (as.size() == 1)
+			return as.get(0).cloneIfRequired();
+		int k = as.size();
+		Transition[][][] transitions = new Transition[k][][];
+		int[][][] targets = new int[k][][];
+		boolean[][] accepts = new boolean[k][];
+		boolean deterministic = true;
+		for (int i = 0; i < k; i++) {
+			Automaton a = as.get(i);
+			transitions[i] = a.getSortedTransitions();
+			targets[i] = a.getSortedTransitionTargets();
+			accepts[i] = a.getAcceptArray();
+			deterministic &= a.deterministic;
+		}
+		Automaton c = new Automaton();
+		LinkedList<StateTuple> worklist = new LinkedList<StateTuple>();
+		HashMap<StateTuple, StateTuple> newstates = new HashMap<StateTuple, StateTuple>();
+		StateTuple p = new StateTuple(c.initial, new int[k]);
+		worklist.add(p);
+		newstates.put(p, p);
+		int[] to = new int[k];
+		while (worklist.size() > 0) {
+			p = worklist.removeFirst();
+			boolean accept = true;
+			for (int i = 0; i < k && accept; i++)
+				accept = accepts[i][p.q[i]];
+			p.s.accept = accept;
+			addProductTransitions(p, 0, Character.MIN_VALUE, Character.MAX_VALUE, to, transitions, targets, worklist, newstates);
+		}
+		c.deterministic = deterministic;
+		c.removeDeadTransitions();
+		c.checkMinimizeAlways();
+		return c;
+	}
+
+	/**
+	 * Adds the transitions of the product state <code>p</code> for the interval
+	 * <code>[min,max]</code>, given the destinations of the first <code>i</code> components.
+	 */
+	private static void addProductTransitions(StateTuple p, int i, char min, char max, int[] to, Transition[][][] transitions,
+			int[][][] targets, LinkedList<StateTuple> worklist, HashMap<StateTuple, StateTuple> newstates) {
+		if (i == to.length) {
+			StateTuple q = new StateTuple(null, to.clone());
+			StateTuple r = newstates.get(q);
+			if (r == null) {
+				q.s = new State();
+				worklist.add(q);
+				newstates.put(q, q);
+				r = q;
+			}
+			p.s.transitions.add(new Transition(min, max, r.s));
+			return;
+		}
+		Transition[] ts = transitions[i][p.q[i]];
+		for (int j = 0; j < ts.length; j++) {
+			Transition t = ts[j];
+			if (t.min > max)
+				break;
+			if (t.max >= min) {
+				to[i] = targets[i][p.q[i]][j];
+				addProductTransitions(p, i + 1, t.min > min ? t.min : min, t.max < max ? t.max : max,
+						to, transitions, targets, worklist, newstates);
+			}
+		}
+	}
+
+	/**
+	 * Returns true if the languages of the given automata have a nonempty intersection.
+	 * Same as <code>getIntersectionExample(a1, a2) != null</code>.
+	 * Never modifies the input automata languages.
+	 * <p>
+	 * Complexity: quadratic in number of states.
+	 */
+	public static boolean intersects(Automaton a1, Automaton a2) {
+		return getIntersectionExample(a1, a2) != null;
+	}
+
+	/**
+	 * Returns a shortest string that is accepted by both of the given automata.
+	 * Unlike {@link #intersection(Automaton, Automaton)}, the product automaton is not
+	 * constructed; pairs of states are explored breadth-first until a pair of accept
+	 * states is reached.
+	 * Never modifies the input automata languages.
+	 * <p>
+	 * Complexity: quadratic in number of states.
+	 * @return the string, null if the intersection is empty
+	 */
+	public static String getIntersectionExample(Automaton a1, Automaton a2) {
+		if (a1.isSingleton())
+			return a2.run(a1.singleton) ? a1.singleton : null;
+		if (a2.isSingleton())
+			return a1.run(a2.singleton) ? a2.singleton : null;
+		if (a1 == a2)
+			return getShortestExample(a1.initial, true);
+		Transition[][] transitions1 = a1.getSortedTransitions();
+		Transition[][] transitions2 = a2.getSortedTransitions();
+		int[][] targets1 = a1.getSortedTransitionTargets();
+		int[][] targets2 = a2.getSortedTransitionTargets();
+		boolean[] accept1 = a1.getAcceptArray();
+		boolean[] accept2 = a2.getAcceptArray();
+		if (accept1[0] && accept2[0])
+			return "";
+		// visited pairs are numbered in the order they are found; 'prev' and 'label' record the path
+		LongIntMap visited = new LongIntMap();
+		IntQueue worklist = new IntQueue();
+		int[] prev = new int[16];
+		char[] label = new char[16];
+		visited.putIfAbsent(LongIntMap.pack(0, 0), 0);
+		prev[0] = -1;
+		worklist.add(0);
+		worklist.add(0);
+		worklist.add(0);
+		while (!worklist.isEmpty()) {
+			int p = worklist.removeFirst();
+			int s1 = worklist.removeFirst();
+			int s2 = worklist.removeFirst();
+			Transition[] t1 = transitions1[s1];
+			Transition[] t2 = transitions2[s2];
+			for (int n1 = 0, b2 = 0; n1 < t1.length; n1++) {
+				while (b2 < t2.length && t2[b2].max < t1[n1].min)
+					b2++;
+				for (int n2 = b2; n2 < t2.length && t1[n1].max >= t2[n2].min; n2++)
+					if (t2[n2].max >= t1[n1].min) {
+						int q1 = targets1[s1][n1];
+						int q2 = targets2[s2][n2];
+						int q = visited.size();
+						if (visited.putIfAbsent(LongIntMap.pack(q1, q2), q) == -1) {
+							if (q == prev.length) {
+								prev = Arrays.copyOf(prev, q * 2);
+								label = Arrays.copyOf(label, q * 2);
+							}
+							prev[q] = p;
+							label[q] = t1[n1].min > t2[n2].min ? t1[n1].min : t2[n2].min;
+							if (accept1[q1] && accept2[q2]) {
+								int len = 0;
+								for (int r = q; prev[r] != -1; r = prev[r])
+									len++;
+								char[] w = new char[len];
+								for (int r = q; prev[r] != -1; r = prev[r])
+									w[--len] = label[r];
+								return new String(w);
+							}
+							worklist.add(q);
+							worklist.add(q1);
+							worklist.add(q2);
+						}
+					}
+			}
+		}
+		return null;
+	}
+
 	/**
 	 * Returns true if the language of <code>a1</code> is a subset of the
 	 * language of <code>a2</code>. 
@@ -354,19 +629,24 @@ final public class BasicOperations {
 			return a2.run(a1.singleton);
 		}
 		a2.determinize();
-		Transition[][] transitions1 = Automaton.getSortedTransitions(a1.getStates());
-		Transition[][] transitions2 = Automaton.getSortedTransitions(a2.getStates());
-		LinkedList<StatePair> worklist = new LinkedList<StatePair>();
-		HashSet<StatePair> visited = new HashSet<StatePair>();
-		StatePair p = new StatePair(a1.initial, a2.initial);
-		worklist.add(p);
-		visited.add(p);
-		while (worklist.size() > 0) {
-			p = worklist.removeFirst();
-			if (p.s1.accept && !p.s2.accept)
+		Transition[][] transitions1 = a1.getSortedTransitions();
+		Transition[][] transitions2 = a2.getSortedTransitions();
+		int[][] targets1 = a1.getSortedTransitionTargets();
+		int[][] targets2 = a2.getSortedTransitionTargets();
+		boolean[] accept1 = a1.getAcceptArray();
+		boolean[] accept2 = a2.getAcceptArray();
+		IntQueue worklist = new IntQueue();
+		LongIntMap visited = new LongIntMap();
+		worklist.add(0);
+		worklist.add(0);
+		visited.putIfAbsent(LongIntMap.pack(0, 0), 0);
+		while (!worklist.isEmpty()) {
+			int s1 = worklist.removeFirst();
+			int s2 = worklist.removeFirst();
+			if (accept1[s1] && !accept2[s2])
 				return false;
-			Transition[] t1 = transitions1[p.s1.number];
-			Transition[] t2 = transitions2[p.s2.number];
+			Transition[] t1 = transitions1[s1];
+			Transition[] t2 = transitions2[s2];
 			for (int n1 = 0, b2 = 0; n1 < t1.length; n1++) {
 				while (b2 < t2.length && t2[b2].max < t1[n1].min)
 					b2++;
@@ -380,10 +660,11 @@ final public class BasicOperations {
 						min1 = Character.MAX_VALUE;
 						max1 = Character.MIN_VALUE;
 					}
-					StatePair q = new StatePair(t1[n1].to, t2[n2].to);
-					if (!visited.contains(q)) {
-						worklist.add(q);
-						visited.add(q);
+					int q1 = targets1[s1][n1];
+					int q2 = targets2[s2][n2];
+					if (visited.putIfAbsent(LongIntMap.pack(q1, q2), 0) == -1) {
+						worklist.add(q1);
+						worklist.add(q2);
 					}
 				}
 				if (min1 <= max1)
@@ -392,7 +673,294 @@ final public class BasicOperations {
 		}
 		return true;
 	}
-	
+
+	/**
+	 * Returns a string that is accepted by <code>a1</code> but not by <code>a2</code>.
+	 * If no such string exists (that is, the language of <code>a1</code> is a subset
+	 * of the language of <code>a2</code>), null is returned.
+	 * Unlike {@link #subsetOf(Automaton, Automaton)}, <code>a2</code> is not determinized;
+	 * the subset construction is explored on the fly using the antichain algorithm,
+	 * pruned by a simulation relation on the states of the two automata.
+	 * Never modifies the input automata.
+	 * <p>
+	 * Complexity: exponential in number of states of <code>a2</code> (in the worst case).
+	 */
+	public static String getSubsetCounterexample(Automaton a1, Automaton a2) {
+		if (a1 == a2)
+			return null;
+		if (a1.isSingleton())
+			return a2.run(a1.singleton) ? null : a1.singleton;
+		if (a2.isSingleton())
+			a2 = a2.cloneExpanded();
+		// states are identified by their index in the state arrays (the initial state has index 0),
+		// so the state numbers are not touched and the operands may share states
+		State[] states1 = a1.getStateArray();
+		State[] states2 = a2.getStateArray();
+		int n1 = states1.length;
+		int n2 = states2.length;
+		Transition[][] transitions = new Transition[n1 + n2][];
+		int[][] targets = new int[n1 + n2][];
+		System.arraycopy(a1.getSortedTransitions(), 0, transitions, 0, n1);
+		System.arraycopy(a2.getSortedTransitions(), 0, transitions, n1, n2);
+		System.arraycopy(a1.getSortedTransitionTargets(), 0, targets, 0, n1);
+		System.arraycopy(a2.getSortedTransitionTargets(), 0, targets, n1, n2);
+		// simulation preorder on the disjoint union of the two automata
+		BitSet[] sim = computeSimulation(states1, states2, transitions, targets);
+		BitSet[] up1 = new BitSet[n1]; // a1 states simulating a1 state
+		BitSet[] cross = new BitSet[n1]; // a2 states simulating a1 state
+		BitSet[] up2 = new BitSet[n2]; // a2 states simulating a2 state
+		for (int i = 0; i < n1; i++) {
+			up1[i] = sim[i].get(0, n1);
+			cross[i] = sim[i].get(n1, n1 + n2);
+		}
+		for (int j = 0; j < n2; j++)
+			up2[j] = sim[n1 + j].get(n1, n1 + n2);
+		// antichain exploration of pairs (a1 state, set of a2 states)
+		List<List<AntichainConfiguration>> antichain = new ArrayList<List<AntichainConfiguration>>();
+		for (int i = 0; i < n1; i++)
+			antichain.add(new ArrayList<AntichainConfiguration>());
+		LinkedList<AntichainConfiguration> worklist = new LinkedList<AntichainConfiguration>();
+		BitSet init = new BitSet(n2);
+		init.set(0);
+		addAntichainConfiguration(new AntichainConfiguration(null, 0, init, '\u0000'),
+				antichain, worklist, up1, cross, up2);
+		while (!worklist.isEmpty()) {
+			AntichainConfiguration c = worklist.removeFirst();
+			if (c.removed)
+				continue;
+			if (states1[c.p].accept) {
+				boolean accepted = false;
+				for (int j = c.s.nextSetBit(0); j >= 0; j = c.s.nextSetBit(j + 1))
+					if (states2[j].accept) {
+						accepted = true;
+						break;
+					}
+				if (!accepted)
+					return c.getString();
+			}
+			for (int k = 0; k < transitions[c.p].length; k++) {
+				Transition t1 = transitions[c.p][k];
+				// split the interval of t1 at the interval boundaries of the a2 successors
+				TreeSet<Character> points = new TreeSet<Character>();
+				points.add(t1.min);
+				for (int j = c.s.nextSetBit(0); j >= 0; j = c.s.nextSetBit(j + 1))
+					for (Transition t2 : transitions[n1 + j]) {
+						if (t2.min > t1.min && t2.min <= t1.max)
+							points.add(t2.min);
+						if (t2.max >= t1.min && t2.max < t1.max)
+							points.add((char)(t2.max + 1));
+					}
+				for (char x : points) {
+					BitSet next = new BitSet(n2);
+					for (int j = c.s.nextSetBit(0); j >= 0; j = c.s.nextSetBit(j + 1)) {
+						Transition[] ts2 = transitions[n1 + j];
+						for (int l = 0; l < ts2.length; l++) {
+							if (ts2[l].min > x)
+								break;
+							if (ts2[l].max >= x)
+								next.set(targets[n1 + j][l]);
+						}
+					}
+					addAntichainConfiguration(new AntichainConfiguration(c, targets[c.p][k], next, x),
+							antichain, worklist, up1, cross, up2);
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Adds the given configuration to the antichain and the worklist, unless it is
+	 * subsumed by a configuration that is already present. Configurations that are
+	 * subsumed by the new one are removed.
+	 */
+	private static void addAntichainConfiguration(AntichainConfiguration c, List<List<AntichainConfiguration>> antichain,
+			LinkedList<AntichainConfiguration> worklist, BitSet[] up1, BitSet[] cross, BitSet[] up2) {
+		// a1 state simulated by some a2 state cannot lead to a counterexample
+		if (cross[c.p].intersects(c.s))
+			return;
+		// keep only the maximal a2 states wrt. simulation
+		for (int j = c.s.nextSetBit(0); j >= 0; j = c.s.nextSetBit(j + 1))
+			for (int k = up2[j].nextSetBit(0); k >= 0; k = up2[j].nextSetBit(k + 1))
+				if (k != j && c.s.get(k) && (k < j || !up2[k].get(j))) {
+					c.s.clear(j);
+					break;
+				}
+		for (int p = up1[c.p].nextSetBit(0); p >= 0; p = up1[c.p].nextSetBit(p + 1))
+			for (AntichainConfiguration d : antichain.get(p))
+				if (isSubsumed(d.s, c.s, up2))
+					return;
+		for (int p = 0; p < antichain.size(); p++)
+			if (up1[p].get(c.p))
+				for (Iterator<AntichainConfiguration> i = antichain.get(p).iterator(); i.hasNext();) {
+					AntichainConfiguration d = i.next();
+					if (isSubsumed(c.s, d.s, up2)) {
+						d.removed = true;
+						i.remove();
+					}
+				}
+		antichain.get(c.p).add(c);
+		worklist.add(c);
+	}
+
+	/**
+	 * Returns true if every state in <code>s1</code> is simulated by some state in <code>s2</code>.
+	 */
+	private static boolean isSubsumed(BitSet s1, BitSet s2, BitSet[] up2) {
+		for (int j = s1.nextSetBit(0); j >= 0; j = s1.nextSetBit(j + 1))
+			if (!up2[j].intersects(s2))
+				return false;
+		return true;
+	}
+
+	/**
+	 * Computes the maximal forward simulation preorder on the disjoint union of two automata.
+	 * States of the first automaton are indexed from 0, states of the second automaton follow;
+	 * <code>targets</code> holds the destination indexes of <code>transitions</code> within each automaton.
+	 * If <code>q</code> simulates <code>p</code>, then the language of <code>p</code> is a subset of the language of <code>q</code>.
+	 * After one pass over all pairs, only the pairs of predecessors of a removed pair are checked again.
+	 * For large automata, only the identity relation is computed.
+	 * @return array where entry <code>p</code> is the set of states that simulate <code>p</code>
+	 */
+	private static BitSet[] computeSimulation(State[] states1, State[] states2, Transition[][] transitions, int[][] targets) {
+		int n1 = states1.length;
+		int n = n1 + states2.length;
+		BitSet[] sim = new BitSet[n];
+		boolean[] accept = new boolean[n];
+		int[][] to = new int[n][];
+		for (int p = 0; p < n; p++) {
+			accept[p] = p < n1 ? states1[p].accept : states2[p - n1].accept;
+			to[p] = new int[transitions[p].length];
+			for (int k = 0; k < to[p].length; k++)
+				to[p][k] = p < n1 ? targets[p][k] : n1 + targets[p][k];
+			sim[p] = new BitSet(n);
+			sim[p].set(p);
+		}
+		if (n > MAX_SIMULATION_STATES)
+			return sim;
+		for (int p = 0; p < n; p++)
+			for (int q = 0; q < n; q++)
+				if (!accept[p] || accept[q])
+					sim[p].set(q);
+		// predecessors of each state, so that only the pairs depending on a removed pair are checked again
+		int[] npred = new int[n];
+		for (int p = 0; p < n; p++)
+			for (int r : to[p])
+				npred[r]++;
+		int[][] pred = new int[n][];
+		for (int p = 0; p < n; p++)
+			pred[p] = new int[npred[p]];
+		for (int p = 0; p < n; p++)
+			for (int r : to[p])
+				pred[r][--npred[r]] = p;
+		BitSet[] pending = new BitSet[n];
+		for (int p = 0; p < n; p++)
+			pending[p] = new BitSet(n);
+		IntQueue worklist = new IntQueue();
+		for (int p = 0; p < n; p++)
+			for (int q = sim[p].nextSetBit(0); q >= 0; q = sim[p].nextSetBit(q + 1))
+				if (q != p && !simulates(p, q, transitions, to, sim))
+					removeSimulation(p, q, sim, pred, pending, worklist);
+		while (!worklist.isEmpty()) {
+			int p = worklist.removeFirst();
+			int q = worklist.removeFirst();
+			pending[p].clear(q);
+			if (sim[p].get(q) && !simulates(p, q, transitions, to, sim))
+				removeSimulation(p, q, sim, pred, pending, worklist);
+		}
+		return sim;
+	}
+
+	/**
+	 * Removes <code>q</code> from the states simulating <code>p</code> and adds the pairs of 
+	 * predecessors that may no longer be in the simulation relation to the worklist.
+	 */
+	private static void removeSimulation(int p, int q, BitSet[] sim, int[][] pred, BitSet[] pending, IntQueue worklist) {
+		sim[p].clear(q);
+		for (int p1 : pred[p])
+			for (int q1 : pred[q])
+				if (p1 != q1 && sim[p1].get(q1) && !pending[p1].get(q1)) {
+					pending[p1].set(q1);
+					worklist.add(p1);
+					worklist.add(q1);
+				}
+	}
+
+	/**
+	 * Checks whether every transition from <code>p</code> is matched by transitions
+	 * from <code>q</code> that lead to states simulating its destination.
+	 */
+	private static boolean simulates(int p, int q, Transition[][] transitions, int[][] to, BitSet[] sim) {
+		Transition[] tq = transitions[q];
+		for (int k = 0; k < transitions[p].length; k++) {
+			Transition tp = transitions[p][k];
+			int need = tp.min;
+			for (int l = 0; l < tq.length && need <= tp.max; l++) {
+				if (tq[l].min > need)
+					break;
+				if (tq[l].max >= need && sim[to[p][k]].get(to[q][l]))
+					need = tq[l].max + 1;
+			}
+			if (need <= tp.max)
+				return false;
+		}
+		return true;
+	}
+
+	/** Largest number of states for which simulation is computed by {@link #getSubsetCounterexample(Automaton, Automaton)}. */
+	private static final int MAX_SIMULATION_STATES = 2000;
+
+	static class AntichainConfiguration {
+
+		AntichainConfiguration prev;
+		int p;
+		BitSet s;
+		char min;
+		boolean removed;
+
+		AntichainConfiguration(AntichainConfiguration prev, int p, BitSet s, char min) {
+			this.prev = prev;
+			this.p = p;
+			this.s = s;
+			this.min = min;
+		}
+
+		String getString() {
+			StringBuilder b = new StringBuilder();
+			for (AntichainConfiguration c = this; c.prev != null; c = c.prev)
+				b.append(c.min);
+			StringBuilder b2 = new StringBuilder();
+			for (int j = b.length() - 1; j >= 0; j--)
+				b2.append(b.charAt(j));
+			return b2.toString();
+		}
+	}
+
+	static class StateTuple {
+
+		State s;
+		int[] q;
+		int hash;
+
+		StateTuple(State s, int[] q) {
+			this.s = s;
+			this.q = q;
+			hash = Arrays.hashCode(q);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (obj instanceof StateTuple)
+				return Arrays.equals(q, ((StateTuple)obj).q);
+			return false;
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+	}
+
 	/**
 	 * Returns an automaton that accepts the union of the languages of the given automata.
 	 * <p>
@@ -401,12 +969,13 @@ final public class BasicOperations {
 	public static Automaton union(Automaton a1, Automaton a2) {
 		if ((a1.isSingleton() && a2.isSingleton() && a1.singleton.equals(a2.singleton)) || a1 == a2)
 			return a1.cloneIfRequired();
-		a1 = a1.cloneExpandedIfRequired();
-		a2 = a2.cloneExpandedIfRequired();
+		a1 = a1.cloneExpandedUnlessShared();
+		a2 = a2.cloneExpandedUnlessShared();
 		State s = new State();
 		s.addEpsilon(a1.initial);
 		s.addEpsilon(a2.initial);
 		a1.initial = s;
+		a1.shared |= a2.shared;
 		a1.deterministic = false;
 		a1.clearHashCode();
 		a1.checkMinimizeAlways();
@@ -423,12 +992,16 @@ final public class BasicOperations {
 		for (Automaton a : l)
 			ids.add(System.identityHashCode(a));
 		boolean has_aliases = ids.size() != l.size();
+		boolean shared = false;
 		State s = new State();
 		for (Automaton b : l) {
 			if (b.isEmpty())
 				continue;
 			Automaton bb = b;
-			if (has_aliases)
+			if (bb.shared) {
+				bb = bb.cloneExpandedUnlessShared();
+				shared = true;
+			} else if (has_aliases)
 				bb = bb.cloneExpanded();
 			else
 				bb = bb.cloneExpandedIfRequired();
@@ -436,12 +1009,136 @@ final public class BasicOperations {
 		}
 		Automaton a = new Automaton();
 		a.initial = s;
+		a.shared = shared;
 		a.deterministic = false;
 		a.clearHashCode();
 		a.checkMinimizeAlways();
 		return a;
 	}
 
+	/**
+	 * Returns a minimal deterministic automaton that accepts the union of the
+	 * languages of the given automata.
+	 * Unlike <code>union(l)</code> followed by <code>determinize()</code> and
+	 * <code>minimize()</code>, no nondeterministic automaton is built. The components are
+	 * determinized and minimized separately, and the union is constructed directly as a
+	 * product over the component states. Only the components that are still alive are
+	 * recorded in a product state. Large collections are combined in batches of
+	 * {@link #UNION_BATCH_SIZE} that are minimized before being combined further.
+	 * Never modifies the input automata languages.
+	 * <p>
+	 * Complexity: exponential in number of states.
+	 * @throws DfaBudgetExceededException if a product has more states than the DFA budget of the current context
+	 */
+	public static Automaton minimalUnion(Collection<Automaton> l) {
+		List<Automaton> as = new ArrayList<Automaton>();
+		Set<Automaton> seen = Collections.newSetFromMap(new IdentityHashMap<Automaton, Boolean>());
+		for (Automaton a : l)
+			if (!a.isEmpty() && seen.add(a)) {
+				a = a.cloneExpanded();
+				a.minimize();
+				as.add(a);
+			}
+		while (as.size() > UNION_BATCH_SIZE) {
+			List<Automaton> bs = new ArrayList<Automaton>();
+			for (int i = 0; i < as.size(); i += UNION_BATCH_SIZE)
+				bs.add(unionProduct(as.subList(i, Math.min(i + UNION_BATCH_SIZE, as.size()))));
+			as = bs;
+		}
+		return unionProduct(as);
+	}
+
+	/**
+	 * Maximal number of components combined in one product by {@link #minimalUnion(Collection)}.
+	 */
+	static final int UNION_BATCH_SIZE = 64;
+
+	/**
+	 * Constructs the minimal union of the given minimal deterministic automata.
+	 * A product state is a {@link StateTuple} of alternating component indexes and state numbers.
+	 */
+	private static Automaton unionProduct(List<Automaton> as) {
+		if (as.isEmpty())
+			return BasicAutomata.makeEmpty();
+		if (as.size() == 1)
+			return as.get(0);
+		AutomatonContext context = AutomatonContext.getCurrent();
+		long budget = context.dfa_budget;
+		int k = as.size();
+		Transition[][][] transitions = new Transition[k][][];
+		boolean[][] accept = new boolean[k][];
+		int[][][] targets = new int[k][][];
+		for (int i = 0; i < k; i++) {
+			Automaton a = as.get(i);
+			transitions[i] = a.getSortedTransitions();
+			targets[i] = a.getSortedTransitionTargets();
+			accept[i] = a.getAcceptArray();
+		}
+		Automaton c = new Automaton();
+		LinkedList<StateTuple> worklist = new LinkedList<StateTuple>();
+		HashMap<StateTuple, StateTuple> newstates = new HashMap<StateTuple, StateTuple>();
+		int[] init = new int[2 * k];
+		for (int i = 0; i < k; i++)
+			init[2 * i] = i;
+		StateTuple p = new StateTuple(c.initial, init);
+		worklist.add(p);
+		newstates.put(p, p);
+		int[] points = new int[16];
+		int[] next = new int[k];
+		int[] to = new int[2 * k];
+		while (worklist.size() > 0) {
+			p = worklist.removeFirst();
+			int live = p.q.length / 2;
+			int npoints = 0;
+			for (int j = 0; j < live; j++) {
+				Transition[] ts = transitions[p.q[2 * j]][p.q[2 * j + 1]];
+				if (accept[p.q[2 * j]][p.q[2 * j + 1]])
+					p.s.accept = true;
+				if (npoints + 2 * ts.length > points.length)
+					points = Arrays.copyOf(points, 2 * (npoints + 2 * ts.length));
+				for (Transition t : ts) {
+					points[npoints++] = t.min;
+					points[npoints++] = t.max + 1;
+				}
+				next[j] = 0;
+			}
+			Arrays.sort(points, 0, npoints);
+			for (int n = 0; n + 1 < npoints; n++) {
+				int min = points[n];
+				if (min == points[n + 1])
+					continue;
+				int m = 0;
+				for (int j = 0; j < live; j++) {
+					Transition[] ts = transitions[p.q[2 * j]][p.q[2 * j + 1]];
+					while (next[j] < ts.length && ts[next[j]].max < min)
+						next[j]++;
+					if (next[j] < ts.length && ts[next[j]].min <= min) {
+						to[m++] = p.q[2 * j];
+						to[m++] = targets[p.q[2 * j]][p.q[2 * j + 1]][next[j]];
+					}
+				}
+				if (m == 0)
+					continue;
+				StateTuple q = new StateTuple(null, Arrays.copyOf(to, m));
+				StateTuple r = newstates.get(q);
+				if (r == null) {
+					q.s = new State();
+					worklist.add(q);
+					newstates.put(q, q);
+					if (newstates.size() > budget)
+						throw new DfaBudgetExceededException(budget);
+					context.checkDeadline();
+					r = q;
+				}
+				p.s.transitions.add(new Transition((char)min, (char)(points[n + 1] - 1), r.s));
+			}
+		}
+		c.deterministic = true;
+		c.removeDeadTransitions();
+		MinimizationOperations.minimize(c);
+		return c;
+	}
+
 	/**
 	 * Determinizes the given automaton.
 	 * <p>
@@ -456,19 +1153,21 @@ final public class BasicOperations {
 	}
 
 	static void determinize(Automaton a, Set<State> initialset) {
-		determinize(a, initialset, defaultDfaBudget);
+		determinize(a, initialset, getDefaultDfaBudget());
 	}
 
 	/** 
 	 * Determinizes the given automaton using the given set of initial states. 
 	 */
 	static void determinize(Automaton a, Set<State> initialset, long stateBudget) {
+		AutomatonContext context = AutomatonContext.getCurrent();
 		char[] points = a.getStartPoints();
 		// subset construction
 		LinkedList<Set<State>> worklist = new LinkedList<Set<State>>();
 		Map<Set<State>, State> newstate = new HashMap<Set<State>, State>();
 		worklist.add(initialset);
 		a.initial = new State();
+		a.shared = false;
 		newstate.put(initialset, a.initial);
 		while (worklist.size() > 0) {
 			Set<State> s = worklist.removeFirst();
@@ -504,6 +1203,7 @@ final public class BasicOperations {
 			if (newstate.size() > stateBudget) {
 				throw new DfaBudgetExceededException(stateBudget);
 			}
+			context.checkDeadline();
 		}
 		a.deterministic = true;
 		a.removeDeadTransitions();
@@ -513,10 +1213,16 @@ final public class BasicOperations {
 	 * Adds epsilon transitions to the given automaton.
 	 * This method adds extra character interval transitions that are equivalent to the given
 	 * set of epsilon transitions. 
+	 * The states of the automaton are modified in place, so it must not be frozen or share
+	 * states with other automata (see {@link Automaton#freeze()}); for such an automaton, 
+	 * take the pairs from the states of a clone instead.
 	 * @param pairs collection of {@link StatePair} objects representing pairs of source/destination states 
 	 *        where epsilon transitions should be added
+	 * @exception IllegalArgumentException if the automaton is frozen or shares states with other automata
 	 */
-	public static void addEpsilons(Automaton a, Collection<StatePair> pairs) {
+	public static void addEpsilons(Automaton a, Collection<StatePair> pairs) throws IllegalArgumentException {
+		if (a.frozen || a.shared)
+			throw new IllegalArgumentException("automaton states are shared");
 		a.expandSingleton();
 		HashMap<State, HashSet<State>> forward = new HashMap<State, HashSet<State>>();
 		HashMap<State, HashSet<State>> back = new HashMap<State, HashSet<State>>();
@@ -636,7 +1342,7 @@ final public class BasicOperations {
 				if (best == null || p.length() < best.length() || (p.length() == best.length() && p.compareTo(best) < 0))
 					best = p;
 			} else 
-				for (Transition t : q.getTransitions()) {
+				for (Transition t : q.transitions) {
 					String tp = path.get(t.to);
 					String np = p + t.min;
 					if (tp == null || (tp.length() == np.length() && np.compareTo(tp) < 0)) {
@@ -669,38 +1375,38 @@ final public class BasicOperations {
 			}
 			return p.accept;
 		} else {
-			Set<State> states = a.getStates();
-			Automaton.setStateNumbers(states);
-			LinkedList<State> pp = new LinkedList<State>();
-			LinkedList<State> pp_other = new LinkedList<State>();
-			BitSet bb = new BitSet(states.size());
-			BitSet bb_other = new BitSet(states.size());
-			pp.add(a.initial);
-			ArrayList<State> dest = new ArrayList<State>();
+			// states are identified by their index in the state array, as they may be shared with other automata
+			State[] states = a.getStateArray();
+			Transition[][] transitions = a.getSortedTransitions();
+			int[][] targets = a.getSortedTransitionTargets();
+			int[] pp = new int[states.length];
+			int[] pp_other = new int[states.length];
+			int size = 1; // pp[0] is the initial state
+			BitSet bb_other = new BitSet(states.length);
 			boolean accept = a.initial.accept;
-			for (int i = 0; i < s.length(); i++) {
+			for (int i = 0; i < s.length() && size > 0; i++) {
 				char c = s.charAt(i);
 				accept = false;
-				pp_other.clear();
+				int size_other = 0;
 				bb_other.clear();
-				for (State p : pp) {
-					dest.clear();
-					p.step(c, dest);
-					for (State q : dest) {
-						if (q.accept)
-							accept = true;
-						if (!bb_other.get(q.number)) {
-							bb_other.set(q.number);
-							pp_other.add(q);
+				for (int j = 0; j < size; j++) {
+					int p = pp[j];
+					Transition[] ts = transitions[p];
+					for (int k = 0; k < ts.length && ts[k].min <= c; k++)
+						if (ts[k].max >= c) {
+							int q = targets[p][k];
+							if (!bb_other.get(q)) {
+								bb_other.set(q);
+								pp_other[size_other++] = q;
+								if (states[q].accept)
+									accept = true;
+							}
 						}
-					}
 				}
-				LinkedList<State> tp = pp;
+				int[] tp = pp;
 				pp = pp_other;
 				pp_other = tp;
-				BitSet tb = bb;
-				bb = bb_other;
-				bb_other = tb;
+				size = size_other;
 			}
 			return accept;
 		}
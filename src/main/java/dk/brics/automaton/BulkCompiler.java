@@ -0,0 +1,427 @@
+/*
+ * dk.brics.automaton
+ * 
+ * Copyright (c) 2001-2017 Anders Moeller
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package dk.brics.automaton;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compilation of many regular expressions to run automata in parallel.
+ * <p>
+ * Each regular expression is compiled in isolation, in a copy of the {@link AutomatonContext}
+ * of the calling thread with its own DFA state budget and deadline. A regular expression that
+ * fails to compile does not affect the others: its result records the exception instead.
+ * If a compilation exceeds the DFA budget or the deadline, a nondeterministic automaton is 
+ * constructed instead (without minimization, see {@link RegExp#toAutomaton(boolean)}), which
+ * may be run with {@link Automaton#run(String)}.
+ * <p>
+ * Requests with the same regular expression and syntax flags are compiled only once, and 
+ * their results share the automata. The deadline is checked during regular expression 
+ * compilation and determinization, so other steps (in particular minimization) may run past it.
+ */
+final public class BulkCompiler {
+	
+	private ForkJoinPool pool = ForkJoinPool.commonPool();
+	
+	private long dfa_budget = -1;
+	
+	private long timeout = -1;
+	
+	private boolean minimize = true, tableize = false, fallback = true;
+	
+	private ProgressListener listener;
+	
+	/**
+	 * Constructs a new bulk compiler with the default settings.
+	 */
+	public BulkCompiler() {}
+	
+	/**
+	 * Sets the pool used for compiling (default: the common pool).
+	 * @return this compiler
+	 */
+	public BulkCompiler setPool(ForkJoinPool pool) {
+		this.pool = pool;
+		return this;
+	}
+	
+	/**
+	 * Sets the DFA state budget of each compilation 
+	 * (default: the budget of the context of the calling thread).
+	 * @return this compiler
+	 * @see AutomatonContext#setDfaBudget(long)
+	 */
+	public BulkCompiler setDfaBudget(long budget) {
+		dfa_budget = budget;
+		return this;
+	}
+	
+	/**
+	 * Sets the time limit of each compilation (default: none).
+	 * A compilation that runs past its limit throws {@link TimeBudgetExceededException}.
+	 * @return this compiler
+	 */
+	public BulkCompiler setTimeout(long timeout, TimeUnit unit) {
+		this.timeout = unit.toNanos(timeout);
+		return this;
+	}
+	
+	/**
+	 * Sets or resets the minimize flag (default: set).
+	 * @return this compiler
+	 * @see RegExp#toAutomaton(boolean)
+	 */
+	public BulkCompiler setMinimize(boolean flag) {
+		minimize = flag;
+		return this;
+	}
+	
+	/**
+	 * Sets or resets the tableize flag (default: not set).
+	 * @return this compiler
+	 * @see RunAutomaton#RunAutomaton(Automaton, boolean)
+	 */
+	public BulkCompiler setTableize(boolean flag) {
+		tableize = flag;
+		return this;
+	}
+	
+	/**
+	 * Sets or resets the fallback flag (default: set). If the flag is set, a nondeterministic
+	 * automaton is constructed for regular expressions that exceed the DFA budget or the time limit.
+	 * @return this compiler
+	 */
+	public BulkCompiler setFallback(boolean flag) {
+		fallback = flag;
+		return this;
+	}
+	
+	/**
+	 * Sets the listener notified of the progress of compilations (default: none).
+	 * @return this compiler
+	 */
+	public BulkCompiler setProgressListener(ProgressListener listener) {
+		this.listener = listener;
+		return this;
+	}
+	
+	/**
+	 * Compiles the given requests.
+	 * @return the results, in the order of the requests
+	 */
+	public List<Result> compile(Collection<Request> requests) {
+		AutomatonContext context = AutomatonContext.getCurrent().copy();
+		if (dfa_budget >= 0)
+			context.setDfaBudget(dfa_budget);
+		HashMap<Key, Unit> units = new HashMap<Key, Unit>();
+		List<Unit> order = new ArrayList<Unit>(requests.size());
+		for (Request r : requests) {
+			Key k = new Key(r.pattern, r.flags);
+			Unit u = units.get(k);
+			if (u == null) {
+				u = new Unit(r.pattern, r.flags);
+				units.put(k, u);
+			}
+			u.count++;
+			order.add(u);
+		}
+		Progress progress = new Progress(requests.size());
+		List<ForkJoinTask<?>> tasks = new ArrayList<ForkJoinTask<?>>(units.size());
+		for (Unit u : units.values()) {
+			ForkJoinTask<?> t = ForkJoinTask.adapt(() -> {
+				u.compile(context);
+				progress.add(u.count);
+			});
+			pool.execute(t);
+			tasks.add(t);
+		}
+		for (ForkJoinTask<?> t : tasks)
+			t.join();
+		List<Result> results = new ArrayList<Result>(order.size());
+		int i = 0;
+		for (Request r : requests)
+			results.add(new Result(r, order.get(i++)));
+		return results;
+	}
+	
+	/**
+	 * Listener of the progress of a bulk compilation.
+	 */
+	public interface ProgressListener {
+		
+		/**
+		 * Invoked when requests have been compiled (successfully or not). 
+		 * Invocations are not concurrent, but may take place in different threads.
+		 * @param done number of requests compiled so far
+		 * @param total number of requests
+		 */
+		void progress(int done, int total);
+	}
+	
+	/**
+	 * Request for compiling a regular expression.
+	 */
+	final public static class Request {
+		
+		final String id;
+		final String pattern;
+		final int flags;
+		
+		/**
+		 * Constructs a new request.
+		 * @param id identifier of the request, for reporting
+		 * @param pattern regexp string
+		 * @param flags boolean 'or' of optional syntax constructs to be enabled, see {@link RegExp#RegExp(String, int)}
+		 */
+		public Request(String id, String pattern, int flags) {
+			this.id = id;
+			this.pattern = pattern;
+			this.flags = flags;
+		}
+		
+		/**
+		 * Constructs a new request with all optional syntax constructs enabled.
+		 */
+		public Request(String id, String pattern) {
+			this(id, pattern, RegExp.ALL);
+		}
+		
+		/**
+		 * Returns the identifier.
+		 */
+		public String getId() {
+			return id;
+		}
+		
+		/**
+		 * Returns the regexp string.
+		 */
+		public String getPattern() {
+			return pattern;
+		}
+		
+		/**
+		 * Returns the syntax flags.
+		 */
+		public int getFlags() {
+			return flags;
+		}
+	}
+	
+	/**
+	 * Status of a compilation.
+	 */
+	public enum Status {
+		
+		/** The run automaton was constructed. */
+		COMPILED,
+		
+		/** The DFA budget or the time limit was exceeded, and a nondeterministic automaton was constructed instead. */
+		FALLBACK,
+		
+		/** The compilation failed. */
+		FAILED
+	}
+	
+	/**
+	 * Result of a request.
+	 */
+	final public static class Result {
+		
+		private final Request request;
+		private final Unit unit;
+		
+		Result(Request request, Unit unit) {
+			this.request = request;
+			this.unit = unit;
+		}
+		
+		/**
+		 * Returns the request.
+		 */
+		public Request getRequest() {
+			return request;
+		}
+		
+		/**
+		 * Returns the identifier of the request.
+		 */
+		public String getId() {
+			return request.id;
+		}
+		
+		/**
+		 * Returns the status of the compilation.
+		 */
+		public Status getStatus() {
+			if (unit.run_automaton != null)
+				return Status.COMPILED;
+			if (unit.automaton != null)
+				return Status.FALLBACK;
+			return Status.FAILED;
+		}
+		
+		/**
+		 * Returns the run automaton, <code>null</code> if not compiled.
+		 */
+		public RunAutomaton getRunAutomaton() {
+			return unit.run_automaton;
+		}
+		
+		/**
+		 * Returns the nondeterministic fallback automaton, <code>null</code> if none.
+		 * The automaton is shared by the requests for the same regular expression, and must not be modified.
+		 */
+		public Automaton getFallbackAutomaton() {
+			return unit.automaton;
+		}
+		
+		/**
+		 * Returns the exception thrown by the compilation, <code>null</code> if none.
+		 * If the status is <code>FALLBACK</code>, this is the exception that caused the fallback.
+		 */
+		public Throwable getError() {
+			return unit.error;
+		}
+		
+		/**
+		 * Returns the time in nanoseconds spent compiling the regular expression (including the fallback).
+		 */
+		public long getCompileTime() {
+			return unit.time;
+		}
+		
+		@Override
+		public String toString() {
+			return request.id + ": " + getStatus() + (unit.error != null ? " (" + unit.error + ")" : "");
+		}
+	}
+	
+	/**
+	 * Compilation of a regular expression, shared by the requests for it.
+	 */
+	private final class Unit {
+		
+		final String pattern;
+		final int flags;
+		
+		int count;
+		
+		RunAutomaton run_automaton;
+		Automaton automaton;
+		Throwable error;
+		long time;
+		
+		Unit(String pattern, int flags) {
+			this.pattern = pattern;
+			this.flags = flags;
+		}
+		
+		void compile(AutomatonContext context) {
+			long t = System.nanoTime();
+			RegExp r = null;
+			try {
+				r = new RegExp(pattern, flags);
+				RegExp e = r;
+				run_automaton = newContext(context).call(() -> new RunAutomaton(e.toAutomaton(minimize), tableize, e.isStartAnchored(), e.isEndAnchored()));
+			} catch (DfaBudgetExceededException | TimeBudgetExceededException x) {
+				error = x;
+			} catch (RuntimeException | StackOverflowError x) {
+				error = x;
+				r = null;
+			}
+			if (run_automaton == null && r != null && fallback) {
+				RegExp e = r;
+				try {
+					automaton = newContext(context).call(() -> e.toAutomaton(false));
+				} catch (RuntimeException | StackOverflowError x) {
+					// keep the first error
+				}
+			}
+			time = System.nanoTime() - t;
+		}
+		
+		AutomatonContext newContext(AutomatonContext context) {
+			AutomatonContext c = context.copy();
+			if (timeout >= 0)
+				c.setDeadline(System.nanoTime() + timeout);
+			return c;
+		}
+	}
+	
+	private final class Progress {
+		
+		final int total;
+		
+		int done;
+		
+		Progress(int total) {
+			this.total = total;
+		}
+		
+		void add(int n) {
+			if (listener != null)
+				synchronized (this) {
+					done += n;
+					listener.progress(done, total);
+				}
+		}
+	}
+	
+	private static final class Key {
+		
+		final String s;
+		final int flags;
+		
+		Key(String s, int flags) {
+			this.s = s;
+			this.flags = flags;
+		}
+		
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Key))
+				return false;
+			Key k = (Key)obj;
+			return s.equals(k.s) && flags == k.flags;
+		}
+		
+		@Override
+		public int hashCode() {
+			return s.hashCode() * 31 + flags;
+		}
+	}
+}
@@ -0,0 +1,593 @@
+/*
+ * dk.brics.automaton
+ * 
+ * Copyright (c) 2001-2017 Anders Moeller
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package dk.brics.automaton;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Set;
+
+/**
+ * Finite-state automaton stored in compressed sparse row layout.
+ * <p>
+ * States are numbered from 0. The transitions of state <code>s</code> are at the indexes
+ * <code>rowStart[s]</code> (inclusive) to <code>rowStart[s+1]</code> (exclusive) of the
+ * parallel arrays <code>min</code>, <code>max</code> and <code>to</code>, sorted by
+ * <code>min</code>. No objects are allocated per state or transition, which makes this
+ * representation much smaller than {@link Automaton} for large automata.
+ * <p>
+ * Instances are immutable; operations return new automata.
+ * Automata returned by the operations contain no unreachable or dead states.
+ */
+final public class CompactAutomaton implements Serializable {
+
+	static final long serialVersionUID = 10001;
+
+	final int initial;
+	final int[] rowStart;
+	final char[] min;
+	final char[] max;
+	final int[] to;
+	final BitSet accept;
+	final boolean deterministic;
+
+	CompactAutomaton(int initial, int[] rowStart, char[] min, char[] max, int[] to, BitSet accept, boolean deterministic) {
+		this.initial = initial;
+		this.rowStart = rowStart;
+		this.min = min;
+		this.max = max;
+		this.to = to;
+		this.accept = accept;
+		this.deterministic = deterministic;
+	}
+
+	/**
+	 * Constructs a new <code>CompactAutomaton</code> with the same states and transitions
+	 * as the given automaton.
+	 * @param a an automaton
+	 */
+	public CompactAutomaton(Automaton a) {
+		State[] states = a.getStateArray();
+		Transition[][] transitions = a.getSortedTransitions();
+		int[][] targets = a.getSortedTransitionTargets();
+		int n = states.length;
+		rowStart = new int[n + 1];
+		for (int s = 0; s < n; s++)
+			rowStart[s + 1] = rowStart[s] + transitions[s].length;
+		min = new char[rowStart[n]];
+		max = new char[rowStart[n]];
+		to = new int[rowStart[n]];
+		accept = new BitSet(n);
+		for (int s = 0; s < n; s++) {
+			if (states[s].accept)
+				accept.set(s);
+			int k = rowStart[s];
+			for (int j = 0; j < transitions[s].length; j++) {
+				min[k] = transitions[s][j].min;
+				max[k] = transitions[s][j].max;
+				to[k++] = targets[s][j];
+			}
+		}
+		initial = 0;
+		deterministic = a.deterministic;
+	}
+
+	/**
+	 * Returns an {@link Automaton} with the same states and transitions as this automaton.
+	 */
+	public Automaton toAutomaton() {
+		int n = getNumberOfStates();
+		State[] states = new State[n];
+		for (int s = 0; s < n; s++) {
+			states[s] = new State();
+			states[s].accept = accept.get(s);
+		}
+		for (int s = 0; s < n; s++)
+			for (int k = rowStart[s]; k < rowStart[s + 1]; k++)
+				states[s].transitions.add(new Transition(min[k], max[k], states[to[k]]));
+		Automaton a = new Automaton();
+		a.initial = states[initial];
+		a.deterministic = deterministic;
+		a.removeDeadTransitions();
+		return a;
+	}
+
+	/**
+	 * Returns the number of states.
+	 */
+	public int getNumberOfStates() {
+		return rowStart.length - 1;
+	}
+
+	/**
+	 * Returns the number of transitions.
+	 */
+	public int getNumberOfTransitions() {
+		return to.length;
+	}
+
+	/**
+	 * Returns the initial state.
+	 */
+	public int getInitialState() {
+		return initial;
+	}
+
+	/**
+	 * Returns acceptance status for the given state.
+	 */
+	public boolean isAccept(int state) {
+		return accept.get(state);
+	}
+
+	/**
+	 * Returns true if this automaton is definitely deterministic.
+	 */
+	public boolean isDeterministic() {
+		return deterministic;
+	}
+
+	/**
+	 * Returns the state obtained by reading the given char from the given state
+	 * of a deterministic automaton, -1 if there is no such state.
+	 * <p>
+	 * Complexity: logarithmic in number of transitions of the state.
+	 */
+	public int step(int state, char c) {
+		int lo = rowStart[state];
+		int hi = rowStart[state + 1] - 1;
+		while (lo <= hi) {
+			int k = (lo + hi) >>> 1;
+			if (max[k] < c)
+				lo = k + 1;
+			else if (min[k] > c)
+				hi = k - 1;
+			else
+				return to[k];
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns true if the given string is accepted by this automaton.
+	 * <p>
+	 * Complexity: linear in the length of the string (times the number of states if nondeterministic).
+	 */
+	public boolean run(String s) {
+		if (deterministic) {
+			int p = initial;
+			for (int i = 0; i < s.length(); i++) {
+				p = step(p, s.charAt(i));
+				if (p == -1)
+					return false;
+			}
+			return accept.get(p);
+		}
+		int n = getNumberOfStates();
+		BitSet current = new BitSet(n);
+		BitSet next = new BitSet(n);
+		current.set(initial);
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			next.clear();
+			for (int p = current.nextSetBit(0); p >= 0; p = current.nextSetBit(p + 1))
+				for (int k = rowStart[p]; k < rowStart[p + 1] && min[k] <= c; k++)
+					if (c <= max[k])
+						next.set(to[k]);
+			if (next.isEmpty())
+				return false;
+			BitSet b = current;
+			current = next;
+			next = b;
+		}
+		return current.intersects(accept);
+	}
+
+	/**
+	 * Returns an automaton with the same language that contains only states that
+	 * are reachable from the initial state and from which an accept state is reachable.
+	 * <p>
+	 * Complexity: linear in number of transitions.
+	 */
+	CompactAutomaton trim() {
+		int n = getNumberOfStates();
+		int m = getNumberOfTransitions();
+		boolean[] reachable = new boolean[n];
+		IntQueue worklist = new IntQueue();
+		reachable[initial] = true;
+		worklist.add(initial);
+		while (!worklist.isEmpty()) {
+			int s = worklist.removeFirst();
+			for (int k = rowStart[s]; k < rowStart[s + 1]; k++)
+				if (!reachable[to[k]]) {
+					reachable[to[k]] = true;
+					worklist.add(to[k]);
+				}
+		}
+		int[] from = new int[m];
+		for (int s = 0; s < n; s++)
+			for (int k = rowStart[s]; k < rowStart[s + 1]; k++)
+				from[k] = s;
+		int[] A = new int[m];
+		int[] F = new int[n + 1];
+		MinimizationOperations.makeAdjacent(A, F, to, n, m);
+		boolean[] live = new boolean[n];
+		int count = 0;
+		for (int s = accept.nextSetBit(0); s >= 0; s = accept.nextSetBit(s + 1))
+			if (reachable[s]) {
+				live[s] = true;
+				worklist.add(s);
+				count++;
+			}
+		while (!worklist.isEmpty()) {
+			int s = worklist.removeFirst();
+			for (int j = F[s]; j < F[s + 1]; j++) {
+				int p = from[A[j]];
+				if (reachable[p] && !live[p]) {
+					live[p] = true;
+					worklist.add(p);
+					count++;
+				}
+			}
+		}
+		if (!live[initial])
+			return new CompactAutomaton(0, new int[] {0, 0}, new char[0], new char[0], new int[0], new BitSet(), true);
+		boolean dead = false;
+		for (int k = 0; k < m && !dead; k++)
+			dead = !live[to[k]];
+		if (count == n && !dead)
+			return this;
+		int[] map = new int[n];
+		for (int s = 0, i = 0; s < n; s++)
+			map[s] = live[s] ? i++ : -1;
+		Builder b = new Builder();
+		for (int s = 0; s < n; s++)
+			if (live[s]) {
+				for (int k = rowStart[s]; k < rowStart[s + 1]; k++)
+					if (live[to[k]])
+						b.addTransition(min[k], max[k], map[to[k]]);
+				b.endState(accept.get(s));
+			}
+		return b.build(map[initial], deterministic);
+	}
+
+	/**
+	 * Returns a deterministic automaton that accepts the same language as this automaton.
+	 * <p>
+	 * Complexity: exponential in number of states.
+	 * @throws DfaBudgetExceededException if the result has more states than the DFA budget of the current context
+	 */
+	public CompactAutomaton determinize() {
+		if (deterministic)
+			return this;
+		CompactAutomaton a = trim();
+		AutomatonContext context = AutomatonContext.getCurrent();
+		long budget = context.dfa_budget;
+		// subset construction
+		ArrayList<int[]> sets = new ArrayList<int[]>();
+		HashMap<IntArray, Integer> ids = new HashMap<IntArray, Integer>();
+		int[] init = new int[] {a.initial};
+		sets.add(init);
+		ids.put(new IntArray(init), 0);
+		Builder b = new Builder();
+		int[] points = new int[16];
+		for (int p = 0; p < sets.size(); p++) {
+			int[] set = sets.get(p);
+			boolean acc = false;
+			int np = 0;
+			for (int s : set) {
+				acc |= a.accept.get(s);
+				int len = a.rowStart[s + 1] - a.rowStart[s];
+				if (np + 2 * len > points.length)
+					points = Arrays.copyOf(points, 2 * (np + 2 * len));
+				for (int k = a.rowStart[s]; k < a.rowStart[s + 1]; k++) {
+					points[np++] = a.min[k];
+					points[np++] = a.max[k] + 1;
+				}
+			}
+			np = sortUnique(points, np);
+			// collect the destinations for each interval between consecutive points
+			int[] start = new int[np + 1];
+			for (int s : set)
+				for (int k = a.rowStart[s]; k < a.rowStart[s + 1]; k++)
+					for (int i = Arrays.binarySearch(points, 0, np, a.min[k]); points[i] <= a.max[k]; i++)
+						start[i + 1]++;
+			for (int i = 0; i < np; i++)
+				start[i + 1] += start[i];
+			int[] dest = new int[start[np]];
+			int[] fill = Arrays.copyOf(start, np);
+			for (int s : set)
+				for (int k = a.rowStart[s]; k < a.rowStart[s + 1]; k++)
+					for (int i = Arrays.binarySearch(points, 0, np, a.min[k]); points[i] <= a.max[k]; i++)
+						dest[fill[i]++] = a.to[k];
+			for (int i = 0; i + 1 < np; i++) {
+				if (start[i] == start[i + 1])
+					continue;
+				int[] q = Arrays.copyOfRange(dest, start[i], start[i + 1]);
+				q = Arrays.copyOf(q, sortUnique(q, q.length));
+				IntArray key = new IntArray(q);
+				Integer r = ids.get(key);
+				if (r == null) {
+					r = sets.size();
+					sets.add(q);
+					ids.put(key, r);
+					if (sets.size() > budget)
+						throw new DfaBudgetExceededException(budget);
+					context.checkDeadline();
+				}
+				b.addTransition(points[i], points[i + 1] - 1, r);
+			}
+			b.endState(acc);
+			sets.set(p, null);
+		}
+		return b.build(0, true);
+	}
+
+	/**
+	 * Returns a minimal deterministic automaton that accepts the same language as this automaton.
+	 * Uses Valmari's partition refinement algorithm on the array representation.
+	 * <p>
+	 * Complexity: O(m log n) for deterministic automata, where m is the number of transitions
+	 * split on all interval start points.
+	 */
+	public CompactAutomaton minimize() {
+		CompactAutomaton a = determinize().trim();
+		int n = a.getNumberOfStates();
+		int m = a.getNumberOfTransitions();
+		// split transitions on the interval start points, labels are interval numbers
+		int[] points = new int[2 * m + 1];
+		int np = 0;
+		for (int k = 0; k < m; k++) {
+			points[np++] = a.min[k];
+			points[np++] = a.max[k] + 1;
+		}
+		np = sortUnique(points, np);
+		int mm = 0;
+		for (int k = 0; k < m; k++)
+			mm += Arrays.binarySearch(points, 0, np, a.max[k] + 1) - Arrays.binarySearch(points, 0, np, a.min[k]);
+		int[] tails = new int[mm];
+		int[] heads = new int[mm];
+		int[] labels = new int[mm];
+		int[] count = new int[np + 1];
+		for (int s = 0, t = 0; s < n; s++)
+			for (int k = a.rowStart[s]; k < a.rowStart[s + 1]; k++)
+				for (int i = Arrays.binarySearch(points, 0, np, a.min[k]); points[i] <= a.max[k]; i++, t++) {
+					tails[t] = s;
+					heads[t] = a.to[k];
+					labels[t] = i;
+					count[i + 1]++;
+				}
+		// make initial block partition
+		MinimizationOperations.Partition blocks = new MinimizationOperations.Partition(n);
+		for (int s = a.accept.nextSetBit(0); s >= 0; s = a.accept.nextSetBit(s + 1))
+			blocks.mark(s);
+		blocks.split();
+		// make initial transition partition, grouped by label
+		MinimizationOperations.Partition cords = new MinimizationOperations.Partition(mm);
+		if (mm > 0) {
+			for (int i = 0; i < np; i++)
+				count[i + 1] += count[i];
+			int[] fill = Arrays.copyOf(count, np);
+			for (int t = 0; t < mm; t++)
+				cords.elements[fill[labels[t]]++] = t;
+			cords.setCount = 0;
+			for (int i = 0; i < np; i++)
+				if (count[i] < count[i + 1]) {
+					cords.first[cords.setCount] = count[i];
+					cords.past[cords.setCount] = count[i + 1];
+					for (int j = count[i]; j < count[i + 1]; j++) {
+						cords.setNo[cords.elements[j]] = cords.setCount;
+						cords.locations[cords.elements[j]] = j;
+					}
+					cords.setCount++;
+				}
+		}
+		// split blocks and cords
+		int[] A = new int[mm];
+		int[] F = new int[n + 1];
+		MinimizationOperations.makeAdjacent(A, F, heads, n, mm);
+		for (int c = 0, b = 1; c < cords.setCount; ++c) {
+			for (int i = cords.first[c]; i < cords.past[c]; ++i)
+				blocks.mark(tails[cords.elements[i]]);
+			blocks.split();
+			for (; b < blocks.setCount; ++b) {
+				for (int i = blocks.first[b]; i < blocks.past[b]; ++i)
+					for (int j = F[blocks.elements[i]]; j < F[blocks.elements[i] + 1]; ++j)
+						cords.mark(A[j]);
+				cords.split();
+			}
+		}
+		// build states from the first state of each block
+		Builder r = new Builder();
+		for (int bl = 0; bl < blocks.setCount; ++bl) {
+			int s = blocks.elements[blocks.first[bl]];
+			for (int k = a.rowStart[s]; k < a.rowStart[s + 1]; k++)
+				r.addTransition(a.min[k], a.max[k], blocks.setNo[a.to[k]]);
+			r.endState(a.accept.get(s));
+		}
+		return r.build(blocks.setNo[a.initial], true);
+	}
+
+	/**
+	 * Returns an automaton that accepts the intersection of the languages of this
+	 * automaton and the given automaton.
+	 * <p>
+	 * Complexity: quadratic in number of states.
+	 */
+	public CompactAutomaton intersection(CompactAutomaton a) {
+		LongIntMap ids = new LongIntMap();
+		IntQueue worklist = new IntQueue();
+		Builder b = new Builder();
+		ids.putIfAbsent(LongIntMap.pack(initial, a.initial), 0);
+		worklist.add(initial);
+		worklist.add(a.initial);
+		while (!worklist.isEmpty()) {
+			int s1 = worklist.removeFirst();
+			int s2 = worklist.removeFirst();
+			int end1 = rowStart[s1 + 1];
+			int end2 = a.rowStart[s2 + 1];
+			for (int n1 = rowStart[s1], b2 = a.rowStart[s2]; n1 < end1; n1++) {
+				while (b2 < end2 && a.max[b2] < min[n1])
+					b2++;
+				for (int n2 = b2; n2 < end2 && max[n1] >= a.min[n2]; n2++)
+					if (a.max[n2] >= min[n1]) {
+						int r = ids.putIfAbsent(LongIntMap.pack(to[n1], a.to[n2]), ids.size());
+						if (r == -1) {
+							r = ids.size() - 1;
+							worklist.add(to[n1]);
+							worklist.add(a.to[n2]);
+						}
+						b.addTransition(min[n1] > a.min[n2] ? min[n1] : a.min[n2], max[n1] < a.max[n2] ? max[n1] : a.max[n2], r);
+					}
+			}
+			b.endState(accept.get(s1) && a.accept.get(s2));
+		}
+		return b.build(0, deterministic && a.deterministic).trim();
+	}
+
+	/**
+	 * Returns an automaton that accepts the reverse of the language of this automaton.
+	 * The result is in general nondeterministic.
+	 * <p>
+	 * Complexity: linear in number of transitions.
+	 */
+	public CompactAutomaton reverse() {
+		int n = getNumberOfStates();
+		int m = getNumberOfTransitions();
+		int[] from = new int[m];
+		for (int s = 0; s < n; s++)
+			for (int k = rowStart[s]; k < rowStart[s + 1]; k++)
+				from[k] = s;
+		int[] A = new int[m];
+		int[] F = new int[n + 1];
+		MinimizationOperations.makeAdjacent(A, F, to, n, m);
+		Builder b = new Builder();
+		for (int s = 0; s < n; s++) {
+			for (int j = F[s]; j < F[s + 1]; j++)
+				b.addTransition(min[A[j]], max[A[j]], from[A[j]]);
+			b.endState(s == initial);
+		}
+		// new initial state with the transitions of all accept states
+		for (int s = accept.nextSetBit(0); s >= 0; s = accept.nextSetBit(s + 1))
+			for (int j = F[s]; j < F[s + 1]; j++)
+				b.addTransition(min[A[j]], max[A[j]], from[A[j]]);
+		b.endState(accept.get(initial));
+		return b.build(n, false).trim();
+	}
+
+	/**
+	 * Sorts the first <code>n</code> elements of the given array and removes duplicates.
+	 * @return the number of distinct elements
+	 */
+	private static int sortUnique(int[] a, int n) {
+		Arrays.sort(a, 0, n);
+		int k = 0;
+		for (int i = 0; i < n; i++)
+			if (k == 0 || a[k - 1] != a[i])
+				a[k++] = a[i];
+		return k;
+	}
+
+	/**
+	 * Builds the arrays of a <code>CompactAutomaton</code> one state at a time,
+	 * in order of state numbers.
+	 */
+	private static final class Builder {
+
+		int states;
+		int size;
+		int[] rowStart = new int[17];
+		char[] min = new char[16];
+		char[] max = new char[16];
+		int[] to = new int[16];
+		BitSet accept = new BitSet();
+
+		/**
+		 * Adds a transition from the current state.
+		 */
+		void addTransition(int lo, int hi, int dest) {
+			if (size == to.length) {
+				min = Arrays.copyOf(min, 2 * size);
+				max = Arrays.copyOf(max, 2 * size);
+				to = Arrays.copyOf(to, 2 * size);
+			}
+			min[size] = (char)lo;
+			max[size] = (char)hi;
+			to[size++] = dest;
+		}
+
+		/**
+		 * Completes the current state. Its transitions are sorted, and
+		 * adjacent or overlapping intervals with the same destination are combined.
+		 */
+		void endState(boolean acc) {
+			int first = rowStart[states];
+			boolean sorted = true;
+			for (int k = first + 1; k < size && sorted; k++)
+				sorted = min[k - 1] <= min[k];
+			if (!sorted) {
+				long[] keys = new long[size - first];
+				for (int k = first; k < size; k++)
+					keys[k - first] = ((long)min[k] << 47) | ((long)max[k] << 31) | to[k];
+				Arrays.sort(keys);
+				for (int k = first; k < size; k++) {
+					long key = keys[k - first];
+					min[k] = (char)(key >>> 47);
+					max[k] = (char)(key >>> 31);
+					to[k] = (int)(key & Integer.MAX_VALUE);
+				}
+			}
+			int w = first;
+			for (int k = first; k < size; k++)
+				if (w > first && to[w - 1] == to[k] && max[w - 1] + 1 >= min[k]) {
+					if (max[k] > max[w - 1])
+						max[w - 1] = max[k];
+				} else {
+					min[w] = min[k];
+					max[w] = max[k];
+					to[w++] = to[k];
+				}
+			size = w;
+			if (acc)
+				accept.set(states);
+			if (states + 2 > rowStart.length)
+				rowStart = Arrays.copyOf(rowStart, 2 * rowStart.length);
+			rowStart[++states] = size;
+		}
+
+		CompactAutomaton build(int initial, boolean deterministic) {
+			return new CompactAutomaton(initial, Arrays.copyOf(rowStart, states + 1),
+					Arrays.copyOf(min, size), Arrays.copyOf(max, size), Arrays.copyOf(to, size), accept, deterministic);
+		}
+	}
+}
@@ -0,0 +1,309 @@
+/*
+ * dk.brics.automaton
+ * 
+ * Copyright (c) 2001-2017 Anders Moeller
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package dk.brics.automaton;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Thread-safe cache of run automata compiled from regular expressions.
+ * <p>
+ * Entries are keyed by the regular expression string, the syntax flags, and the build options
+ * (minimization of the automaton and tableization of the run automaton).
+ * Concurrent requests for the same key compile the regular expression only once; the other
+ * threads wait for the result. If the compilation fails, the exception is thrown to all the
+ * waiting threads, and the key is not cached.
+ * <p>
+ * The total weight of the cached run automata (an estimate in bytes of the size of the transition
+ * table, the classmap and the other arrays) is kept below a given bound by evicting the least recently 
+ * used entries. 
+ * <p>
+ * Compilation takes place in a copy of an {@link AutomatonContext} taken when the cache is 
+ * constructed, not in the context of the calling thread, so that a cached result (or failure,
+ * such as exceeding the DFA state budget) is the same for every caller. The copy has no deadline.
+ */
+final public class CompiledPatternCache {
+	
+	private final long max_weight;
+	
+	private final AutomatonContext context;
+	
+	private final LinkedHashMap<Key, Entry> map = new LinkedHashMap<Key, Entry>(16, 0.75f, true);
+	
+	private long weight;
+	
+	private long hits, misses, evictions, failures, compile_time;
+	
+	/**
+	 * Constructs a new empty cache that compiles in a copy of the context of the calling thread.
+	 * @param max_weight maximum total weight of the cached run automata, approximately in bytes
+	 */
+	public CompiledPatternCache(long max_weight) {
+		this(max_weight, AutomatonContext.getCurrent());
+	}
+	
+	/**
+	 * Constructs a new empty cache that compiles in a copy of the given context.
+	 * Later changes to the given context do not affect the cache.
+	 * @param max_weight maximum total weight of the cached run automata, approximately in bytes
+	 * @param context context of the compilations
+	 */
+	public CompiledPatternCache(long max_weight, AutomatonContext context) {
+		if (max_weight < 0)
+			throw new IllegalArgumentException("negative weight");
+		this.max_weight = max_weight;
+		this.context = context.copy();
+		this.context.timed = false;
+	}
+	
+	/**
+	 * Returns the run automaton for the given regular expression.
+	 * Same as <code>get(s, RegExp.ALL, true, true)</code>.
+	 */
+	public RunAutomaton get(String s) throws IllegalArgumentException {
+		return get(s, RegExp.ALL, true, true);
+	}
+	
+	/**
+	 * Returns the run automaton for the given regular expression, compiling it if not cached.
+	 * @param s regexp string
+	 * @param syntax_flags boolean 'or' of optional syntax constructs to be enabled, see {@link RegExp#RegExp(String, int)}
+	 * @param minimize if true, the automaton is minimized, see {@link RegExp#toAutomaton(boolean)}
+	 * @param tableize if true, a transition table is created, see {@link RunAutomaton#RunAutomaton(Automaton, boolean)}
+	 * @exception IllegalArgumentException if an error occured while parsing the regular expression
+	 */
+	public RunAutomaton get(String s, int syntax_flags, boolean minimize, boolean tableize) throws IllegalArgumentException {
+		Key key = new Key(s, syntax_flags, minimize, tableize);
+		Entry e;
+		boolean compile = false;
+		synchronized (this) {
+			e = map.get(key);
+			if (e == null) {
+				e = new Entry();
+				map.put(key, e);
+				misses++;
+				compile = true;
+			} else
+				hits++;
+		}
+		if (compile) {
+			long t = System.nanoTime();
+			RunAutomaton r;
+			try {
+				r = context.call(() -> {
+					RegExp re = new RegExp(s, syntax_flags);
+					return new RunAutomaton(re.toAutomaton(minimize), tableize, re.isStartAnchored(), re.isEndAnchored());
+				});
+			} catch (RuntimeException | Error x) {
+				synchronized (this) {
+					map.remove(key, e);
+					failures++;
+				}
+				e.result.completeExceptionally(x);
+				throw x;
+			}
+			synchronized (this) {
+				compile_time += System.nanoTime() - t;
+				e.weight = getWeight(r);
+				if (map.get(key) == e) {
+					weight += e.weight;
+					evict();
+				}
+			}
+			e.result.complete(r);
+			return r;
+		}
+		try {
+			return e.result.join();
+		} catch (CompletionException x) {
+			Throwable cause = x.getCause();
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException)cause;
+			if (cause instanceof Error)
+				throw (Error)cause;
+			throw x;
+		}
+	}
+	
+	/**
+	 * Evicts the least recently used compiled entries until the total weight is within the bound.
+	 */
+	private void evict() {
+		for (Iterator<Map.Entry<Key, Entry>> i = map.entrySet().iterator(); weight > max_weight && i.hasNext();) {
+			Entry e = i.next().getValue();
+			if (e.weight >= 0) {
+				i.remove();
+				weight -= e.weight;
+				evictions++;
+			}
+		}
+	}
+	
+	/**
+	 * Returns an estimate in bytes of the memory used by the given run automaton.
+	 */
+	static long getWeight(RunAutomaton r) {
+		long w = r.accept.length + 2L * r.points.length + 4L * r.transitions.length;
+		if (r.classmap != null)
+			w += 4L * r.classmap.length;
+		if (r.reverse != null)
+			w += getWeight(r.reverse);
+		return w;
+	}
+	
+	/**
+	 * Removes all entries (entries being compiled are not cached when completed).
+	 */
+	public synchronized void clear() {
+		map.clear();
+		weight = 0;
+	}
+	
+	/**
+	 * Returns a snapshot of the statistics of this cache.
+	 */
+	public synchronized Stats getStats() {
+		return new Stats(hits, misses, evictions, failures, compile_time, map.size(), weight);
+	}
+	
+	/**
+	 * Statistics of a {@link CompiledPatternCache}.
+	 */
+	final public static class Stats {
+		
+		private final long hits, misses, evictions, failures, compile_time;
+		private final int size;
+		private final long weight;
+		
+		Stats(long hits, long misses, long evictions, long failures, long compile_time, int size, long weight) {
+			this.hits = hits;
+			this.misses = misses;
+			this.evictions = evictions;
+			this.failures = failures;
+			this.compile_time = compile_time;
+			this.size = size;
+			this.weight = weight;
+		}
+		
+		/** 
+		 * Returns the number of requests that found the key in the cache 
+		 * (including requests that waited for a compilation by another thread). 
+		 */
+		public long getHitCount() {
+			return hits;
+		}
+		
+		/** 
+		 * Returns the number of requests that compiled the regular expression. 
+		 */
+		public long getMissCount() {
+			return misses;
+		}
+		
+		/** 
+		 * Returns the number of entries evicted to keep the total weight within the bound. 
+		 */
+		public long getEvictionCount() {
+			return evictions;
+		}
+		
+		/** 
+		 * Returns the number of compilations that failed with an exception. 
+		 */
+		public long getFailureCount() {
+			return failures;
+		}
+		
+		/** 
+		 * Returns the total time in nanoseconds spent in successful compilations. 
+		 */
+		public long getTotalCompileTime() {
+			return compile_time;
+		}
+		
+		/** 
+		 * Returns the number of entries (including entries being compiled). 
+		 */
+		public int getSize() {
+			return size;
+		}
+		
+		/** 
+		 * Returns the total weight of the cached run automata. 
+		 */
+		public long getWeight() {
+			return weight;
+		}
+		
+		@Override
+		public String toString() {
+			return "hits=" + hits + " misses=" + misses + " evictions=" + evictions + " failures=" + failures 
+				+ " compile_time=" + compile_time / 1000000 + "ms size=" + size + " weight=" + weight;
+		}
+	}
+	
+	private static final class Key {
+		
+		final String s;
+		final int flags;
+		final boolean minimize, tableize;
+		
+		Key(String s, int flags, boolean minimize, boolean tableize) {
+			this.s = s;
+			this.flags = flags;
+			this.minimize = minimize;
+			this.tableize = tableize;
+		}
+		
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Key))
+				return false;
+			Key k = (Key)obj;
+			return s.equals(k.s) && flags == k.flags && minimize == k.minimize && tableize == k.tableize;
+		}
+		
+		@Override
+		public int hashCode() {
+			return ((s.hashCode() * 31 + flags) * 2 + (minimize ? 1 : 0)) * 2 + (tableize ? 1 : 0);
+		}
+	}
+	
+	private static final class Entry {
+		
+		final CompletableFuture<RunAutomaton> result = new CompletableFuture<RunAutomaton>();
+		
+		long weight = -1; // -1 while being compiled
+	}
+}
@@ -0,0 +1,440 @@
+/*
+ * dk.brics.automaton
+ * 
+ * Copyright (c) 2001-2017 Anders Moeller
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package dk.brics.automaton;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Static analysis of the sizes of the automata of a regular expression, see {@link RegExp#estimateComplexity()}.
+ * <p>
+ * The bounds on the number of states of the deterministic automaton follow the subset construction 
+ * (a union or intersection is bounded by the product of its operands, a concatenation <i>AB</i> by 
+ * |<i>A</i>|2<sup>|<i>B</i>|</sup>, a repetition of <i>A</i> by 2<sup>|<i>A</i>|</sup>, and everything 
+ * by 2<sup><i>n</i></sup> for an automaton with <i>n</i> states).
+ * The estimate is linear in the size of the regular expression, except for the windows following
+ * a repetition in a concatenation: if the characters of the repetition overlap the first character 
+ * of the rest of the concatenation, the deterministic automaton must track which of the following 
+ * positions that overlap the first character are active, which contributes 2<sup><i>k</i></sup> states for 
+ * <i>k</i> such positions before the next unbounded repetition (as in <code>.*a.{20}</code>).
+ */
+final class ComplexityEstimator {
+	
+	/** Maximal number of positions counted in a window. */
+	static final int MAX_WINDOW = 1024;
+	
+	static final int[] NO_CHARS = new int[0];
+	
+	static final int[] ALL_CHARS = { Character.MIN_VALUE, Character.MAX_VALUE };
+	
+	static final int[] DIGITS = { '0', '9' };
+	
+	/**
+	 * Summary of a subexpression. Numbers of states do not include dead states.
+	 */
+	static final class Info {
+		
+		double nfa_bound, nfa_estimate, dfa_bound, dfa_estimate;
+		boolean nullable; // accepts the empty string
+		boolean bounded; // the strings have bounded length
+		int[] first = NO_CHARS; // characters that may occur first (sorted intervals)
+		int[] chars = NO_CHARS; // characters that may occur
+		int[] tail = NO_CHARS; // characters of repetitions that may be active at the end
+		
+		void setNfa(double n) {
+			nfa_bound = nfa_estimate = n;
+		}
+		
+		void setDfa(double n) {
+			dfa_bound = dfa_estimate = n;
+		}
+	}
+	
+	private final Map<String, Automaton> automata;
+	
+	private final IdentityHashMap<RegExp, Info> infos = new IdentityHashMap<RegExp, Info>();
+	
+	ComplexityEstimator(Map<String, Automaton> automata) {
+		this.automata = automata;
+	}
+	
+	Info analyze(RegExp e) {
+		Info i = infos.get(e);
+		if (i == null) {
+			i = analyzeNoMemo(e);
+			i.dfa_bound = Math.min(i.dfa_bound, subsets(i.nfa_bound));
+			i.dfa_estimate = Math.min(i.dfa_estimate, i.dfa_bound);
+			i.nfa_estimate = Math.min(i.nfa_estimate, i.nfa_bound);
+			infos.put(e, i);
+		}
+		return i;
+	}
+	
+	private Info analyzeNoMemo(RegExp e) {
+		Info i = new Info();
+		Info c;
+		switch (e.kind) {
+		case REGEXP_UNION:
+			i.setNfa(1);
+			i.setDfa(1);
+			i.bounded = true;
+			for (RegExp f : e.exps) {
+				c = analyze(f);
+				i.nfa_bound += c.nfa_bound;
+				i.nfa_estimate += c.nfa_estimate;
+				i.dfa_bound *= c.dfa_bound + 1;
+				i.dfa_estimate += c.dfa_estimate;
+				i.nullable |= c.nullable;
+				i.bounded &= c.bounded;
+				i.first = union(i.first, c.first);
+				i.chars = union(i.chars, c.chars);
+				i.tail = union(i.tail, c.tail);
+			}
+			break;
+		case REGEXP_CONCATENATION:
+			i.setDfa(0);
+			i.nullable = true;
+			i.bounded = true;
+			for (int k = 0; k < e.exps.length; k++) {
+				c = analyze(e.exps[k]);
+				i.nfa_bound += c.nfa_bound;
+				i.nfa_estimate += c.nfa_estimate;
+				i.dfa_bound = (i.dfa_bound + 1) * Math.pow(2, Math.min(c.nfa_bound, c.dfa_bound));
+				i.dfa_estimate += c.dfa_estimate;
+				if (overlaps(i.tail, c.first))
+					i.dfa_estimate += Math.pow(2, window(e.exps, k, c.first));
+				if (i.nullable)
+					i.first = union(i.first, c.first);
+				i.nullable &= c.nullable;
+				i.bounded &= c.bounded;
+				i.chars = union(i.chars, c.chars);
+				i.tail = c.nullable ? union(i.tail, c.tail) : c.tail;
+			}
+			break;
+		case REGEXP_INTERSECTION:
+			i.setNfa(1);
+			i.setDfa(1);
+			i.first = i.chars = i.tail = ALL_CHARS;
+			i.nullable = true;
+			for (RegExp f : e.exps) {
+				c = analyze(f);
+				i.nfa_bound *= c.nfa_bound;
+				i.nfa_estimate *= c.nfa_estimate;
+				i.dfa_bound *= c.dfa_bound;
+				i.dfa_estimate *= c.dfa_estimate;
+				i.nullable &= c.nullable;
+				i.bounded |= c.bounded;
+				i.first = intersection(i.first, c.first);
+				i.chars = intersection(i.chars, c.chars);
+				i.tail = intersection(i.tail, c.tail);
+			}
+			break;
+		case REGEXP_OPTIONAL:
+			c = analyze(e.exp1);
+			copy(c, i);
+			i.nfa_bound++;
+			i.nfa_estimate++;
+			i.dfa_bound++;
+			i.dfa_estimate++;
+			i.nullable = true;
+			break;
+		case REGEXP_REPEAT:
+			c = analyze(e.exp1);
+			repeat(c, i, 0);
+			break;
+		case REGEXP_REPEAT_MIN:
+			c = analyze(e.exp1);
+			repeat(c, i, e.min);
+			break;
+		case REGEXP_REPEAT_MINMAX:
+			c = analyze(e.exp1);
+			if (e.min > e.max) {
+				i.setNfa(1);
+				i.setDfa(1);
+				i.bounded = true;
+			} else if (e.max == 0) {
+				i.setNfa(1);
+				i.setDfa(1);
+				i.nullable = true;
+				i.bounded = true;
+			} else {
+				copy(c, i);
+				i.nfa_bound = e.max * c.nfa_bound + 1;
+				i.nfa_estimate = e.max * c.nfa_estimate + 1;
+				i.dfa_bound = Double.POSITIVE_INFINITY; // bounded by the subset construction
+				i.dfa_estimate = e.max * c.dfa_estimate + 1;
+				i.nullable = e.min == 0 || c.nullable;
+			}
+			break;
+		case REGEXP_COMPLEMENT:
+			c = analyze(e.exp1);
+			i.nfa_bound = i.dfa_bound = c.dfa_bound + 1;
+			i.nfa_estimate = i.dfa_estimate = c.dfa_estimate + 1;
+			i.nullable = !c.nullable;
+			i.first = i.chars = i.tail = ALL_CHARS;
+			break;
+		case REGEXP_CHAR:
+			leaf(i, 2, new int[] { e.c, e.c });
+			break;
+		case REGEXP_CHAR_RANGE:
+			leaf(i, 2, new int[] { e.from, e.to });
+			break;
+		case REGEXP_ANYCHAR:
+			leaf(i, 2, ALL_CHARS);
+			break;
+		case REGEXP_EMPTY:
+			leaf(i, 1, NO_CHARS);
+			i.first = NO_CHARS;
+			break;
+		case REGEXP_STRING:
+			if (e.s.isEmpty()) {
+				leaf(i, 1, NO_CHARS);
+				i.nullable = true;
+			} else {
+				leaf(i, e.s.length() + 1, chars(e.s));
+				i.first = new int[] { e.s.charAt(0), e.s.charAt(0) };
+			}
+			break;
+		case REGEXP_ANYSTRING:
+			leaf(i, 1, ALL_CHARS);
+			i.nullable = true;
+			i.bounded = false;
+			i.tail = ALL_CHARS;
+			break;
+		case REGEXP_AUTOMATON:
+			Automaton a = automata != null ? automata.get(e.s) : null;
+			if (a != null) {
+				int n = a.getNumberOfStates();
+				i.setNfa(n);
+				i.dfa_bound = a.isDeterministic() ? n : subsets(n);
+				i.dfa_estimate = n;
+				i.nullable = a.getInitialState().isAccept();
+			} else {
+				i.nfa_bound = i.dfa_bound = Double.POSITIVE_INFINITY;
+				i.nfa_estimate = i.dfa_estimate = 1;
+			}
+			i.first = i.chars = i.tail = ALL_CHARS;
+			break;
+		case REGEXP_INTERVAL:
+			leaf(i, BasicAutomata.makeInterval(e.min, e.max, e.digits).getNumberOfStates(), DIGITS);
+			i.bounded = e.digits > 0;
+			break;
+		}
+		return i;
+	}
+	
+	private static void leaf(Info i, double n, int[] chars) {
+		i.setNfa(n);
+		i.setDfa(n);
+		i.bounded = true;
+		i.first = i.chars = chars;
+	}
+	
+	private static void copy(Info from, Info to) {
+		to.nfa_bound = from.nfa_bound;
+		to.nfa_estimate = from.nfa_estimate;
+		to.dfa_bound = from.dfa_bound;
+		to.dfa_estimate = from.dfa_estimate;
+		to.nullable = from.nullable;
+		to.bounded = from.bounded;
+		to.first = from.first;
+		to.chars = from.chars;
+		to.tail = from.tail;
+	}
+	
+	/**
+	 * Summarizes at least <code>min</code> repetitions.
+	 */
+	private static void repeat(Info c, Info i, int min) {
+		i.nfa_bound = (min + 1) * c.nfa_bound + 1;
+		i.nfa_estimate = (min + 1) * c.nfa_estimate + 1;
+		i.dfa_bound = min == 0 ? Math.pow(2, c.dfa_bound) : Double.POSITIVE_INFINITY;
+		i.dfa_estimate = Math.max(min, 1) * c.dfa_estimate + 1;
+		i.nullable = min == 0 || c.nullable;
+		i.bounded = c.chars.length == 0;
+		i.first = c.first;
+		i.chars = c.chars;
+		i.tail = c.chars;
+	}
+	
+	/**
+	 * Returns the number of positions overlapping the given characters in the bounded prefix of 
+	 * a concatenation, starting from the given operand (at most {@link #MAX_WINDOW}).
+	 */
+	private int window(RegExp[] exps, int from, int[] c) {
+		int n = 0;
+		for (int k = from; k < exps.length && n < MAX_WINDOW; k++) {
+			n += positions(exps[k], c);
+			if (!analyze(exps[k]).bounded)
+				break;
+		}
+		return Math.min(n, MAX_WINDOW);
+	}
+	
+	/**
+	 * Returns the number of positions overlapping the given characters in the bounded prefix
+	 * of the given regular expression (at most about {@link #MAX_WINDOW}).
+	 */
+	private int positions(RegExp e, int[] c) {
+		int n = 0;
+		switch (e.kind) {
+		case REGEXP_UNION:
+			for (RegExp f : e.exps)
+				n = Math.max(n, positions(f, c));
+			break;
+		case REGEXP_CONCATENATION:
+			n = window(e.exps, 0, c);
+			break;
+		case REGEXP_INTERSECTION:
+			n = positions(e.exps[0], c);
+			for (int k = 1; k < e.exps.length; k++)
+				n = Math.min(n, positions(e.exps[k], c));
+			break;
+		case REGEXP_OPTIONAL:
+			n = positions(e.exp1, c);
+			break;
+		case REGEXP_REPEAT_MIN:
+			n = (int)Math.min((long)e.min * positions(e.exp1, c), MAX_WINDOW);
+			break;
+		case REGEXP_REPEAT_MINMAX:
+			n = (int)Math.min((long)e.max * positions(e.exp1, c), MAX_WINDOW);
+			break;
+		case REGEXP_CHAR:
+		case REGEXP_CHAR_RANGE:
+		case REGEXP_ANYCHAR:
+			n = overlaps(analyze(e).first, c) ? 1 : 0;
+			break;
+		case REGEXP_STRING:
+			for (int k = 0; k < e.s.length() && n < MAX_WINDOW; k++)
+				if (contains(c, e.s.charAt(k)))
+					n++;
+			break;
+		case REGEXP_INTERVAL:
+			if (e.digits > 0 && overlaps(DIGITS, c))
+				n = e.digits;
+			break;
+		default: // repetitions, complements, named automata
+		}
+		return n;
+	}
+	
+	/**
+	 * Returns the number of nonempty subsets of <code>n</code> states.
+	 */
+	static double subsets(double n) {
+		return Math.pow(2, n) - 1;
+	}
+	
+	/**
+	 * Returns the characters of the given string as sorted intervals.
+	 */
+	static int[] chars(String s) {
+		char[] cs = s.toCharArray();
+		Arrays.sort(cs);
+		int[] a = new int[2 * cs.length];
+		int n = 0;
+		for (int k = 0; k < cs.length; k++) {
+			a[n++] = cs[k];
+			while (k + 1 < cs.length && cs[k + 1] <= cs[k] + 1)
+				k++;
+			a[n++] = cs[k];
+		}
+		return Arrays.copyOf(a, n);
+	}
+	
+	static boolean contains(int[] s, char c) {
+		for (int k = 0; k < s.length; k += 2)
+			if (s[k] <= c && c <= s[k + 1])
+				return true;
+		return false;
+	}
+	
+	static boolean overlaps(int[] s1, int[] s2) {
+		for (int k1 = 0, k2 = 0; k1 < s1.length && k2 < s2.length;)
+			if (s1[k1 + 1] < s2[k2])
+				k1 += 2;
+			else if (s2[k2 + 1] < s1[k1])
+				k2 += 2;
+			else
+				return true;
+		return false;
+	}
+	
+	static int[] union(int[] s1, int[] s2) {
+		if (s1.length == 0 || s1 == s2)
+			return s2;
+		if (s2.length == 0)
+			return s1;
+		int[] a = new int[s1.length + s2.length];
+		int n = 0, k1 = 0, k2 = 0;
+		while (k1 < s1.length || k2 < s2.length) {
+			int from, to;
+			if (k2 == s2.length || (k1 < s1.length && s1[k1] <= s2[k2])) {
+				from = s1[k1];
+				to = s1[k1 + 1];
+				k1 += 2;
+			} else {
+				from = s2[k2];
+				to = s2[k2 + 1];
+				k2 += 2;
+			}
+			if (n > 0 && from <= a[n - 1] + 1)
+				a[n - 1] = Math.max(a[n - 1], to);
+			else {
+				a[n++] = from;
+				a[n++] = to;
+			}
+		}
+		return Arrays.copyOf(a, n);
+	}
+	
+	static int[] intersection(int[] s1, int[] s2) {
+		if (s1 == s2 || s2 == ALL_CHARS)
+			return s1;
+		if (s1 == ALL_CHARS)
+			return s2;
+		int[] a = new int[s1.length + s2.length];
+		int n = 0;
+		for (int k1 = 0, k2 = 0; k1 < s1.length && k2 < s2.length;) {
+			int from = Math.max(s1[k1], s2[k2]), to = Math.min(s1[k1 + 1], s2[k2 + 1]);
+			if (from <= to) {
+				a[n++] = from;
+				a[n++] = to;
+			}
+			if (s1[k1 + 1] < s2[k2 + 1])
+				k1 += 2;
+			else
+				k2 += 2;
+		}
+		return Arrays.copyOf(a, n);
+	}
+}
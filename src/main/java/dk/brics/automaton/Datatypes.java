@@ -422,14 +422,17 @@ final public class Datatypes {
 	 * <tr><td><code>Cn</code></td><td><a target="_top" href="http://www.unicode.org/Public/3.1-Update/UnicodeData-3.1.0.txt">Cn</a> category from Unicode 3.1</td></tr>
 	 * <tr><td><code>C</code></td><td><a target="_top" href="http://www.unicode.org/Public/3.1-Update/UnicodeData-3.1.0.txt">C</a> category from Unicode 3.1</td></tr>
 	 * </table>
-	 * <p>Loaded automata are cached in memory.
+	 * <p>Loaded automata are cached in memory. They are frozen (see {@link Automaton#freeze()}),
+	 * so they can be shared, in particular by {@link RegExp#toAutomaton(AutomatonProvider)}.
 	 * @param name name of automaton
 	 * @return automaton
 	 */
-	public static Automaton get(String name) {
+	public static synchronized Automaton get(String name) {
 		Automaton a = automata.get(name);
 		if (a == null) {
 			a = load(name);
+			if (a != null)
+				a.freeze();
 			automata.put(name, a);
 		}
 		return a;
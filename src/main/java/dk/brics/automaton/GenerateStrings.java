@@ -109,7 +109,7 @@ public class GenerateStrings {
             if (curr.isAccept()) {
                 addPathToList(currPath, strings, config);
             }
-            for (Transition t : curr.getTransitions()) {
+            for (Transition t : curr.transitions) {
                 if (t.getDest().numVisits < config.getMaxNumVisits()) {
                     if (curr.equals(t.getDest())) {
                         GenerateStringsConfiguration reducedVisitsConfig = config.withMaxNumVisits(originalValue -> originalValue / 2);
@@ -201,7 +201,7 @@ public class GenerateStrings {
 
     private static ArrayList<Transition> findTransitions(State currState, State destState) {
         ArrayList<Transition> transitions = new ArrayList<>();
-        for (Transition t : currState.getTransitions()) {
+        for (Transition t : currState.transitions) {
             if (t.getDest().equals(destState)) {
                 transitions.add(t);
             }
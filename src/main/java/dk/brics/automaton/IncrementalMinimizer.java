@@ -0,0 +1,430 @@
+/*
+ * dk.brics.automaton
+ * 
+ * Copyright (c) 2001-2017 Anders Moeller
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package dk.brics.automaton;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Incremental minimization of deterministic automata, which can be stopped at a deadline.
+ * <p>
+ * In the style of Watson and Daciuk's algorithm, pairs of states are tested for equivalence one 
+ * at a time, and equivalent states are merged immediately (in a union-find structure). 
+ * The automaton built from the merged states therefore accepts the same language at any time, and
+ * becomes minimal when all pairs have been tested. Each pair is tested by a 
+ * Hopcroft-Karp traversal of the pairs of successors, and all pairs of states that are 
+ * met by a successful test are merged at once. Pairs found to be distinct are remembered.
+ * Only pairs of states that are not distinguished by the first rounds of Moore's algorithm
+ * (computed by the constructor, in time linear in the number of transitions) are candidates 
+ * for testing. If those rounds reach the coarsest partition, its classes are merged directly.
+ * <p>
+ * The methods {@link #run(long, TimeUnit)}, {@link #run()} and {@link #getAutomaton()} may be
+ * called from different threads, but not at the same time; {@link #getProgress()}, 
+ * {@link #getNumberOfStates()} and {@link #isComplete()} may be called at any time, for example 
+ * while the minimization runs in the background (see {@link #runInBackground(Executor)}).
+ * @see MinimizationOperations#minimizeIncremental(Automaton, long, TimeUnit)
+ */
+final public class IncrementalMinimizer {
+	
+	/** Number of rounds of Moore's algorithm used for partitioning the candidate pairs. */
+	static final int SIGNATURE_ROUNDS = 8;
+	
+	/** Number of steps of a pair test between checks of the deadline. */
+	static final int DEADLINE_STEPS = 1 << 10;
+	
+	final boolean[] accept; // accept[n] is the sink state
+	final Transition[][] transitions;
+	final int[][] targets; // target state numbers, n for dead states
+	final int[] cls; // class after the signature rounds, -1 for the sink
+	final boolean[] live;
+	final int n;
+	final int[] parent; // union-find, the root of a class is its smallest state number
+	final LongIntMap distinct = new LongIntMap();
+	final int[] link; // links of the pending test, -1 if none
+	
+	/** Pairs of states linked by the pending test, which are visited in order. */
+	int[] log = new int[16];
+	
+	int size, visited;
+	
+	/** Candidate states ordered by class, the states of class b are at first[b]..first[b+1]-1. */
+	final int[] order, first;
+	
+	/** If set, the signature rounds reached the coarsest partition, so states of the same class are equivalent. */
+	final boolean refined;
+	
+	int bucket, row, column;
+	
+	final long total;
+	
+	volatile long done;
+	
+	volatile int count;
+	
+	/**
+	 * Constructs a new incremental minimizer for the given automaton.
+	 * The automaton is determinized (if nondeterministic, a clone is determinized) and then not 
+	 * used anymore, so it may be modified while the minimizer runs.
+	 */
+	public IncrementalMinimizer(Automaton a) {
+		if (!a.isDeterministic()) {
+			a = a.clone();
+			a.determinize();
+		}
+		State[] states = a.getStateArray();
+		transitions = Arrays.copyOf(a.getSortedTransitions(), states.length + 1);
+		int[][] tg = a.getSortedTransitionTargets();
+		n = states.length;
+		accept = new boolean[n + 1];
+		for (int p = 0; p < n; p++)
+			accept[p] = states[p].accept;
+		// find live states, and redirect transitions to dead states to the sink
+		int[][] in = new int[n][];
+		int[] indegree = new int[n];
+		for (int p = 0; p < n; p++)
+			for (int q : tg[p])
+				indegree[q]++;
+		for (int q = 0; q < n; q++)
+			in[q] = new int[indegree[q]];
+		for (int p = 0; p < n; p++)
+			for (int q : tg[p])
+				in[q][--indegree[q]] = p;
+		live = new boolean[n + 1];
+		IntQueue worklist = new IntQueue();
+		for (int p = 0; p < n; p++)
+			if (accept[p]) {
+				live[p] = true;
+				worklist.add(p);
+			}
+		while (!worklist.isEmpty())
+			for (int p : in[worklist.removeFirst()])
+				if (!live[p]) {
+					live[p] = true;
+					worklist.add(p);
+				}
+		targets = new int[n + 1][];
+		for (int p = 0; p < n; p++) {
+			targets[p] = tg[p].clone();
+			for (int j = 0; j < targets[p].length; j++)
+				if (!live[targets[p][j]])
+					targets[p][j] = n;
+		}
+		transitions[n] = new Transition[0];
+		targets[n] = new int[0];
+		parent = new int[n + 1];
+		for (int p = 0; p <= n; p++)
+			parent[p] = p;
+		link = new int[n + 1];
+		Arrays.fill(link, -1);
+		// partition the live states by signature rounds, starting from one class
+		cls = new int[n + 1];
+		int classes = 1;
+		cls[n] = -1;
+		int[] sig = new int[8];
+		boolean stable = false;
+		for (int r = 0; r < SIGNATURE_ROUNDS && !stable; r++) {
+			HashMap<IntArray, Integer> signatures = new HashMap<IntArray, Integer>();
+			int[] c = new int[n + 1];
+			c[n] = -1;
+			for (int p = 0; p < n; p++)
+				if (live[p]) {
+					int k = 0;
+					sig[k++] = cls[p];
+					sig[k++] = accept[p] ? 1 : 0;
+					Transition[] tr = transitions[p];
+					for (int j = 0; j < tr.length; j++) {
+						int t = cls[targets[p][j]];
+						if (t >= 0) {
+							if (k > 2 && sig[k - 2] + 1 == tr[j].min && sig[k - 1] == t)
+								sig[k - 2] = tr[j].max;
+							else {
+								if (k + 3 > sig.length)
+									sig = Arrays.copyOf(sig, sig.length * 2);
+								sig[k++] = tr[j].min;
+								sig[k++] = tr[j].max;
+								sig[k++] = t;
+							}
+						}
+					}
+					Integer b = signatures.get(new IntArray(Arrays.copyOf(sig, k)));
+					if (b == null) {
+						b = signatures.size();
+						signatures.put(new IntArray(Arrays.copyOf(sig, k)), b);
+					}
+					c[p] = b;
+				}
+			System.arraycopy(c, 0, cls, 0, n + 1);
+			stable = signatures.size() == classes;
+			classes = signatures.size();
+		}
+		refined = stable;
+		// order the live states by class, by counting sort
+		first = new int[classes + 1];
+		int m = 0;
+		for (int p = 0; p < n; p++)
+			if (live[p]) {
+				first[cls[p] + 1]++;
+				m++;
+			}
+		for (int b = 0; b < classes; b++)
+			first[b + 1] += first[b];
+		order = new int[m];
+		int[] next = Arrays.copyOf(first, classes);
+		for (int p = 0; p < n; p++)
+			if (live[p])
+				order[next[cls[p]]++] = p;
+		long t = 0;
+		for (int b = 0; b < classes; b++) {
+			long s = first[b + 1] - first[b];
+			t += s * (s - 1) / 2;
+		}
+		total = t;
+		count = m;
+		column = 1;
+	}
+	
+	/**
+	 * Continues the minimization until it is complete or the given time has elapsed.
+	 * If the time elapses during the test of a pair of states, that test is resumed by the next call.
+	 * @return true if the minimization is complete
+	 */
+	public boolean run(long timeout, TimeUnit unit) {
+		return run(System.nanoTime() + unit.toNanos(timeout), true);
+	}
+	
+	/**
+	 * Runs the minimization to completion.
+	 */
+	public void run() {
+		run(0, false);
+	}
+	
+	/**
+	 * Runs the minimization to completion on the given executor. When the minimization is 
+	 * complete, the returned future is completed with a run automaton for the minimal automaton,
+	 * for example to be swapped in for a run automaton of a partially minimized automaton.
+	 */
+	public CompletableFuture<RunAutomaton> runInBackground(Executor executor) {
+		return CompletableFuture.supplyAsync(() -> {
+			run();
+			return new RunAutomaton(getAutomaton());
+		}, executor);
+	}
+	
+	/**
+	 * Returns true if the minimization is complete.
+	 */
+	public boolean isComplete() {
+		return done == total;
+	}
+	
+	/**
+	 * Returns the fraction of candidate pairs of states that have been decided, 
+	 * a number between 0 and 1.
+	 */
+	public double getProgress() {
+		return total == 0 ? 1 : (double)done / total;
+	}
+	
+	/**
+	 * Returns the number of live states of the automaton built by {@link #getAutomaton()}.
+	 */
+	public int getNumberOfStates() {
+		return count;
+	}
+	
+	/**
+	 * Returns a new deterministic automaton with the states merged so far, 
+	 * which accepts the same language as the original automaton. 
+	 * The automaton is minimal if the minimization is complete.
+	 */
+	public Automaton getAutomaton() {
+		if (!live[0])
+			return BasicAutomata.makeEmpty();
+		State[] newstates = new State[n];
+		for (int p : order) {
+			int r = find(p);
+			if (newstates[r] == null) {
+				newstates[r] = new State();
+				newstates[r].accept = accept[r];
+			}
+		}
+		for (int p : order)
+			if (find(p) == p)
+				for (int j = 0; j < targets[p].length; j++) {
+					int q = targets[p][j];
+					if (q < n)
+						newstates[p].transitions.add(new Transition(transitions[p][j].min, transitions[p][j].max, newstates[find(q)]));
+				}
+		Automaton a = new Automaton();
+		a.setInitialState(newstates[find(0)]);
+		a.deterministic = true;
+		a.reduce();
+		return a;
+	}
+	
+	private boolean run(long deadline, boolean bounded) {
+		if (refined && done < total) {
+			for (int p : order)
+				union(order[first[cls[p]]], p);
+			bucket = first.length - 1;
+			done = total;
+		}
+		for (; bucket < first.length - 1; bucket++) {
+			int end = first[bucket + 1];
+			for (; row < end; row++, column = row + 1) {
+				int p = order[row];
+				for (; column < end; column++) {
+					if (find(p) != p) {
+						// decided by the pairs of the root of p
+						done += end - column;
+						break;
+					}
+					int q = order[column];
+					if (find(q) == q && distinct.get(LongIntMap.pack(p, q)) < 0) {
+						if (bounded && System.nanoTime() - deadline >= 0)
+							return false;
+						int result = test(p, q, deadline, bounded);
+						if (result < 0)
+							return false;
+						if (result == 0)
+							distinct.putIfAbsent(LongIntMap.pack(p, q), 0);
+					}
+					done++;
+				}
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Tests whether the given states are equivalent, and merges the pairs of states met by
+	 * the test if so. A test that reaches the deadline is resumed by the next call.
+	 * @return 1 if equivalent, 0 if distinct, -1 if the deadline was reached
+	 */
+	private int test(int p, int q, long deadline, boolean bounded) {
+		if (size == 0) {
+			link[q] = p;
+			log[size++] = q;
+			log[size++] = p;
+		}
+		int result = 1;
+		loop: while (visited < size) {
+			if (bounded && (visited & (2 * DEADLINE_STEPS - 1)) == 0 && System.nanoTime() - deadline >= 0)
+				return -1;
+			int x = log[visited++], y = log[visited++];
+			Transition[] tx = transitions[x], ty = transitions[y];
+			int[] gx = targets[x], gy = targets[y];
+			int i = 0, j = 0;
+			for (int c = Character.MIN_VALUE; c <= Character.MAX_VALUE;) {
+				// find the targets on the next interval where both are constant
+				int u = n, v = n, endx = Character.MAX_VALUE, endy = Character.MAX_VALUE;
+				if (i < gx.length)
+					if (tx[i].min <= c) {
+						u = gx[i];
+						endx = tx[i].max;
+					} else
+						endx = tx[i].min - 1;
+				if (j < gy.length)
+					if (ty[j].min <= c) {
+						v = gy[j];
+						endy = ty[j].max;
+					} else
+						endy = ty[j].min - 1;
+				if (endx <= endy && i < gx.length && tx[i].max == endx)
+					i++;
+				if (endy <= endx && j < gy.length && ty[j].max == endy)
+					j++;
+				c = Math.min(endx, endy) + 1;
+				u = findLinked(u);
+				v = findLinked(v);
+				if (u != v) {
+					long key = LongIntMap.pack(Math.min(u, v), Math.max(u, v));
+					if (cls[u] != cls[v] || accept[u] != accept[v] || distinct.get(key) >= 0) {
+						distinct.putIfAbsent(key, 0);
+						result = 0;
+						break loop;
+					}
+					link[u] = v;
+					if (size + 2 > log.length)
+						log = Arrays.copyOf(log, log.length * 2);
+					log[size++] = u;
+					log[size++] = v;
+				}
+			}
+		}
+		// the linked pairs are equivalent if the test succeeded
+		for (int k = 0; k < size; k += 2) {
+			if (result == 1)
+				union(log[k], log[k + 1]);
+			link[log[k]] = -1;
+		}
+		size = visited = 0;
+		return result;
+	}
+	
+	/**
+	 * Returns the root of the class of the given state, including the links of the pending test.
+	 */
+	private int findLinked(int x) {
+		x = find(x);
+		while (link[x] >= 0) {
+			int y = link[x];
+			if (link[y] >= 0)
+				link[x] = link[y];
+			x = y;
+		}
+		return x;
+	}
+	
+	private int find(int x) {
+		while (parent[x] != x) {
+			parent[x] = parent[parent[x]];
+			x = parent[x];
+		}
+		return x;
+	}
+	
+	private void union(int x, int y) {
+		x = find(x);
+		y = find(y);
+		if (x != y) {
+			if (x < y)
+				parent[y] = x;
+			else
+				parent[x] = y;
+			count--;
+		}
+	}
+}
@@ -0,0 +1,79 @@
+/*
+ * dk.brics.automaton
+ * 
+ * Copyright (c) 2001-2017 Anders Moeller
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package dk.brics.automaton;
+
+/**
+ * First-in-first-out queue of <code>int</code> values, backed by a growable ring buffer.
+ */
+final class IntQueue {
+
+	private int[] elements;
+	private int head;
+	private int size;
+
+	/**
+	 * Constructs a new empty queue.
+	 */
+	IntQueue() {
+		elements = new int[16];
+	}
+
+	/**
+	 * Adds a value at the end of this queue.
+	 */
+	void add(int n) {
+		if (size == elements.length) {
+			int[] e = new int[elements.length * 2];
+			for (int i = 0; i < size; i++)
+				e[i] = elements[(head + i) & (elements.length - 1)];
+			elements = e;
+			head = 0;
+		}
+		elements[(head + size++) & (elements.length - 1)] = n;
+	}
+
+	/**
+	 * Removes and returns the value at the front of this queue.
+	 */
+	int removeFirst() {
+		int n = elements[head];
+		head = (head + 1) & (elements.length - 1);
+		size--;
+		return n;
+	}
+
+	/**
+	 * Returns true if this queue is empty.
+	 */
+	boolean isEmpty() {
+		return size == 0;
+	}
+}
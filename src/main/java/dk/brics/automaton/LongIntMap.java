@@ -0,0 +1,120 @@
+/*
+ * dk.brics.automaton
+ * 
+ * Copyright (c) 2001-2017 Anders Moeller
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package dk.brics.automaton;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing hash map from <code>long</code> keys to <code>int</code> values.
+ * Used by product constructions, where a pair of state numbers is packed into
+ * one <code>long</code> key (see {@link #pack(int, int)}).
+ * Keys must be non-negative.
+ */
+final class LongIntMap {
+
+	private static final long FREE = -1;
+
+	private long[] keys;
+	private int[] values;
+	private int size;
+	private int mask;
+
+	/**
+	 * Constructs a new empty map.
+	 */
+	LongIntMap() {
+		allocate(16);
+	}
+
+	private void allocate(int capacity) {
+		keys = new long[capacity];
+		Arrays.fill(keys, FREE);
+		values = new int[capacity];
+		mask = capacity - 1;
+	}
+
+	/**
+	 * Packs a pair of non-negative numbers into a key.
+	 */
+	static long pack(int n1, int n2) {
+		return ((long)n1 << 32) | n2;
+	}
+
+	private int slot(long key) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		int i = (int)(h ^ (h >>> 32)) & mask;
+		while (keys[i] != FREE && keys[i] != key)
+			i = (i + 1) & mask;
+		return i;
+	}
+
+	/**
+	 * Returns the value associated with the given key, -1 if none.
+	 */
+	int get(long key) {
+		int i = slot(key);
+		return keys[i] == FREE ? -1 : values[i];
+	}
+
+	/**
+	 * Associates the given value with the given key, unless the key is already present.
+	 * @return the value already associated with the key, -1 if the new value was added
+	 */
+	int putIfAbsent(long key, int value) {
+		int i = slot(key);
+		if (keys[i] != FREE)
+			return values[i];
+		keys[i] = key;
+		values[i] = value;
+		if (++size * 2 > keys.length)
+			rehash();
+		return -1;
+	}
+
+	/**
+	 * Returns the number of entries.
+	 */
+	int size() {
+		return size;
+	}
+
+	private void rehash() {
+		long[] oldkeys = keys;
+		int[] oldvalues = values;
+		allocate(oldkeys.length * 2);
+		for (int i = 0; i < oldkeys.length; i++)
+			if (oldkeys[i] != FREE) {
+				int j = slot(oldkeys[i]);
+				keys[j] = oldkeys[i];
+				values[j] = oldvalues[i];
+			}
+	}
+}
@@ -30,13 +30,15 @@
 package dk.brics.automaton;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.Set;
 import java.util.Arrays;
-import java.util.Comparator;
 import java.util.TreeSet;
 import java.util.SortedSet;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Operations for minimizing automata.
@@ -47,11 +49,15 @@ final public class MinimizationOperations {
 
 	/**
 	 * Minimizes (and determinizes if not already deterministic) the given automaton.
+	 * Automata without cycles (that is, with finite languages) are minimized using
+	 * {@link #minimizeAcyclic(Automaton)}, otherwise the selected algorithm is used.
 	 * @see Automaton#setMinimization(int)
 	 */
 	public static void minimize(Automaton a) {
-		if (!a.isSingleton()) {
-			switch (Automaton.minimization) {
+		if (a.frozen)
+			return;
+		if (!a.isSingleton() && !minimizeAcyclic(a)) {
+			switch (AutomatonContext.getCurrent().minimization) {
 			case Automaton.MINIMIZE_HUFFMAN:
 				minimizeHuffman(a);
 				break;
@@ -61,6 +67,12 @@ final public class MinimizationOperations {
 			case Automaton.MINIMIZE_VALMARI:
 				minimizeValmari(a);
 				break;
+			case Automaton.MINIMIZE_PARALLEL:
+				minimizeParallel(a);
+				break;
+			case Automaton.MINIMIZE_SUBSET_OR_BRZOZOWSKI:
+				minimizeSubsetOrBrzozowski(a);
+				break;
 			default:
 				minimizeHopcroft(a);
 			}
@@ -227,7 +239,7 @@ final public class MinimizationOperations {
 	 */
 	public static void minimizeHopcroft(Automaton a) {
 		a.determinize();
-		Set<Transition> tr = a.initial.getTransitions();
+		Set<Transition> tr = a.initial.transitions;
 		if (tr.size() == 1) {
 			Transition t = tr.iterator().next();
 			if (t.to == a.initial && t.min == Character.MIN_VALUE && t.max == Character.MAX_VALUE)
@@ -394,6 +406,7 @@ final public class MinimizationOperations {
 	 */
 	public static void minimizeValmari(Automaton automaton) {
 		automaton.determinize();
+		automaton.unshare();
 		Set<State> states = automaton.getStates();
 		splitTransitions(states);
 		int stateCount = states.size();
@@ -408,7 +421,7 @@ final public class MinimizationOperations {
 		Automaton.setStateNumbers(states);
 		int number = 0;
 		for (State s : automaton.getStates()) {
-			for (Transition t : s.getTransitions()) {
+			for (Transition t : s.transitions) {
 				tails[number] = s.number;
 				labels[number] = new IntPair(t.min, t.max);
 				heads[number] = t.getDest().number;
@@ -421,7 +434,13 @@ final public class MinimizationOperations {
 		blocks.split();
 		// make initial transition partition
 		if (transitionCount > 0) {
-			Arrays.sort(cords.elements, new LabelComparator(labels));
+			// group transitions with the same label (the transition number is in the low bits)
+			long[] keys = new long[transitionCount];
+			for (int t = 0; t < transitionCount; ++t)
+				keys[t] = ((long)labels[t].n1 << 47) | ((long)labels[t].n2 << 31) | t;
+			Arrays.sort(keys);
+			for (int i = 0; i < transitionCount; ++i)
+				cords.elements[i] = (int)(keys[i] & Integer.MAX_VALUE);
 			cords.setCount = cords.markedElementCount[0] = 0;
 			IntPair a = labels[cords.elements[0]];
 			for (int i = 0; i < transitionCount; ++i) {
@@ -466,14 +485,350 @@ final public class MinimizationOperations {
 			if (blocks.locations[tails[t]] == blocks.first[blocks.setNo[tails[t]]]) {
 				State tail = newStates[blocks.setNo[tails[t]]];
 				State head = newStates[blocks.setNo[heads[t]]];
-				tail.addTransition(new Transition((char)labels[t].n1, (char)labels[t].n2, head));
+				tail.transitions.add(new Transition((char)labels[t].n1, (char)labels[t].n2, head));
 			}
 		}
 		automaton.setInitialState(newStates[blocks.setNo[automaton.getInitialState().number]]);
 		automaton.reduce();
 	}
 
-	private static void makeAdjacent(int[] A, int[] F, int[] K, int nn, int mm) {
+	/**
+	 * Minimizes the given automaton using Hopcroft's algorithm on flat integer arrays.
+	 * The missing transitions lead to an implicit sink state, and blocks containing the
+	 * sink are never used as splitters (following Beal and Crochemore), so the automaton 
+	 * is not made total. All pending splitters are taken in rounds, and the predecessors 
+	 * of the splitters of a round are computed in parallel on the fork-join pool 
+	 * before the blocks are split.
+	 * The states of the given automaton are not modified; the minimal automaton consists of new states.
+	 * <p>
+	 * Complexity: O(m log n) where m is the number of transitions (counted per character class)
+	 * and n is the number of states.
+	 */
+	public static void minimizeParallel(Automaton a) {
+		a.determinize();
+		State[] states = a.getStateArray();
+		Transition[][] transitions = a.getSortedTransitions();
+		int[][] targets = a.getSortedTransitionTargets();
+		char[] sigma = a.getStartPoints();
+		int n = states.length; // the sink state is number n
+		// make reverse transitions (one per character class), grouped by destination state
+		int[] inStart = new int[n + 2];
+		for (int p = 0; p < n; p++)
+			for (int j = 0; j < transitions[p].length; j++) {
+				Transition t = transitions[p][j];
+				inStart[targets[p][j] + 1] += SpecialOperations.findIndex(t.max, sigma) - SpecialOperations.findIndex(t.min, sigma) + 1;
+			}
+		for (int q = 0; q <= n; q++)
+			inStart[q + 1] += inStart[q];
+		int[] inLetter = new int[inStart[n + 1]];
+		int[] inSource = new int[inStart[n + 1]];
+		int[] next = Arrays.copyOf(inStart, n + 1);
+		for (int p = 0; p < n; p++)
+			for (int j = 0; j < transitions[p].length; j++) {
+				Transition t = transitions[p][j];
+				int q = targets[p][j];
+				for (int x = SpecialOperations.findIndex(t.min, sigma), hi = SpecialOperations.findIndex(t.max, sigma); x <= hi; x++) {
+					inLetter[next[q]] = x;
+					inSource[next[q]++] = p;
+				}
+			}
+		// make initial partition, with the sink among the rejecting states
+		Partition blocks = new Partition(n + 1);
+		for (int p = 0; p < n; p++)
+			if (states[p].accept)
+				blocks.mark(p);
+		blocks.split();
+		boolean[] waiting = new boolean[n + 1];
+		int[] pending = new int[n + 1];
+		int pendingCount = 0;
+		for (int b = 0; b < blocks.setCount; b++)
+			if (b != blocks.setNo[n]) {
+				waiting[b] = true;
+				pending[pendingCount++] = b;
+			}
+		// refine
+		while (pendingCount > 0) {
+			int[] splitters = Arrays.copyOf(pending, pendingCount);
+			int size = 0;
+			for (int b : splitters) {
+				waiting[b] = false;
+				size += blocks.past[b] - blocks.first[b];
+			}
+			pendingCount = 0;
+			long[][] predecessors = new long[splitters.length][];
+			PredecessorTask task = new PredecessorTask(splitters, 0, splitters.length, blocks, inStart, inLetter, inSource, predecessors);
+			if (splitters.length > 1 && size >= PARALLEL_THRESHOLD)
+				task.invoke();
+			else
+				task.compute();
+			for (long[] keys : predecessors)
+				for (int i = 0; i < keys.length;) {
+					int x = (int)(keys[i] >>> 32);
+					for (; i < keys.length && (int)(keys[i] >>> 32) == x; i++)
+						blocks.mark((int)keys[i]);
+					int sink = blocks.setNo[n];
+					int count = blocks.setCount;
+					blocks.split();
+					for (int b = count; b < blocks.setCount; b++) {
+						// a block that contains the sink is replaced by the other part
+						int w = blocks.setNo[n] == b ? sink : b;
+						if (!waiting[w]) {
+							waiting[w] = true;
+							pending[pendingCount++] = w;
+						}
+					}
+				}
+		}
+		// build new states and transitions, skipping the sink block
+		int sink = blocks.setNo[n];
+		State[] newstates = new State[blocks.setCount];
+		for (int b = 0; b < blocks.setCount; b++)
+			newstates[b] = new State();
+		for (int b = 0; b < blocks.setCount; b++)
+			if (b != sink) {
+				int p = blocks.elements[blocks.first[b]];
+				newstates[b].accept = states[p].accept;
+				for (int j = 0; j < transitions[p].length; j++) {
+					int r = blocks.setNo[targets[p][j]];
+					if (r != sink)
+						newstates[b].transitions.add(new Transition(transitions[p][j].min, transitions[p][j].max, newstates[r]));
+				}
+			}
+		a.setInitialState(newstates[blocks.setNo[0]]);
+		a.reduce();
+	}
+	
+	/** Minimum total size of the splitters of a round for computing their predecessors in parallel. */
+	static final int PARALLEL_THRESHOLD = 1 << 12;
+	
+	/**
+	 * Computes the predecessors of a range of splitters. For each splitter, the predecessors
+	 * are stored as an array of (character class, state) pairs packed into longs and sorted.
+	 */
+	static class PredecessorTask extends RecursiveAction {
+		
+		static final long serialVersionUID = 10001;
+		
+		final int[] splitters;
+		final int from, to;
+		final Partition blocks;
+		final int[] inStart, inLetter, inSource;
+		final long[][] predecessors;
+		
+		PredecessorTask(int[] splitters, int from, int to, Partition blocks, int[] inStart, int[] inLetter, int[] inSource, long[][] predecessors) {
+			this.splitters = splitters;
+			this.from = from;
+			this.to = to;
+			this.blocks = blocks;
+			this.inStart = inStart;
+			this.inLetter = inLetter;
+			this.inSource = inSource;
+			this.predecessors = predecessors;
+		}
+		
+		@Override
+		protected void compute() {
+			int size = 0;
+			for (int k = from; k < to; k++)
+				size += blocks.past[splitters[k]] - blocks.first[splitters[k]];
+			if (to - from > 1 && size >= PARALLEL_THRESHOLD) {
+				int mid = (from + to) >>> 1;
+				invokeAll(new PredecessorTask(splitters, from, mid, blocks, inStart, inLetter, inSource, predecessors),
+						new PredecessorTask(splitters, mid, to, blocks, inStart, inLetter, inSource, predecessors));
+				return;
+			}
+			for (int k = from; k < to; k++) {
+				int b = splitters[k];
+				size = 0;
+				for (int i = blocks.first[b]; i < blocks.past[b]; i++) {
+					int q = blocks.elements[i];
+					size += inStart[q + 1] - inStart[q];
+				}
+				long[] keys = new long[size];
+				size = 0;
+				for (int i = blocks.first[b]; i < blocks.past[b]; i++) {
+					int q = blocks.elements[i];
+					for (int e = inStart[q]; e < inStart[q + 1]; e++)
+						keys[size++] = ((long)inLetter[e] << 32) | inSource[e];
+				}
+				Arrays.sort(keys);
+				predecessors[k] = keys;
+			}
+		}
+	}
+
+	/**
+	 * Minimizes the given automaton by subset construction or by Brzozowski's algorithm,
+	 * depending on the size of the deterministic automaton. A nondeterministic automaton is 
+	 * first determinized with a state budget proportional to its number of states. If that 
+	 * budget is exceeded, the reverse automaton is determinized with the same budget instead, 
+	 * and if that succeeds, Brzozowski's algorithm is completed from there, which avoids building 
+	 * the large deterministic automaton. Otherwise, the automaton is determinized without that 
+	 * budget. The deterministic automaton is then minimized using {@link #minimizeParallel(Automaton)}, 
+	 * which was faster than {@link #minimizeHopcroft(Automaton)} and {@link #minimizeValmari(Automaton)} 
+	 * for deterministic automata of all sizes, alphabet partitions and transition densities 
+	 * in the minimization benchmark.
+	 * (Acyclic automata are handled by {@link #minimizeAcyclic(Automaton)} before this method is used.)
+	 */
+	public static void minimizeSubsetOrBrzozowski(Automaton a) {
+		if (!a.deterministic && !a.isSingleton()) {
+			long budget = Math.min(TRIAL_BUDGET_FACTOR * a.getNumberOfStates() + TRIAL_BUDGET_MIN, BasicOperations.getDefaultDfaBudget());
+			Automaton d = new Automaton();
+			d.initial = a.initial; // determinization constructs new states, so the states of a are kept
+			try {
+				Set<State> initialset = new HashSet<State>();
+				initialset.add(a.initial);
+				BasicOperations.determinize(d, initialset, budget);
+			} catch (DfaBudgetExceededException e) {
+				d = a.clone(); // reversal modifies the states
+				try {
+					BasicOperations.determinize(d, SpecialOperations.reverse(d), budget);
+				} catch (DfaBudgetExceededException e2) {
+					d = null;
+				}
+				if (d != null) {
+					BasicOperations.determinize(d, SpecialOperations.reverse(d));
+					a.setInitialState(d.initial);
+					a.deterministic = true;
+					return;
+				}
+			}
+			if (d != null) {
+				a.setInitialState(d.initial);
+				a.deterministic = true;
+			}
+		}
+		minimizeParallel(a);
+	}
+	
+	/** Budget for the trial determinizations of {@link #minimizeSubsetOrBrzozowski(Automaton)}, per state of the automaton. */
+	static final long TRIAL_BUDGET_FACTOR = 8;
+	
+	/** Additional budget for the trial determinizations of {@link #minimizeSubsetOrBrzozowski(Automaton)}. */
+	static final long TRIAL_BUDGET_MIN = 64;
+	
+	/**
+	 * Minimizes the given automaton incrementally using {@link IncrementalMinimizer}, 
+	 * stopping when the given time has elapsed. If stopped, the automaton is replaced by
+	 * a partially minimized deterministic automaton, which accepts the same language and
+	 * has no more states than the determinized automaton.
+	 * @return true if the minimization is complete
+	 */
+	public static boolean minimizeIncremental(Automaton a, long timeout, TimeUnit unit) {
+		IncrementalMinimizer m = new IncrementalMinimizer(a);
+		boolean complete = m.run(timeout, unit);
+		a.setInitialState(m.getAutomaton().initial);
+		a.deterministic = true;
+		return complete;
+	}
+	
+	/**
+	 * Minimizes the given automaton using Revuz's algorithm if it has no cycles.
+	 * The states are registered bottom-up by height (the length of the longest path to
+	 * a state without transitions), where states with the same acceptance and the same 
+	 * transitions to registered states are merged. 
+	 * The states of the given automaton are not modified; the minimal automaton consists of new states.
+	 * <p>
+	 * Complexity: linear in the number of states and transitions of the deterministic automaton.
+	 * @return false if the automaton has a cycle, in which case it is not modified
+	 */
+	public static boolean minimizeAcyclic(Automaton a) {
+		if (getHeights(a) == null)
+			return false;
+		a.determinize();
+		int[] height = getHeights(a);
+		State[] states = a.getStateArray();
+		Transition[][] transitions = a.getSortedTransitions();
+		int[][] targets = a.getSortedTransitionTargets();
+		int n = states.length;
+		// sort states by height
+		int[] start = new int[n + 1];
+		for (int p = 0; p < n; p++)
+			start[height[p] + 1]++;
+		for (int h = 0; h < n; h++)
+			start[h + 1] += start[h];
+		int[] order = new int[n];
+		for (int p = 0; p < n; p++)
+			order[start[height[p]]++] = p;
+		// register states, where -1 represents the dead states
+		int[] register = new int[n];
+		HashMap<IntArray, Integer> registered = new HashMap<IntArray, Integer>();
+		ArrayList<State> newstates = new ArrayList<State>();
+		int[] sig = new int[16];
+		for (int p : order) {
+			if (sig.length < 1 + 3 * transitions[p].length)
+				sig = new int[1 + 3 * transitions[p].length];
+			int k = 0;
+			sig[k++] = states[p].accept ? 1 : 0;
+			for (int j = 0; j < transitions[p].length; j++) {
+				Transition t = transitions[p][j];
+				int r = register[targets[p][j]];
+				if (r == -1)
+					continue;
+				if (k > 1 && sig[k - 1] == r && sig[k - 2] + 1 == t.min)
+					sig[k - 2] = t.max;
+				else {
+					sig[k++] = t.min;
+					sig[k++] = t.max;
+					sig[k++] = r;
+				}
+			}
+			if (k == 1 && sig[0] == 0) {
+				register[p] = -1;
+				continue;
+			}
+			IntArray key = new IntArray(Arrays.copyOf(sig, k));
+			Integer r = registered.get(key);
+			if (r == null) {
+				r = newstates.size();
+				registered.put(key, r);
+				State s = new State();
+				s.number = r;
+				s.accept = sig[0] == 1;
+				for (int i = 1; i < k; i += 3)
+					s.transitions.add(new Transition((char)sig[i], (char)sig[i + 1], newstates.get(sig[i + 2])));
+				newstates.add(s);
+			}
+			register[p] = r;
+		}
+		a.setInitialState(register[0] == -1 ? new State() : newstates.get(register[0]));
+		return true;
+	}
+	
+	/**
+	 * Returns the height of each state (indexed as in {@link Automaton#getStateArray()}),
+	 * or null if the automaton has a cycle.
+	 */
+	private static int[] getHeights(Automaton a) {
+		int[][] targets = a.getSortedTransitionTargets();
+		int n = targets.length;
+		int[] height = new int[n];
+		byte[] color = new byte[n]; // 0: unvisited, 1: on stack, 2: done
+		int[] stack = new int[n];
+		int[] next = new int[n];
+		stack[0] = 0;
+		color[0] = 1;
+		for (int sp = 1; sp > 0;) {
+			int p = stack[sp - 1];
+			if (next[p] < targets[p].length) {
+				int q = targets[p][next[p]++];
+				if (color[q] == 1)
+					return null;
+				if (color[q] == 0) {
+					color[q] = 1;
+					stack[sp++] = q;
+				} else if (height[q] >= height[p])
+					height[p] = height[q] + 1;
+			} else {
+				color[p] = 2;
+				if (--sp > 0 && height[p] >= height[stack[sp - 1]])
+					height[stack[sp - 1]] = height[p] + 1;
+			}
+		}
+		return height;
+	}
+
+	static void makeAdjacent(int[] A, int[] F, int[] K, int nn, int mm) {
 		for (int q=0; q <= nn; ++q)
 			F[q] = 0;
 		for (int t=0; t < mm; ++t)
@@ -487,17 +842,17 @@ final public class MinimizationOperations {
 	private static void splitTransitions(Set<State> states) {
 		TreeSet<Character> pointSet = new TreeSet<Character>();
 		for (State s : states) {
-			for (Transition t : s.getTransitions()) {
+			for (Transition t : s.transitions) {
 				pointSet.add(t.min);
 				pointSet.add(t.max);
 			}
 		}
 		for (State s : states) {
-			Set<Transition> transitions = s.getTransitions();
+			Set<Transition> transitions = s.transitions;
 			s.resetTransitions();
 			for (Transition t : transitions) {
 				if (t.min == t.max) {
-					s.addTransition(t);
+					s.transitions.add(t);
 					continue;
 				}
 				SortedSet<Character> headSet = pointSet.headSet(t.max, true);
@@ -506,10 +861,10 @@ final public class MinimizationOperations {
 				intersection.retainAll(tailSet);
 				char start = t.min;
 				for (Character c : intersection) {
-					s.addTransition(new Transition(start, t.to));
-					s.addTransition(new Transition(c, t.to));
+					s.transitions.add(new Transition(start, t.to));
+					s.transitions.add(new Transition(c, t.to));
 					if (c - start > 1)
-						s.addTransition(new Transition((char) (start + 1), (char) (c - 1), t.to));
+						s.transitions.add(new Transition((char) (start + 1), (char) (c - 1), t.to));
 					start = c;
 				}
 			}
@@ -577,7 +932,7 @@ final public class MinimizationOperations {
 		int touchedSetCount; // number of sets with marked elements
 
 		int setCount;   // number of sets
-		Integer[] elements; // elements, i.e s = { elements[first[s]], elements[first[s] + 1], ..., elements[past[s]-1] }
+		int[] elements; // elements, i.e s = { elements[first[s]], elements[first[s] + 1], ..., elements[past[s]-1] }
 		int[] locations; // location of element i in elements
 		int[] setNo; // the set number element i belongs to
 		int[] first; // "first": start index of set
@@ -585,7 +940,7 @@ final public class MinimizationOperations {
 
 		Partition (int size) {
 			setCount = (size == 0) ? 0 : 1;
-			elements = new Integer[size];
+			elements = new int[size];
 			locations = new int[size];
 			setNo = new int[size];
 			first = new int[size];
@@ -636,27 +991,4 @@ final public class MinimizationOperations {
 			}
 		}
 	}
-
-	static class LabelComparator implements Comparator<Integer> {
-
-		private IntPair[] labels;
-
-		LabelComparator(IntPair[] labels) {
-			this.labels = labels;
-		}
-
-		public int compare(Integer i, Integer j) {
-			IntPair p1 = labels[i];
-			IntPair p2 = labels[j];
-			if (p1.n1 < p2.n1)
-				return -1;
-			if (p1.n1 > p2.n1)
-				return 1;
-			if (p1.n2 < p2.n2)
-				return -1;
-			if (p1.n2 > p2.n2)
-				return 1;
-			return 0;
-		}
-	}
 }
@@ -0,0 +1,154 @@
+/*
+ * dk.brics.automaton
+ * 
+ * Copyright (c) 2001-2017 Anders Moeller
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package dk.brics.automaton;
+
+/**
+ * Policy deciding which intermediate automata are minimized when a regular expression is 
+ * converted to a minimal automaton (see {@link RegExp#toAutomaton(boolean)}).
+ * <p>
+ * The automaton of the whole regular expression is always minimized. Minimizing an
+ * intermediate automaton determinizes it, which is wasted work if the enclosing operation 
+ * determinizes its operands anyway, or if the automaton is small, since the final minimization 
+ * then removes the redundancy at little extra cost. It pays off for large automata and for 
+ * operands that are copied or multiplied by the enclosing operation.
+ * <p>
+ * The default policy minimizes the automaton of a subexpression if the enclosing operation is
+ * not a complement and the automaton has more than a given number of states. The threshold is 
+ * separate for operands of intersections and counted repetitions, which are by default always 
+ * minimized. The thresholds were chosen with the minimization policy benchmark.
+ * Subclasses may override {@link #minimize(Operation, Operation, Automaton)}.
+ * The policy is set with {@link AutomatonContext#setMinimizationPolicy(MinimizationPolicy)}.
+ */
+public class MinimizationPolicy {
+	
+	/**
+	 * Operations of regular expressions.
+	 */
+	public enum Operation {
+		
+		/** Union (<code>|</code>). */
+		UNION,
+		
+		/** Concatenation. */
+		CONCATENATION,
+		
+		/** Intersection (<code>&amp;</code>). */
+		INTERSECTION,
+		
+		/** Optional (<code>?</code>). */
+		OPTIONAL,
+		
+		/** Repetition (<code>*</code>, <code>+</code>, <code>{0,}</code> and <code>{1,}</code>). */
+		REPEAT,
+		
+		/** Other repetitions (<code>{n}</code>, <code>{n,}</code> and <code>{n,m}</code>). */
+		REPEAT_COUNTED,
+		
+		/** Complement (<code>~</code>). */
+		COMPLEMENT
+	}
+	
+	/** 
+	 * Policy minimizing the automata of all subexpressions. 
+	 * This was the behavior of earlier versions of the library. 
+	 */
+	public static final MinimizationPolicy ALWAYS = new MinimizationPolicy(0, 0) {
+		@Override
+		public boolean minimize(Operation op, Operation parent, Automaton a) {
+			return true;
+		}
+	};
+	
+	/** Default maximal number of states of an intermediate automaton that is not minimized. */
+	public static final int DEFAULT_MAX_STATES = 500;
+	
+	/** 
+	 * Default maximal number of states of an operand of an intersection or a counted repetition 
+	 * that is not minimized. 
+	 */
+	public static final int DEFAULT_MAX_OPERAND_STATES = 0;
+	
+	private final int max_states;
+	
+	private final int max_operand_states;
+	
+	/**
+	 * Constructs a policy with the default thresholds.
+	 */
+	public MinimizationPolicy() {
+		this(DEFAULT_MAX_STATES, DEFAULT_MAX_OPERAND_STATES);
+	}
+	
+	/**
+	 * Constructs a policy with the given thresholds.
+	 * @param max_states maximal number of states of an intermediate automaton that is not minimized
+	 * @param max_operand_states maximal number of states of an operand of an intersection 
+	 *   or a counted repetition that is not minimized
+	 */
+	public MinimizationPolicy(int max_states, int max_operand_states) {
+		this.max_states = max_states;
+		this.max_operand_states = max_operand_states;
+	}
+	
+	/**
+	 * Returns the maximal number of states of an intermediate automaton that is not minimized.
+	 */
+	public int getMaxStates() {
+		return max_states;
+	}
+	
+	/**
+	 * Returns the maximal number of states of an operand of an intersection or a counted repetition
+	 * that is not minimized.
+	 */
+	public int getMaxOperandStates() {
+		return max_operand_states;
+	}
+	
+	/**
+	 * Decides whether the automaton of a subexpression is minimized.
+	 * @param op the operation of the subexpression
+	 * @param parent the operation of the enclosing subexpression
+	 * @param a the automaton of the subexpression (must not be modified)
+	 * @return true if the automaton should be minimized
+	 */
+	public boolean minimize(Operation op, Operation parent, Automaton a) {
+		switch (parent) {
+		case COMPLEMENT:
+			return false; // determinized by the complement
+		case INTERSECTION:
+		case REPEAT_COUNTED:
+			return a.getNumberOfStates() > max_operand_states;
+		default:
+			return a.getNumberOfStates() > max_states;
+		}
+	}
+}
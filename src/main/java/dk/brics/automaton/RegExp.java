@@ -31,6 +31,11 @@ package dk.brics.automaton;
 
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
 
 /**
  * Regular Expression extension to <code>Automaton</code>.
@@ -161,18 +166,24 @@ public class RegExp {
 	 */
 	public static final int NONE = 0x0000;
 	
-	private static boolean allow_mutation = false;
+	private boolean allow_mutation = false;
+	
+	private AutomatonContext context = null;
 	
 	Kind kind;
-	RegExp exp1, exp2;
+	RegExp exp1; // operand of unary operations
+	RegExp[] exps; // operands of unions, concatenations and intersections (at least two)
 	String s;
 	char c;
 	int min, max, digits;
 	char from, to;
 	
+	boolean start_anchored, end_anchored;
+	
 	String b;
 	int flags;
 	int pos;
+	boolean top_union;
 	
 	RegExp() {}
 	
@@ -194,6 +205,8 @@ public class RegExp {
 	 */
 	public RegExp(String s, int syntax_flags) throws IllegalArgumentException {
 		// strip potential anchors
+		start_anchored = s.startsWith("^");
+		end_anchored = s.length() > (start_anchored ? 1 : 0) && s.endsWith("$");
 		s = stripAnchors(s);
 		b = s;
 		flags = syntax_flags;
@@ -205,9 +218,11 @@ public class RegExp {
 			if (pos < b.length())
 				throw new IllegalArgumentException("end-of-string expected at position " + pos);
 		}
+		if (top_union) // '$' only anchors the last alternative
+			end_anchored = false;
 		kind = e.kind;
 		exp1 = e.exp1;
-		exp2 = e.exp2;
+		exps = e.exps;
 		this.s = e.s;
 		c = e.c;
 		min = e.min;
@@ -263,7 +278,7 @@ public class RegExp {
 	 * The constructed automaton is minimal and deterministic and has no 
 	 * transitions to dead states. 
 	 * @param automata a map from automaton identifiers to automata 
-	 *   (of type <code>Automaton</code>).
+	 *   (of type <code>Automaton</code>); frozen automata are shared, others are cloned.
 	 * @exception IllegalArgumentException if this regular expression uses
 	 *   a named identifier that does not occur in the automaton map
 	 */
@@ -275,7 +290,7 @@ public class RegExp {
 	 * Constructs new <code>Automaton</code> from this <code>RegExp</code>. 
 	 * The constructed automaton has no transitions to dead states. 
 	 * @param automata a map from automaton identifiers to automata 
-	 *   (of type <code>Automaton</code>).
+	 *   (of type <code>Automaton</code>); frozen automata are shared, others are cloned.
 	 * @param minimize if set, the automaton is minimized and determinized
 	 * @exception IllegalArgumentException if this regular expression uses
 	 *   a named identifier that does not occur in the automaton map
@@ -285,9 +300,9 @@ public class RegExp {
 	}
 	
 	/**
-	 * Sets or resets allow mutate flag.
+	 * Sets or resets allow mutate flag of this regular expression.
 	 * If this flag is set, then automata construction uses mutable automata,
-	 * which is slightly faster but not thread safe. 
+	 * which is slightly faster. 
 	 * By default, the flag is not set.
 	 * @param flag if true, the flag is set
 	 * @return previous value of the flag
@@ -298,69 +313,147 @@ public class RegExp {
 		return b;
 	}
 	
+	/**
+	 * Sets the context used for automata construction.
+	 * By default (or if <code>null</code>), the context of the calling thread is used.
+	 * @param context the context
+	 * @return previous context
+	 */
+	public AutomatonContext setContext(AutomatonContext context) {
+		AutomatonContext c = this.context;
+		this.context = context;
+		return c;
+	}
+	
+	/**
+	 * Returns the context used for automata construction, <code>null</code> if not set.
+	 */
+	public AutomatonContext getContext() {
+		return context;
+	}
+	
 	private Automaton toAutomatonAllowMutate(Map<String, Automaton> automata, 
 			AutomatonProvider automaton_provider,
 			boolean minimize) throws IllegalArgumentException {
-		boolean b = false;
+		AutomatonContext c = context != null ? context : AutomatonContext.getCurrent();
 		if (allow_mutation)
-			b = Automaton.setAllowMutate(true); // thread unsafe
-		Automaton a = toAutomaton(automata, automaton_provider, minimize);
-		if (allow_mutation)
-			Automaton.setAllowMutate(b);
+			c = c.copy().setAllowMutate(true);
+		return c.call(() -> {
+			AutomatonContext current = AutomatonContext.getCurrent();
+			Memo memo = new Memo(current);
+			memo.count(this);
+			if (memo.pool != null)
+				getNamedAutomata(automata, automaton_provider, memo); // before the parallel phase
+			Automaton a = toAutomaton(automata, automaton_provider, minimize, null, memo);
+			// the result must not reference the states of named, memoized or cached automata
+			if (a.isFrozen())
+				a = a.clone();
+			else
+				a.unshare();
+			return a;
+		});
+	}
+	
+	/**
+	 * Returns true if the automata for regular expressions of the given kind are cheap to build,
+	 * so they are not shared.
+	 */
+	private static boolean isTrivial(Kind kind) {
+		switch (kind) {
+		case REGEXP_CHAR:
+		case REGEXP_CHAR_RANGE:
+		case REGEXP_ANYCHAR:
+		case REGEXP_EMPTY:
+		case REGEXP_STRING:
+		case REGEXP_ANYSTRING:
+			return true;
+		default:
+			return false;
+		}
+	}
+	
+	private Automaton toAutomaton(Map<String, Automaton> automata, 
+			AutomatonProvider automaton_provider,
+			boolean minimize, RegExp parent, Memo memo) throws IllegalArgumentException {
+		if (isTrivial(kind))
+			return toAutomatonNoMemo(automata, automaton_provider, minimize, parent, memo);
+		Key key = memo.keys.get(this);
+		Automaton a = memo.get(key, minimize);
+		if (a != null)
+			return a;
+		try {
+			memo.context.checkDeadline();
+			a = toAutomatonNoMemo(automata, automaton_provider, minimize, parent, memo);
+			memo.put(key, a, minimize);
+		} catch (RuntimeException | Error x) {
+			memo.fail(key, x);
+			throw x;
+		}
 		return a;
 	}
 		
-	private Automaton toAutomaton(Map<String, Automaton> automata, 
+	private Automaton toAutomatonNoMemo(Map<String, Automaton> automata, 
 			AutomatonProvider automaton_provider,
-			boolean minimize) throws IllegalArgumentException {
+			boolean minimize, RegExp parent, Memo memo) throws IllegalArgumentException {
 		List<Automaton> list;
 		Automaton a = null;
 		switch (kind) {
 		case REGEXP_UNION:
-			list = new ArrayList<Automaton>();
-			findLeaves(exp1, Kind.REGEXP_UNION, list, automata, automaton_provider, minimize);
-			findLeaves(exp2, Kind.REGEXP_UNION, list, automata, automaton_provider, minimize);
-			a = BasicOperations.union(list);
+			if (memo.pool != null)
+				a = toAutomatonParallel(automata, automaton_provider, minimize, memo);
+			else {
+				list = new ArrayList<Automaton>(exps.length);
+				for (RegExp e : exps)
+					list.add(e.toAutomaton(automata, automaton_provider, minimize, this, memo));
+				a = BasicOperations.union(list);
+			}
 			if (minimize)
-				a.minimize();
+				minimize(a, parent, memo.policy);
 			break;
 		case REGEXP_CONCATENATION:
-			list = new ArrayList<Automaton>();
-			findLeaves(exp1, Kind.REGEXP_CONCATENATION, list, automata, automaton_provider, minimize);
-			findLeaves(exp2, Kind.REGEXP_CONCATENATION, list, automata, automaton_provider, minimize);
+			list = new ArrayList<Automaton>(exps.length);
+			for (RegExp e : exps)
+				list.add(e.toAutomaton(automata, automaton_provider, minimize, this, memo));
 			a = BasicOperations.concatenate(list);
 			if (minimize)
-				a.minimize();
+				minimize(a, parent, memo.policy);
 			break;
 		case REGEXP_INTERSECTION:
-			a = exp1.toAutomaton(automata, automaton_provider, minimize).intersection(exp2.toAutomaton(automata, automaton_provider, minimize));
+			if (memo.pool != null)
+				a = toAutomatonParallel(automata, automaton_provider, minimize, memo);
+			else {
+				list = new ArrayList<Automaton>(exps.length);
+				for (RegExp e : exps)
+					list.add(e.toAutomaton(automata, automaton_provider, minimize, this, memo));
+				a = BasicOperations.intersection(list);
+			}
 			if (minimize)
-				a.minimize();
+				minimize(a, parent, memo.policy);
 			break;
 		case REGEXP_OPTIONAL:
-			a = exp1.toAutomaton(automata, automaton_provider, minimize).optional();
+			a = exp1.toAutomaton(automata, automaton_provider, minimize, this, memo).optional();
 			if (minimize)
-				a.minimize();
+				minimize(a, parent, memo.policy);
 			break;
 		case REGEXP_REPEAT:
-			a = exp1.toAutomaton(automata, automaton_provider, minimize).repeat();
+			a = exp1.toAutomaton(automata, automaton_provider, minimize, this, memo).repeat();
 			if (minimize)
-				a.minimize();
+				minimize(a, parent, memo.policy);
 			break;
 		case REGEXP_REPEAT_MIN:
-			a = exp1.toAutomaton(automata, automaton_provider, minimize).repeat(min);
+			a = exp1.toAutomaton(automata, automaton_provider, minimize, this, memo).repeat(min);
 			if (minimize)
-				a.minimize();
+				minimize(a, parent, memo.policy);
 			break;
 		case REGEXP_REPEAT_MINMAX:
-			a = exp1.toAutomaton(automata, automaton_provider, minimize).repeat(min, max);
+			a = exp1.toAutomaton(automata, automaton_provider, minimize, this, memo).repeat(min, max);
 			if (minimize)
-				a.minimize();
+				minimize(a, parent, memo.policy);
 			break;
 		case REGEXP_COMPLEMENT:
-			a = exp1.toAutomaton(automata, automaton_provider, minimize).complement();
+			a = exp1.toAutomaton(automata, automaton_provider, minimize, this, memo).complement();
 			if (minimize)
-				a.minimize();
+				minimize(a, parent, memo.policy);
 			break;
 		case REGEXP_CHAR:
 			a = BasicAutomata.makeChar(c);
@@ -381,18 +474,10 @@ public class RegExp {
 			a = BasicAutomata.makeAnyString();
 			break;
 		case REGEXP_AUTOMATON:
-			Automaton aa = null;
-			if (automata != null)
-				aa = automata.get(s);
-			if (aa == null && automaton_provider != null)
-				try {
-					aa = automaton_provider.getAutomaton(s);
-				} catch (IOException e) {
-					throw new IllegalArgumentException(e);
-				}
-			if (aa == null)
-				throw new IllegalArgumentException("'" + s + "' not found");
-			a = aa.clone(); // always clone here (ignore allow_mutate)
+			if (memo.pool != null)
+				a = memo.named.get(s);
+			else
+				a = getNamedAutomaton(automata, automaton_provider);
 			break;
 		case REGEXP_INTERVAL:
 			a = BasicAutomata.makeInterval(min, max, digits);
@@ -401,14 +486,314 @@ public class RegExp {
 		return a;
 	}
 
-	private void findLeaves(RegExp exp, Kind kind, List<Automaton> list, Map<String, Automaton> automata, 
+	/**
+	 * Returns the named automaton of this regular expression, cloned unless frozen.
+	 */
+	private Automaton getNamedAutomaton(Map<String, Automaton> automata, 
+			AutomatonProvider automaton_provider) throws IllegalArgumentException {
+		Automaton aa = null;
+		if (automata != null)
+			aa = automata.get(s);
+		if (aa == null && automaton_provider != null)
+			try {
+				aa = automaton_provider.getAutomaton(s);
+			} catch (IOException e) {
+				throw new IllegalArgumentException(e);
+			}
+		if (aa == null)
+			throw new IllegalArgumentException("'" + s + "' not found");
+		if (aa.isFrozen())
+			return aa; // read-only, shared
+		return aa.clone(); // always clone here (ignore allow_mutate), shared via the memo if referenced again
+	}
+	
+	/**
+	 * Looks up the named automata of this regular expression in order of occurrence, 
+	 * so that the automata owned by the caller are not accessed by the parallel tasks.
+	 */
+	private void getNamedAutomata(Map<String, Automaton> automata, 
+			AutomatonProvider automaton_provider, Memo memo) throws IllegalArgumentException {
+		if (kind == Kind.REGEXP_AUTOMATON) {
+			if (!memo.named.containsKey(s))
+				memo.named.put(s, getNamedAutomaton(automata, automaton_provider));
+		} else if (exps != null) {
+			for (RegExp e : exps)
+				e.getNamedAutomata(automata, automaton_provider, memo);
+		} else if (exp1 != null)
+			exp1.getNamedAutomata(automata, automaton_provider, memo);
+	}
+
+	/**
+	 * Constructs the automata of the operands of this union or intersection in parallel on the 
+	 * compilation pool, and combines them pairwise in a balanced tree. The intermediate automata
+	 * are minimized as decided by the minimization policy.
+	 */
+	private Automaton toAutomatonParallel(Map<String, Automaton> automata, 
 			AutomatonProvider automaton_provider,
-			boolean minimize) {
-		if (exp.kind == kind) {
-			findLeaves(exp.exp1, kind, list, automata, automaton_provider, minimize);
-			findLeaves(exp.exp2, kind, list, automata, automaton_provider, minimize);
-		} else
-			list.add(exp.toAutomaton(automata, automaton_provider, minimize));
+			boolean minimize, Memo memo) throws IllegalArgumentException {
+		CompileTask t = new CompileTask(this, 0, exps.length, automata, automaton_provider, minimize, memo, AutomatonContext.getCurrent());
+		if (ForkJoinTask.getPool() == memo.pool)
+			return t.invoke();
+		return memo.pool.invoke(t);
+	}
+	
+	/**
+	 * Constructs the automaton of a range of operands of a union or intersection.
+	 */
+	private static final class CompileTask extends RecursiveTask<Automaton> {
+		
+		static final long serialVersionUID = 10001;
+		
+		final RegExp e;
+		final int from, to;
+		final Map<String, Automaton> automata;
+		final AutomatonProvider automaton_provider;
+		final boolean minimize;
+		final Memo memo;
+		final AutomatonContext context;
+		
+		CompileTask(RegExp e, int from, int to, Map<String, Automaton> automata, AutomatonProvider automaton_provider, 
+				boolean minimize, Memo memo, AutomatonContext context) {
+			this.e = e;
+			this.from = from;
+			this.to = to;
+			this.automata = automata;
+			this.automaton_provider = automaton_provider;
+			this.minimize = minimize;
+			this.memo = memo;
+			this.context = context;
+		}
+		
+		@Override
+		protected Automaton compute() {
+			return context.call(() -> {
+				if (to - from == 1)
+					return e.exps[from].toAutomaton(automata, automaton_provider, minimize, e, memo);
+				int mid = (from + to) >>> 1;
+				CompileTask t1 = new CompileTask(e, from, mid, automata, automaton_provider, minimize, memo, context);
+				CompileTask t2 = new CompileTask(e, mid, to, automata, automaton_provider, minimize, memo, context);
+				invokeAll(t1, t2);
+				Automaton a;
+				if (e.kind == Kind.REGEXP_UNION)
+					a = BasicOperations.union(t1.join(), t2.join());
+				else
+					a = BasicOperations.intersection(t1.join(), t2.join());
+				if (minimize && to - from < e.exps.length && memo.policy.minimize(e.getOperation(), e.getOperation(), a))
+					a.minimize();
+				return a;
+			});
+		}
+	}
+
+	/**
+	 * Minimizes the automaton of this subexpression if it is the whole regular expression 
+	 * or if the minimization policy decides so.
+	 */
+	private void minimize(Automaton a, RegExp parent, MinimizationPolicy policy) {
+		if (parent == null || policy.minimize(getOperation(), parent.getOperation(), a))
+			a.minimize();
+	}
+
+	private MinimizationPolicy.Operation getOperation() {
+		switch (kind) {
+		case REGEXP_UNION:
+			return MinimizationPolicy.Operation.UNION;
+		case REGEXP_CONCATENATION:
+			return MinimizationPolicy.Operation.CONCATENATION;
+		case REGEXP_INTERSECTION:
+			return MinimizationPolicy.Operation.INTERSECTION;
+		case REGEXP_OPTIONAL:
+			return MinimizationPolicy.Operation.OPTIONAL;
+		case REGEXP_REPEAT:
+			return MinimizationPolicy.Operation.REPEAT;
+		case REGEXP_REPEAT_MIN:
+			return min <= 1 ? MinimizationPolicy.Operation.REPEAT : MinimizationPolicy.Operation.REPEAT_COUNTED;
+		case REGEXP_REPEAT_MINMAX:
+			return MinimizationPolicy.Operation.REPEAT_COUNTED;
+		case REGEXP_COMPLEMENT:
+			return MinimizationPolicy.Operation.COMPLEMENT;
+		default:
+			throw new IllegalStateException();
+		}
+	}
+
+	/**
+	 * Structural identity of a regular expression, for sharing the automata of identical subexpressions.
+	 */
+	static final class Key {
+		
+		final Kind kind;
+		final Key[] children;
+		final String s;
+		final char c, from, to;
+		final int min, max, digits;
+		final boolean named; // set if a named automaton occurs
+		final int hash;
+		
+		Key(RegExp e, Key[] children) {
+			kind = e.kind;
+			this.children = children;
+			s = e.s;
+			c = e.c;
+			from = e.from;
+			to = e.to;
+			min = e.min;
+			max = e.max;
+			digits = e.digits;
+			boolean n = kind == Kind.REGEXP_AUTOMATON;
+			for (Key k : children)
+				n |= k.named;
+			named = n;
+			hash = Objects.hash(kind, Arrays.hashCode(children), s, c, from, to, min, max, digits);
+		}
+		
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj)
+				return true;
+			if (!(obj instanceof Key))
+				return false;
+			Key k = (Key)obj;
+			return hash == k.hash && kind == k.kind && c == k.c && from == k.from && to == k.to 
+				&& min == k.min && max == k.max && digits == k.digits && Objects.equals(s, k.s) 
+				&& Arrays.equals(children, k.children);
+		}
+		
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+	}
+	
+	/**
+	 * Automata of the subexpressions of one compilation. The automaton of a nontrivial subexpression
+	 * is frozen and shared if the subexpression occurs more than once, or if a subexpression cache is used.
+	 * Without minimization, the automata are frozen without being minimized (so nondeterministic
+	 * automata are not determinized), and they are not added to the subexpression cache.
+	 * <p>
+	 * In parallel compilation, the automaton of a shared subexpression is constructed by one task;
+	 * the other tasks that need it wait for the result. The automata are frozen outside the lock.
+	 */
+	private static final class Memo {
+		
+		static final Key[] NO_KEYS = new Key[0];
+		
+		final IdentityHashMap<RegExp, Key> keys = new IdentityHashMap<RegExp, Key>();
+		final HashMap<Key, Key> interned = new HashMap<Key, Key>();
+		final HashMap<Key, Integer> counts = new HashMap<Key, Integer>();
+		final HashMap<Key, CompletableFuture<Automaton>> automata = new HashMap<Key, CompletableFuture<Automaton>>();
+		final HashMap<String, Automaton> named = new HashMap<String, Automaton>(); // used in parallel compilation
+		final SubexpressionCache cache;
+		final MinimizationPolicy policy;
+		final ForkJoinPool pool;
+		final AutomatonContext context;
+		
+		Memo(AutomatonContext context) {
+			this.context = context;
+			cache = context.subexpression_cache;
+			policy = context.minimization_policy;
+			pool = context.compilation_pool;
+		}
+		
+		/**
+		 * Computes the keys of the given regular expression and its subexpressions,
+		 * and counts their occurrences.
+		 */
+		Key count(RegExp e) {
+			Key k = keys.get(e);
+			if (k == null) {
+				Key[] children;
+				if (e.exps != null) {
+					children = new Key[e.exps.length];
+					for (int i = 0; i < children.length; i++)
+						children[i] = count(e.exps[i]);
+				} else if (e.exp1 != null)
+					children = new Key[] { count(e.exp1) };
+				else
+					children = NO_KEYS;
+				k = new Key(e, children);
+				Key i = interned.putIfAbsent(k, k);
+				if (i != null)
+					k = i;
+				keys.put(e, k);
+			}
+			counts.merge(k, 1, Integer::sum);
+			return k;
+		}
+		
+		/**
+		 * Returns true if the automaton of the given key is frozen and shared.
+		 */
+		boolean isShared(Key k, boolean minimize) {
+			return counts.get(k) > 1 || (minimize && cache != null && !k.named);
+		}
+		
+		/**
+		 * Returns the shared automaton of the given key, waiting if it is being constructed by 
+		 * another task. Returns null if the automaton is not available; then the caller must 
+		 * construct it and call {@link #put(Key, Automaton, boolean)} or {@link #fail(Key, Throwable)}.
+		 */
+		Automaton get(Key k, boolean minimize) {
+			CompletableFuture<Automaton> f;
+			synchronized (this) {
+				f = automata.get(k);
+				if (f == null) {
+					Automaton a = null;
+					if (cache != null && !k.named)
+						a = cache.get(k);
+					if (a != null)
+						automata.put(k, CompletableFuture.completedFuture(a));
+					else if (isShared(k, minimize))
+						automata.put(k, new CompletableFuture<Automaton>()); // constructed by the caller
+					return a;
+				}
+			}
+			try {
+				return f.join();
+			} catch (CompletionException x) {
+				Throwable cause = x.getCause();
+				if (cause instanceof RuntimeException)
+					throw (RuntimeException)cause;
+				if (cause instanceof Error)
+					throw (Error)cause;
+				throw x;
+			}
+		}
+		
+		/**
+		 * Freezes the automaton constructed for the given key if it is shared, and passes it 
+		 * to the waiting tasks.
+		 */
+		void put(Key k, Automaton a, boolean minimize) {
+			if (!isShared(k, minimize))
+				return;
+			if (minimize)
+				a.freeze();
+			else
+				a.freezeUnminimized();
+			if (minimize && cache != null && !k.named)
+				cache.put(k, a);
+			CompletableFuture<Automaton> f;
+			synchronized (this) {
+				f = automata.get(k);
+			}
+			f.complete(a);
+		}
+		
+		/**
+		 * Passes an exception thrown while constructing the automaton for the given key to the 
+		 * waiting tasks. The key is removed, so a later compilation step may construct it again.
+		 */
+		void fail(Key k, Throwable x) {
+			CompletableFuture<Automaton> f;
+			synchronized (this) {
+				f = automata.get(k);
+				if (f == null || f.isDone())
+					return;
+				automata.remove(k);
+			}
+			f.completeExceptionally(x);
+		}
 	}
 
 	/** 
@@ -423,20 +808,24 @@ public class RegExp {
 		switch (kind) {
 		case REGEXP_UNION:
 			b.append("(");
-			exp1.toStringBuilder(b);
-			b.append("|");
-			exp2.toStringBuilder(b);
+			for (int i = 0; i < exps.length; i++) {
+				if (i > 0)
+					b.append("|");
+				exps[i].toStringBuilder(b);
+			}
 			b.append(")");
 			break;
 		case REGEXP_CONCATENATION:
-			exp1.toStringBuilder(b);
-			exp2.toStringBuilder(b);
+			for (RegExp e : exps)
+				e.toStringBuilder(b);
 			break;
 		case REGEXP_INTERSECTION:
 			b.append("(");
-			exp1.toStringBuilder(b);
-			b.append("&");
-			exp2.toStringBuilder(b);
+			for (int i = 0; i < exps.length; i++) {
+				if (i > 0)
+					b.append("&");
+				exps[i].toStringBuilder(b);
+			}
 			b.append(")");
 			break;
 		case REGEXP_OPTIONAL:
@@ -515,6 +904,135 @@ public class RegExp {
 		b.append(c);
 	}
 
+	/**
+	 * Estimates the sizes of the automata of this regular expression without constructing them.
+	 * Same as <code>estimateComplexity(null)</code> (empty automaton map).
+	 */
+	public Complexity estimateComplexity() {
+		return estimateComplexity(null);
+	}
+	
+	/**
+	 * Estimates the sizes of the automata of this regular expression without constructing them.
+	 * The analysis takes time linear in the size of this regular expression (plus the windows 
+	 * following repetitions), so it can be used for rejecting regular expressions whose 
+	 * automata would be too large before they are constructed.
+	 * @param automata a map from automaton identifiers to automata; the bounds are infinite 
+	 *   if a named automaton does not occur in the map
+	 */
+	public Complexity estimateComplexity(Map<String, Automaton> automata) {
+		ComplexityEstimator.Info i = new ComplexityEstimator(automata).analyze(this);
+		return new Complexity(i.nfa_bound, i.nfa_estimate, i.dfa_bound, i.dfa_estimate);
+	}
+	
+	/**
+	 * Estimated sizes of the automata of a regular expression, see {@link RegExp#estimateComplexity()}.
+	 * Numbers of states do not include dead states. Numbers that exceed the range of <code>long</code> 
+	 * are given as <code>Long.MAX_VALUE</code>.
+	 */
+	final public static class Complexity {
+		
+		private final long nfa_bound, nfa_estimate, dfa_bound, dfa_estimate;
+		
+		Complexity(double nfa_bound, double nfa_estimate, double dfa_bound, double dfa_estimate) {
+			this.nfa_bound = toLong(nfa_bound);
+			this.nfa_estimate = toLong(nfa_estimate);
+			this.dfa_bound = toLong(dfa_bound);
+			this.dfa_estimate = toLong(dfa_estimate);
+		}
+		
+		private static long toLong(double d) {
+			return d >= Long.MAX_VALUE ? Long.MAX_VALUE : (long)Math.ceil(d);
+		}
+		
+		/**
+		 * Returns an upper bound on the number of states of the automaton constructed 
+		 * by {@link RegExp#toAutomaton(boolean) toAutomaton(false)}.
+		 */
+		public long getNfaStatesBound() {
+			return nfa_bound;
+		}
+		
+		/**
+		 * Returns an estimate of the number of states of the automaton constructed 
+		 * by {@link RegExp#toAutomaton(boolean) toAutomaton(false)}.
+		 */
+		public long getNfaStatesEstimate() {
+			return nfa_estimate;
+		}
+		
+		/**
+		 * Returns an upper bound on the number of states of the minimal deterministic automaton.
+		 */
+		public long getDfaStatesBound() {
+			return dfa_bound;
+		}
+		
+		/**
+		 * Returns an estimate of the number of states of the minimal deterministic automaton.
+		 * Repetitions followed by windows of overlapping characters (as in <code>.*a.{20}</code>)
+		 * contribute exponentially in the length of the window.
+		 */
+		public long getDfaStatesEstimate() {
+			return dfa_estimate;
+		}
+		
+		@Override
+		public String toString() {
+			return "NFA states: " + nfa_estimate + " (bound " + nfa_bound + "), DFA states: " 
+				+ dfa_estimate + " (bound " + dfa_bound + ")";
+		}
+	}
+	
+	/**
+	 * Returns true if this regular expression is anchored at the start of the input, 
+	 * that is, it starts with <code>^</code> (in every alternative, if a union).
+	 * The anchor is not part of the language of the regular expression.
+	 * @see RunAutomaton#RunAutomaton(Automaton, boolean, boolean, boolean)
+	 */
+	public boolean isStartAnchored() {
+		return start_anchored;
+	}
+	
+	/**
+	 * Returns true if this regular expression is anchored at the end of the input, 
+	 * that is, it ends with <code>$</code> and is not a union.
+	 * The anchor is not part of the language of the regular expression.
+	 * @see RunAutomaton#RunAutomaton(Automaton, boolean, boolean, boolean)
+	 */
+	public boolean isEndAnchored() {
+		return end_anchored;
+	}
+	
+	/**
+	 * Returns a regular expression with the same language as this one, rewritten with 
+	 * algebraic rules that make its automata cheaper to construct: duplicate alternatives 
+	 * are removed (<code>a|a</code>), characters and ranges in unions are merged 
+	 * (<code>a|b|[c-e]</code>), common prefixes of alternatives are factored 
+	 * (<code>abc|abd</code>), nested repetitions are flattened (<code>(x*)*</code>, 
+	 * <code>(x?)+</code>), and counted repetitions are normalized (<code>x{0,1}</code>).
+	 * The anchors of this regular expression are kept.
+	 */
+	public RegExp simplify() {
+		RegExp e = new RegExpSimplifier().simplify(this);
+		RegExp r = new RegExp();
+		r.kind = e.kind;
+		r.exp1 = e.exp1;
+		r.exps = e.exps;
+		r.s = e.s;
+		r.c = e.c;
+		r.min = e.min;
+		r.max = e.max;
+		r.digits = e.digits;
+		r.from = e.from;
+		r.to = e.to;
+		r.start_anchored = start_anchored;
+		r.end_anchored = end_anchored;
+		r.allow_mutation = allow_mutation;
+		r.context = context;
+		return r;
+	}
+	
 	/** 
 	 * Returns set of automaton identifiers that occur in this regular expression. 
 	 */
@@ -529,8 +1047,8 @@ public class RegExp {
 		case REGEXP_UNION:
 		case REGEXP_CONCATENATION:
 		case REGEXP_INTERSECTION:
-			exp1.getIdentifiers(set);
-			exp2.getIdentifiers(set);
+			for (RegExp e : exps)
+				e.getIdentifiers(set);
 			break;
 		case REGEXP_OPTIONAL:
 		case REGEXP_REPEAT:
@@ -547,54 +1065,82 @@ public class RegExp {
 	}
 
 	static RegExp makeUnion(RegExp exp1, RegExp exp2) {
-		RegExp r = new RegExp();
-		r.kind = Kind.REGEXP_UNION;
-		r.exp1 = exp1;
-		r.exp2 = exp2;
-		return r;
+		return makeUnion(Arrays.asList(exp1, exp2));
+	}
+
+	/**
+	 * Makes a union of the given regular expressions, flattening nested unions.
+	 */
+	static RegExp makeUnion(List<RegExp> exps) {
+		return makeOperation(Kind.REGEXP_UNION, exps);
 	}
 
 	static RegExp makeConcatenation(RegExp exp1, RegExp exp2) {
-		if ((exp1.kind == Kind.REGEXP_CHAR || exp1.kind == Kind.REGEXP_STRING) && 
-			(exp2.kind == Kind.REGEXP_CHAR || exp2.kind == Kind.REGEXP_STRING))
-			return makeString(exp1, exp2);
-		RegExp r = new RegExp();
-		r.kind = Kind.REGEXP_CONCATENATION;
-		if (exp1.kind == Kind.REGEXP_CONCATENATION && 
-			(exp1.exp2.kind == Kind.REGEXP_CHAR || exp1.exp2.kind == Kind.REGEXP_STRING) && 
-			(exp2.kind == Kind.REGEXP_CHAR || exp2.kind == Kind.REGEXP_STRING)) {
-			r.exp1 = exp1.exp1;
-			r.exp2 = makeString(exp1.exp2, exp2);
-		} else if ((exp1.kind == Kind.REGEXP_CHAR || exp1.kind == Kind.REGEXP_STRING) && 
-				   exp2.kind == Kind.REGEXP_CONCATENATION && 
-				   (exp2.exp1.kind == Kind.REGEXP_CHAR || exp2.exp1.kind == Kind.REGEXP_STRING)) {
-			r.exp1 = makeString(exp1, exp2.exp1);
-			r.exp2 = exp2.exp2;
-		} else {
-			r.exp1 = exp1;
-			r.exp2 = exp2;
-		}
-		return r;
+		return makeConcatenation(Arrays.asList(exp1, exp2));
 	}
 
-	static private RegExp makeString(RegExp exp1, RegExp exp2) {
-		StringBuilder b = new StringBuilder();
-		if (exp1.kind == Kind.REGEXP_STRING)
-			b.append(exp1.s);
-		else
-			b.append(exp1.c);
-		if (exp2.kind == Kind.REGEXP_STRING)
-			b.append(exp2.s);
+	/**
+	 * Makes a concatenation of the given regular expressions, flattening nested concatenations
+	 * and joining adjacent characters and strings into strings.
+	 */
+	static RegExp makeConcatenation(List<RegExp> exps) {
+		ArrayList<RegExp> l = new ArrayList<RegExp>(exps.size());
+		RegExp literal = null; // first character or string of the current run
+		StringBuilder b = null; // the run, if it has more than one element
+		for (RegExp e : exps)
+			for (RegExp f : e.kind == Kind.REGEXP_CONCATENATION ? Arrays.asList(e.exps) : Collections.singletonList(e))
+				if (f.kind == Kind.REGEXP_CHAR || f.kind == Kind.REGEXP_STRING) {
+					if (literal == null)
+						literal = f;
+					else {
+						if (b == null)
+							b = appendLiteral(new StringBuilder(), literal);
+						appendLiteral(b, f);
+					}
+				} else {
+					if (literal != null) {
+						l.add(b == null ? literal : makeString(b.toString()));
+						literal = null;
+						b = null;
+					}
+					l.add(f);
+				}
+		if (literal != null)
+			l.add(b == null ? literal : makeString(b.toString()));
+		return makeOperation(Kind.REGEXP_CONCATENATION, l);
+	}
+
+	static private StringBuilder appendLiteral(StringBuilder b, RegExp e) {
+		if (e.kind == Kind.REGEXP_STRING)
+			b.append(e.s);
 		else
-			b.append(exp2.c);
-		return makeString(b.toString());
+			b.append(e.c);
+		return b;
 	}
 
 	static RegExp makeIntersection(RegExp exp1, RegExp exp2) {
+		return makeIntersection(Arrays.asList(exp1, exp2));
+	}
+
+	/**
+	 * Makes an intersection of the given regular expressions, flattening nested intersections.
+	 */
+	static RegExp makeIntersection(List<RegExp> exps) {
+		return makeOperation(Kind.REGEXP_INTERSECTION, exps);
+	}
+
+	static private RegExp makeOperation(Kind kind, List<RegExp> exps) {
+		ArrayList<RegExp> l = new ArrayList<RegExp>(exps.size());
+		for (RegExp e : exps)
+			if (e.kind == kind)
+				Collections.addAll(l, e.exps);
+			else
+				l.add(e);
+		if (l.size() == 1)
+			return l.get(0);
 		RegExp r = new RegExp();
-		r.kind = Kind.REGEXP_INTERSECTION;
-		r.exp1 = exp1;
-		r.exp2 = exp2;
+		r.kind = kind;
+		r.exps = l.toArray(new RegExp[l.size()]);
 		return r;
 	}
 
@@ -720,40 +1266,136 @@ public class RegExp {
 		return (flags & flag) != 0;
 	}
 
+	/**
+	 * Parses a union expression, that is, the whole regular expression.
+	 * The nesting of groups is kept on an explicit stack, and unions, intersections and 
+	 * concatenations are collected into lists, so the depth of the Java stack is independent 
+	 * of the regular expression. Plain characters are collected without allocation.
+	 */
 	final RegExp parseUnionExp() throws IllegalArgumentException {
-		// check for start anchor, discard if necessary
-		if (peek("^")) {
-			next();
+		ArrayList<Group> groups = new ArrayList<Group>();
+		Group g = new Group(0);
+		skipStartAnchor();
+		while (true) {
+			int complements = 0;
+			while (check(COMPLEMENT) && match('~'))
+				complements++;
+			if (complements == 0 && more() && "[.#@\"(<\\~".indexOf(b.charAt(pos)) == -1 
+					&& (pos + 1 == b.length() || "?*+{".indexOf(b.charAt(pos + 1)) == -1))
+				g.literal.append(b.charAt(pos++));
+			else if (peek("(") && !(pos + 1 < b.length() && b.charAt(pos + 1) == ')')) {
+				next();
+				parseGroupConstruct();
+				groups.add(g);
+				g = new Group(complements);
+				skipStartAnchor();
+				continue;
+			} else
+				g.add(parseRepeatExp(complement(parseCharClassExp(), complements)));
+			// end the enclosing concatenations, intersections, unions and groups
+			while (!more() || peek(")|") || (check(INTERSECTION) && peek("&"))) {
+				g.endConcatenation();
+				if (check(INTERSECTION) && match('&'))
+					break;
+				g.endIntersection();
+				if (match('|')) {
+					boolean anchored = skipStartAnchor();
+					if (groups.isEmpty()) {
+						top_union = true;
+						start_anchored &= anchored;
+					}
+					break;
+				}
+				RegExp e = makeUnion(g.alternatives);
+				if (groups.isEmpty())
+					return e;
+				if (!match(')'))
+					throw new IllegalArgumentException("expected ')' at position " + pos);
+				e = complement(e, g.complements);
+				g = groups.remove(groups.size() - 1);
+				g.add(parseRepeatExp(e));
+			}
 		}
+	}
 
-		RegExp e = parseInterExp();
-		if (match('|'))
-			e = makeUnion(e, parseUnionExp());
-
-		// check for ending anchor, discard if necessary
-		if (peek("$")) {
-			next();
+	/**
+	 * Operands of a group (or the whole regular expression) being parsed.
+	 */
+	private static final class Group {
+		
+		final int complements; // number of complement operators applied to the group
+		final ArrayList<RegExp> alternatives = new ArrayList<RegExp>();
+		final ArrayList<RegExp> operands = new ArrayList<RegExp>(); // of the current intersection
+		final ArrayList<RegExp> items = new ArrayList<RegExp>(); // of the current concatenation
+		final StringBuilder literal = new StringBuilder(); // characters following the items
+		boolean has_literal;
+		
+		Group(int complements) {
+			this.complements = complements;
 		}
+		
+		void add(RegExp e) {
+			if (e.kind == Kind.REGEXP_CHAR || e.kind == Kind.REGEXP_STRING) {
+				appendLiteral(literal, e);
+				has_literal = true;
+			} else {
+				endLiteral();
+				items.add(e);
+			}
+		}
+		
+		void endLiteral() {
+			if (literal.length() > 0 || has_literal) {
+				items.add(literal.length() == 1 ? makeChar(literal.charAt(0)) : makeString(literal.toString()));
+				literal.setLength(0);
+				has_literal = false;
+			}
+		}
+		
+		void endConcatenation() {
+			endLiteral();
+			operands.add(makeConcatenation(items));
+			items.clear();
+		}
+		
+		void endIntersection() {
+			alternatives.add(makeIntersection(operands));
+			operands.clear();
+		}
+	}
 
-		return e;
+	private boolean skipStartAnchor() {
+		return match('^');
 	}
 
-	final RegExp parseInterExp() throws IllegalArgumentException {
-		RegExp e = parseConcatExp();
-		if (check(INTERSECTION) && match('&'))
-			e = makeIntersection(e, parseInterExp());
-		return e;
+	/**
+	 * Parses the group construct following '(', if any.
+	 */
+	private void parseGroupConstruct() throws IllegalArgumentException {
+		if (peek("?")) {
+			char questionMark = next();
+			if (peek("=!<")) {
+				// =,! -> look ahead
+				// <   -> look behind (<=, <!) or named capture group (<name>)
+				char operator = next();
+				throw new IllegalArgumentException(String.format("group construct %c%c is not supported", questionMark, operator));
+			} else if (peek(":")) {
+				// ?: -> non-capture group
+				next();
+			}
+		}
 	}
 
-	final RegExp parseConcatExp() throws IllegalArgumentException {
-		RegExp e = parseRepeatExp();
-		if (more() && !peek(")|") && (!check(INTERSECTION) || !peek("&")))
-			e = makeConcatenation(e, parseConcatExp());
+	static private RegExp complement(RegExp e, int n) {
+		for (int i = 0; i < n; i++)
+			e = makeComplement(e);
 		return e;
 	}
 
-	final RegExp parseRepeatExp() throws IllegalArgumentException {
-		RegExp e = parseComplExp();
+	/**
+	 * Parses the repetition operators following the given expression.
+	 */
+	final RegExp parseRepeatExp(RegExp e) throws IllegalArgumentException {
 		while (peek("?*+{")) {
 			if (match('?'))
 				e = makeOptional(e);
@@ -780,8 +1422,10 @@ public class RegExp {
 				if (!match('}'))
 					throw new IllegalArgumentException("expected '}' at position " + pos);
 
-				checkRepetitionBound(n);
-				checkRepetitionBound(m);
+				if (!e.isCharClass()) { // repetitions of character classes are built as chains of states
+					checkRepetitionBound(n);
+					checkRepetitionBound(m);
+				}
 
 				if (m == -1)
 					e = makeRepeat(e, n);
@@ -792,13 +1436,6 @@ public class RegExp {
 		return e;
 	}
 
-	final RegExp parseComplExp() throws IllegalArgumentException {
-		if (check(COMPLEMENT) && match('~'))
-			return makeComplement(parseComplExp());
-		else
-			return parseCharClassExp();
-	}
-
 	final RegExp parseCharClassExp() throws IllegalArgumentException {
 		if (match('[')) {
 			boolean negate = false;
@@ -815,10 +1452,11 @@ public class RegExp {
 	}
 
 	final RegExp parseCharClasses() throws IllegalArgumentException {
-		RegExp e = parseCharClass();
+		ArrayList<RegExp> l = new ArrayList<RegExp>();
+		l.add(parseCharClass());
 		while (more() && !peek("]"))
-			e = makeUnion(e, parseCharClass());
-		return e;
+			l.add(parseCharClass());
+		return makeUnion(l);
 	}
 
 	final RegExp parseCharClass() throws IllegalArgumentException {
@@ -861,25 +1499,10 @@ public class RegExp {
 				throw new IllegalArgumentException("expected '\"' at position " + pos);
 			return makeString(b.substring(start, pos - 1));
 		} else if (match('(')) {
-			if (match(')'))
-				return makeString("");
-			else if (peek("?")) {
-				// figure out if there is group stuff
-				char questionMark = next();
-				if (peek("=!<")) {
-					// =,! -> look ahead
-					// <   -> look behind (<=, <!) or named capture group (<name>)
-					char operator = next();
-					throw new IllegalArgumentException(String.format("group construct %c%c is not supported", questionMark, operator));
-				} else if (peek(":")) {
-					// ?: -> non-capture group
-					next();
-				}
-			}
-			RegExp e = parseUnionExp();
+			// nonempty groups are handled by parseUnionExp
 			if (!match(')'))
 				throw new IllegalArgumentException("expected ')' at position " + pos);
-			return e;
+			return makeString("");
 		} else if ((check(AUTOMATON) || check(INTERVAL)) && match('<')) {
 			int start = pos;
 			while (more() && !peek(">"))
@@ -989,6 +1612,34 @@ public class RegExp {
 		return pattern.substring(start, end);
 	}
 
+	/**
+	 * Returns true if this regular expression only matches strings of length one.
+	 * The bounded repetitions of such an expression are not limited by the parser, as
+	 * they are built directly as a chain of states (see {@link BasicOperations#repeat(Automaton, int, int)}).
+	 */
+	private boolean isCharClass() {
+		switch (kind) {
+		case REGEXP_CHAR:
+		case REGEXP_CHAR_RANGE:
+		case REGEXP_ANYCHAR:
+			return true;
+		case REGEXP_STRING:
+			return s.length() == 1;
+		case REGEXP_UNION:
+			for (RegExp e : exps)
+				if (!e.isCharClass())
+					return false;
+			return true;
+		case REGEXP_INTERSECTION:
+			for (RegExp e : exps)
+				if (e.isCharClass())
+					return true;
+			return false;
+		default:
+			return false;
+		}
+	}
+
 	private static void checkRepetitionBound(int bound) throws IllegalArgumentException {
 		if (bound > 100) {
 			throw new IllegalArgumentException(String.format("bound %d is too large to be compiled (must be <= 100)", bound));
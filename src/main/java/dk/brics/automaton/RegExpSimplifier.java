@@ -0,0 +1,464 @@
+/*
+ * dk.brics.automaton
+ * 
+ * Copyright (c) 2001-2017 Anders Moeller
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package dk.brics.automaton;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+import dk.brics.automaton.RegExp.Kind;
+
+/**
+ * Rewriting of regular expressions into simpler regular expressions with the same language, 
+ * see {@link RegExp#simplify()}.
+ * <p>
+ * The subexpressions are rewritten bottom-up with the following rules:
+ * <ul>
+ * <li>duplicate operands of unions and intersections are removed (<code>a|a</code> = <code>a</code>),
+ *     and so are the empty language in unions and <code>@</code> in intersections;
+ * <li>alternatives of a union that start with the same characters are factored 
+ *     (<code>abc|abd</code> = <code>ab(c|d)</code>);
+ * <li>single characters, character ranges and <code>.</code> in a union are merged into 
+ *     disjoint ranges (<code>a|b|[c-e]</code> = <code>[a-e]</code>);
+ * <li>the empty string in a union makes the union optional (<code>|a</code> = <code>a?</code>);
+ * <li>nested repetitions are flattened (<code>(x*)*</code>, <code>(x?)+</code> and <code>(x+)?</code> are <code>x*</code>,
+ *     <code>(x+){n,}</code> is <code>x{n,}</code>), and an optional nullable expression is the expression itself;
+ * <li>counted repetitions are normalized (<code>x{0,1}</code> = <code>x?</code>, <code>x{1,1}</code> = <code>x</code>, 
+ *     <code>x{0,}</code> = <code>x*</code>);
+ * <li>empty strings are removed from concatenations, and a concatenation with the empty language is empty;
+ * <li>double complements are removed.
+ * </ul>
+ * Unchanged subexpressions are shared between the input and the result.
+ */
+final class RegExpSimplifier {
+	
+	private final IdentityHashMap<RegExp, RegExp> simplified = new IdentityHashMap<RegExp, RegExp>();
+	
+	private final IdentityHashMap<RegExp, RegExp.Key> keys = new IdentityHashMap<RegExp, RegExp.Key>();
+	
+	RegExp simplify(RegExp e) {
+		RegExp r = simplified.get(e);
+		if (r == null) {
+			r = simplifyNoMemo(e);
+			simplified.put(e, r);
+		}
+		return r;
+	}
+	
+	private RegExp simplifyNoMemo(RegExp e) {
+		List<RegExp> l;
+		RegExp x;
+		switch (e.kind) {
+		case REGEXP_UNION:
+			l = new ArrayList<RegExp>(e.exps.length);
+			for (RegExp f : e.exps)
+				l.add(simplify(f));
+			return simplifyUnion(l);
+		case REGEXP_CONCATENATION:
+			l = new ArrayList<RegExp>(e.exps.length);
+			for (RegExp f : e.exps) {
+				x = simplify(f);
+				if (x.kind == Kind.REGEXP_EMPTY)
+					return x;
+				if (!isEmptyString(x))
+					l.add(x);
+			}
+			if (l.isEmpty())
+				return RegExp.makeString("");
+			return RegExp.makeConcatenation(l);
+		case REGEXP_INTERSECTION:
+			l = new ArrayList<RegExp>(e.exps.length);
+			for (RegExp f : e.exps) {
+				x = simplify(f);
+				if (x.kind == Kind.REGEXP_EMPTY)
+					return x;
+				if (x.kind != Kind.REGEXP_ANYSTRING)
+					l.add(x);
+			}
+			if (l.isEmpty())
+				return RegExp.makeAnyString();
+			return RegExp.makeIntersection(removeDuplicates(getOperands(RegExp.makeIntersection(l), Kind.REGEXP_INTERSECTION)));
+		case REGEXP_OPTIONAL:
+			return makeOptional(simplify(e.exp1));
+		case REGEXP_REPEAT:
+			return makeRepeat(simplify(e.exp1));
+		case REGEXP_REPEAT_MIN:
+			return makeRepeat(simplify(e.exp1), e.min);
+		case REGEXP_REPEAT_MINMAX:
+			return makeRepeat(simplify(e.exp1), e.min, e.max);
+		case REGEXP_COMPLEMENT:
+			x = simplify(e.exp1);
+			if (x.kind == Kind.REGEXP_COMPLEMENT)
+				return x.exp1;
+			return x == e.exp1 ? e : RegExp.makeComplement(x);
+		case REGEXP_CHAR_RANGE:
+			if (e.from == e.to)
+				return RegExp.makeChar(e.from);
+			return e;
+		default:
+			return e;
+		}
+	}
+	
+	private RegExp makeOptional(RegExp x) {
+		if (isNullable(x))
+			return x;
+		if (x.kind == Kind.REGEXP_EMPTY)
+			return RegExp.makeString("");
+		if (x.kind == Kind.REGEXP_REPEAT_MIN && x.min == 1) // (x+)? = x*
+			return RegExp.makeRepeat(x.exp1);
+		return RegExp.makeOptional(x);
+	}
+	
+	private RegExp makeRepeat(RegExp x) {
+		switch (x.kind) {
+		case REGEXP_REPEAT:
+		case REGEXP_ANYSTRING:
+			return x;
+		case REGEXP_OPTIONAL:
+			return makeRepeat(x.exp1);
+		case REGEXP_REPEAT_MIN:
+			if (x.min <= 1)
+				return makeRepeat(x.exp1);
+			break;
+		case REGEXP_REPEAT_MINMAX:
+			if (x.min <= 1 && x.max >= 1 && x.min <= x.max)
+				return makeRepeat(x.exp1);
+			break;
+		case REGEXP_EMPTY:
+			return RegExp.makeString("");
+		default:
+			if (isEmptyString(x))
+				return x;
+		}
+		return RegExp.makeRepeat(x);
+	}
+	
+	private RegExp makeRepeat(RegExp x, int min) {
+		if (min == 0)
+			return makeRepeat(x);
+		switch (x.kind) {
+		case REGEXP_REPEAT:
+		case REGEXP_ANYSTRING:
+			return x;
+		case REGEXP_OPTIONAL: // (x?){n,} = x*
+			return makeRepeat(x.exp1);
+		case REGEXP_REPEAT_MIN:
+			if (x.min == 1) // (x+){n,} = x{n,}
+				return RegExp.makeRepeat(x.exp1, min);
+			break;
+		default:
+			if (isEmptyString(x))
+				return x;
+		}
+		return RegExp.makeRepeat(x, min);
+	}
+	
+	private RegExp makeRepeat(RegExp x, int min, int max) {
+		if (min > max)
+			return RegExp.makeRepeat(x, min, max);
+		if (max == 0)
+			return RegExp.makeString("");
+		if (min == 1 && max == 1)
+			return x;
+		if (min == 0 && max == 1)
+			return makeOptional(x);
+		switch (x.kind) {
+		case REGEXP_REPEAT:
+		case REGEXP_ANYSTRING:
+			return x;
+		case REGEXP_OPTIONAL: // (x?){n,m} = x{0,m}
+			if (min > 0)
+				return RegExp.makeRepeat(x.exp1, 0, max);
+			break;
+		default:
+			if (isEmptyString(x))
+				return x;
+		}
+		return RegExp.makeRepeat(x, min, max);
+	}
+	
+	/**
+	 * Makes a union of the given simplified regular expressions.
+	 */
+	private RegExp simplifyUnion(List<RegExp> exps) {
+		List<RegExp> l = new ArrayList<RegExp>(exps.size());
+		for (RegExp e : getOperands(RegExp.makeUnion(exps), Kind.REGEXP_UNION)) {
+			if (e.kind == Kind.REGEXP_ANYSTRING)
+				return e;
+			if (e.kind != Kind.REGEXP_EMPTY)
+				l.add(e);
+		}
+		l = removeDuplicates(l);
+		l = factorPrefixes(l);
+		l = mergeCharacters(l);
+		boolean empty_string = false, nullable = false;
+		for (int i = 0; i < l.size(); i++)
+			if (isEmptyString(l.get(i))) {
+				empty_string = true;
+				l.remove(i--);
+			} else
+				nullable |= isNullable(l.get(i));
+		RegExp r;
+		if (l.isEmpty())
+			r = empty_string ? RegExp.makeString("") : RegExp.makeEmpty();
+		else
+			r = RegExp.makeUnion(l);
+		if (empty_string && !nullable)
+			r = makeOptional(r);
+		return r;
+	}
+	
+	/**
+	 * Replaces the alternatives that start with the same character by the longest common prefix 
+	 * followed by the union of the remainders.
+	 */
+	private List<RegExp> factorPrefixes(List<RegExp> l) {
+		LinkedHashMap<Character, List<RegExp>> groups = new LinkedHashMap<Character, List<RegExp>>();
+		boolean shared = false;
+		for (RegExp e : l) {
+			String p = getPrefix(e);
+			if (p != null && !p.isEmpty()) {
+				List<RegExp> g = groups.get(p.charAt(0));
+				if (g == null)
+					groups.put(p.charAt(0), g = new ArrayList<RegExp>());
+				else
+					shared = true;
+				g.add(e);
+			}
+		}
+		if (!shared)
+			return l;
+		List<RegExp> r = new ArrayList<RegExp>(l.size());
+		for (RegExp e : l) {
+			String p = getPrefix(e);
+			if (p == null || p.isEmpty())
+				r.add(e);
+			else {
+				List<RegExp> g = groups.get(p.charAt(0));
+				if (g.size() == 1)
+					r.add(e);
+				else if (g.get(0) == e) {
+					int n = p.length();
+					for (RegExp f : g) {
+						String q = getPrefix(f);
+						n = Math.min(n, q.length());
+						for (int i = 1; i < n; i++)
+							if (p.charAt(i) != q.charAt(i)) {
+								n = i;
+								break;
+							}
+					}
+					List<RegExp> suffixes = new ArrayList<RegExp>(g.size());
+					for (RegExp f : g)
+						suffixes.add(removePrefix(f, n));
+					r.add(RegExp.makeConcatenation(makeLiteral(p.substring(0, n)), simplifyUnion(suffixes)));
+				}
+			}
+		}
+		return r;
+	}
+	
+	/**
+	 * Returns the string that the given regular expression starts with, null if none.
+	 */
+	private static String getPrefix(RegExp e) {
+		switch (e.kind) {
+		case REGEXP_CHAR:
+			return String.valueOf(e.c);
+		case REGEXP_STRING:
+			return e.s;
+		case REGEXP_CONCATENATION:
+			return getPrefix(e.exps[0]);
+		default:
+			return null;
+		}
+	}
+	
+	/**
+	 * Removes the first <code>n</code> characters of the given regular expression (which starts with a string).
+	 */
+	private static RegExp removePrefix(RegExp e, int n) {
+		switch (e.kind) {
+		case REGEXP_CHAR:
+			return RegExp.makeString("");
+		case REGEXP_STRING:
+			return makeLiteral(e.s.substring(n));
+		default: // concatenation
+			List<RegExp> l = new ArrayList<RegExp>(e.exps.length);
+			RegExp first = removePrefix(e.exps[0], n);
+			if (!isEmptyString(first))
+				l.add(first);
+			l.addAll(Arrays.asList(e.exps).subList(1, e.exps.length));
+			return RegExp.makeConcatenation(l);
+		}
+	}
+	
+	private static RegExp makeLiteral(String s) {
+		return s.length() == 1 ? RegExp.makeChar(s.charAt(0)) : RegExp.makeString(s);
+	}
+	
+	/**
+	 * Merges the characters, character ranges and <code>.</code> among the alternatives into 
+	 * disjoint ranges, placed at the position of the first of them.
+	 */
+	private static List<RegExp> mergeCharacters(List<RegExp> l) {
+		int count = 0;
+		for (RegExp e : l)
+			if (isCharacters(e))
+				count++;
+		if (count < 2)
+			return l;
+		int[] ranges = new int[2 * count];
+		int n = 0;
+		for (RegExp e : l)
+			switch (e.kind) {
+			case REGEXP_CHAR:
+				ranges[n++] = e.c;
+				ranges[n++] = e.c;
+				break;
+			case REGEXP_CHAR_RANGE:
+				if (e.from <= e.to) {
+					ranges[n++] = e.from;
+					ranges[n++] = e.to;
+				}
+				break;
+			case REGEXP_ANYCHAR:
+				ranges[n++] = Character.MIN_VALUE;
+				ranges[n++] = Character.MAX_VALUE;
+				break;
+			default:
+			}
+		long[] sorted = new long[n / 2];
+		for (int i = 0; i < sorted.length; i++)
+			sorted[i] = ((long)ranges[2 * i] << 32) | ranges[2 * i + 1];
+		Arrays.sort(sorted);
+		List<RegExp> merged = new ArrayList<RegExp>();
+		for (int i = 0; i < sorted.length;) {
+			int from = (int)(sorted[i] >>> 32), to = (int)sorted[i];
+			for (i++; i < sorted.length && (int)(sorted[i] >>> 32) <= to + 1; i++)
+				to = Math.max(to, (int)sorted[i]);
+			if (from == Character.MIN_VALUE && to == Character.MAX_VALUE)
+				merged.add(RegExp.makeAnyChar());
+			else if (from == to)
+				merged.add(RegExp.makeChar((char)from));
+			else
+				merged.add(RegExp.makeCharRange((char)from, (char)to));
+		}
+		List<RegExp> r = new ArrayList<RegExp>(l.size() - count + merged.size());
+		for (RegExp e : l)
+			if (!isCharacters(e))
+				r.add(e);
+			else if (merged != null) {
+				r.addAll(merged);
+				merged = null;
+			}
+		return r;
+	}
+	
+	private static List<RegExp> getOperands(RegExp e, Kind kind) {
+		return e.kind == kind ? Arrays.asList(e.exps) : Collections.singletonList(e);
+	}
+	
+	private static boolean isCharacters(RegExp e) {
+		return e.kind == Kind.REGEXP_CHAR || e.kind == Kind.REGEXP_CHAR_RANGE || e.kind == Kind.REGEXP_ANYCHAR;
+	}
+	
+	private static boolean isEmptyString(RegExp e) {
+		return e.kind == Kind.REGEXP_STRING && e.s.isEmpty();
+	}
+	
+	/**
+	 * Returns true if the given regular expression accepts the empty string 
+	 * (false negatives are allowed).
+	 */
+	private static boolean isNullable(RegExp e) {
+		switch (e.kind) {
+		case REGEXP_OPTIONAL:
+		case REGEXP_REPEAT:
+		case REGEXP_ANYSTRING:
+			return true;
+		case REGEXP_REPEAT_MIN:
+			return e.min == 0 || isNullable(e.exp1);
+		case REGEXP_REPEAT_MINMAX:
+			return e.min <= e.max && (e.min == 0 || isNullable(e.exp1));
+		case REGEXP_STRING:
+			return e.s.isEmpty();
+		case REGEXP_UNION:
+			for (RegExp f : e.exps)
+				if (isNullable(f))
+					return true;
+			return false;
+		case REGEXP_CONCATENATION:
+		case REGEXP_INTERSECTION:
+			for (RegExp f : e.exps)
+				if (!isNullable(f))
+					return false;
+			return true;
+		default:
+			return false;
+		}
+	}
+	
+	/**
+	 * Removes structurally identical regular expressions from the given list.
+	 */
+	private List<RegExp> removeDuplicates(List<RegExp> l) {
+		HashSet<RegExp.Key> seen = new HashSet<RegExp.Key>();
+		List<RegExp> r = new ArrayList<RegExp>(l.size());
+		for (RegExp e : l)
+			if (seen.add(getKey(e)))
+				r.add(e);
+		return r;
+	}
+	
+	private RegExp.Key getKey(RegExp e) {
+		RegExp.Key k = keys.get(e);
+		if (k == null) {
+			RegExp.Key[] children;
+			if (e.exps != null) {
+				children = new RegExp.Key[e.exps.length];
+				for (int i = 0; i < children.length; i++)
+					children[i] = getKey(e.exps[i]);
+			} else if (e.exp1 != null)
+				children = new RegExp.Key[] { getKey(e.exp1) };
+			else
+				children = new RegExp.Key[0];
+			k = new RegExp.Key(e, children);
+			keys.put(e, k);
+		}
+		return k;
+	}
+}
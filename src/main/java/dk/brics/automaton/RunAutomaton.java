@@ -37,9 +37,8 @@ import java.io.OutputStream;
 import java.io.Serializable;
 import java.net.URL;
 import java.util.Arrays;
-import java.util.Comparator;
-import java.util.List;
-import java.util.stream.Collectors;
+import java.util.HashMap;
+import java.util.Map;
 
 /**
  * Finite-state automaton with fast run operation.
@@ -55,6 +54,8 @@ public class RunAutomaton implements Serializable {
 	int[] transitions; // delta(state,c) = transitions[state*points.length + getCharClass(c)]
 	char[] points; // char interval start points
 	int[] classmap; // map from char number to class class
+	boolean start_anchored, end_anchored; // for matchers
+	RunAutomaton reverse; // automaton of the reversed language for end anchored matchers, null if not built
 
 	/** 
 	 * Sets alphabet table for optimal run performance. 
@@ -192,22 +193,55 @@ public class RunAutomaton implements Serializable {
 	 *                 method faster in return of a higher memory usage
 	 */
 	public RunAutomaton(Automaton a, boolean tableize) {
+		this(a, tableize, false, false);
+	}
+
+	/**
+	 * Constructs a new <code>RunAutomaton</code> from a deterministic
+	 * <code>Automaton</code>, with anchors for matchers. If the given automaton 
+	 * is not deterministic, it is determinized first.
+	 * @param a an automaton
+	 * @param tableize if true, a transition table is created which makes the <code>run</code> 
+	 *                 method faster in return of a higher memory usage
+	 * @param start_anchored if true, matches found by {@link #newMatcher(CharSequence)} start at the beginning of the input
+	 * @param end_anchored if true, matches found by {@link #newMatcher(CharSequence)} end at the end of the input;
+	 *                     unless <code>start_anchored</code> is also set, an automaton of the reversed language
+	 *                     is built as well (if within the DFA state budget), so matchers scan the input once
+	 * @see RegExp#isStartAnchored()
+	 * @see RegExp#isEndAnchored()
+	 */
+	public RunAutomaton(Automaton a, boolean tableize, boolean start_anchored, boolean end_anchored) {
+		this.start_anchored = start_anchored;
+		this.end_anchored = end_anchored;
+		if (end_anchored && !start_anchored) {
+			Automaton r = a.cloneExpanded();
+			SpecialOperations.reverse(r);
+			try {
+				reverse = new RunAutomaton(r, tableize);
+			} catch (DfaBudgetExceededException e) {
+				// matchers scan from each start position instead
+			}
+		}
 		a.determinize();
 		points = a.getStartPoints();
-		List<State> states = a.getStates().stream().sorted().collect(Collectors.toList());
-		Automaton.setStateNumbers(states);
-		initial = a.initial.number;
-		size = states.size();
+		// number the states locally (in creation order), as they may be shared with other automata
+		State[] states = a.getStateArray().clone();
+		Arrays.sort(states);
+		size = states.length;
+		Map<State, Integer> number = new HashMap<State, Integer>(size * 2);
+		for (int n = 0; n < size; n++)
+			number.put(states[n], n);
+		initial = number.get(a.initial);
 		accept = new boolean[size];
 		transitions = new int[size * points.length];
 		Arrays.fill(transitions, -1);
-		for (State s : states.stream().sorted(Comparator.comparingInt(state -> state.number)).collect(Collectors.toList())) {
-			int n = s.number;
+		for (int n = 0; n < size; n++) {
+			State s = states[n];
 			accept[n] = s.accept;
 			for (int c = 0; c < points.length; c++) {
 				State q = s.step(points[c]);
 				if (q != null)
-					transitions[n * points.length + c] = q.number;
+					transitions[n * points.length + c] = number.get(q);
 			}
 		}
 		if (tableize)
@@ -265,6 +299,20 @@ public class RunAutomaton implements Serializable {
 		return max;
 	}
 
+	/**
+	 * Returns true if matches start at the beginning of the input.
+	 */
+	public boolean isStartAnchored() {
+		return start_anchored;
+	}
+
+	/**
+	 * Returns true if matches end at the end of the input.
+	 */
+	public boolean isEndAnchored() {
+		return end_anchored;
+	}
+
 	/**
 	 * Creates a new automaton matcher for the given input.
 	 * @param s the CharSequence to search
@@ -32,7 +32,6 @@ package dk.brics.automaton;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
@@ -59,42 +58,34 @@ final public class ShuffleOperations {
 	public static Automaton shuffle(Automaton a1, Automaton a2) {
 		a1.determinize();
 		a2.determinize();
-		Transition[][] transitions1 = Automaton.getSortedTransitions(a1.getStates());
-		Transition[][] transitions2 = Automaton.getSortedTransitions(a2.getStates());
+		Transition[][] transitions1 = a1.getSortedTransitions();
+		Transition[][] transitions2 = a2.getSortedTransitions();
+		int[][] targets1 = a1.getSortedTransitionTargets();
+		int[][] targets2 = a2.getSortedTransitionTargets();
+		boolean[] accept1 = a1.getAcceptArray();
+		boolean[] accept2 = a2.getAcceptArray();
 		Automaton c = new Automaton();
-		LinkedList<StatePair> worklist = new LinkedList<StatePair>();
-		HashMap<StatePair, StatePair> newstates = new HashMap<StatePair, StatePair>();
-		State s = new State();
-		c.initial = s;
-		StatePair p = new StatePair(s, a1.initial, a2.initial);
-		worklist.add(p);
-		newstates.put(p, p);
-		while (worklist.size() > 0) {
-			p = worklist.removeFirst();
-			p.s.accept = p.s1.accept && p.s2.accept;
-			Transition[] t1 = transitions1[p.s1.number];
+		ArrayList<State> newstates = new ArrayList<State>();
+		LongIntMap ids = new LongIntMap();
+		IntQueue worklist = new IntQueue();
+		newstates.add(c.initial);
+		ids.putIfAbsent(LongIntMap.pack(0, 0), 0);
+		worklist.add(0);
+		worklist.add(0);
+		while (!worklist.isEmpty()) {
+			int s1 = worklist.removeFirst();
+			int s2 = worklist.removeFirst();
+			State s = newstates.get(ids.get(LongIntMap.pack(s1, s2)));
+			s.accept = accept1[s1] && accept2[s2];
+			Transition[] t1 = transitions1[s1];
 			for (int n1 = 0; n1 < t1.length; n1++) {
-				StatePair q = new StatePair(t1[n1].to, p.s2);
-				StatePair r = newstates.get(q);
-				if (r == null) {
-					q.s = new State();
-					worklist.add(q);
-					newstates.put(q, q);
-					r = q;
-				}
-				p.s.transitions.add(new Transition(t1[n1].min, t1[n1].max, r.s));
+				State r = getShuffleState(targets1[s1][n1], s2, ids, newstates, worklist);
+				s.transitions.add(new Transition(t1[n1].min, t1[n1].max, r));
 			}
-			Transition[] t2 = transitions2[p.s2.number];
+			Transition[] t2 = transitions2[s2];
 			for (int n2 = 0; n2 < t2.length; n2++) {
-				StatePair q = new StatePair(p.s1, t2[n2].to);
-				StatePair r = newstates.get(q);
-				if (r == null) {
-					q.s = new State();
-					worklist.add(q);
-					newstates.put(q, q);
-					r = q;
-				}
-				p.s.transitions.add(new Transition(t2[n2].min, t2[n2].max, r.s));
+				State r = getShuffleState(s1, targets2[s2][n2], ids, newstates, worklist);
+				s.transitions.add(new Transition(t2[n2].min, t2[n2].max, r));
 			}
 		}
 		c.deterministic = false;
@@ -103,6 +94,20 @@ final public class ShuffleOperations {
 		return c;
 	}
 	
+	/**
+	 * Returns the product state for the given pair of state numbers, creating it if necessary.
+	 */
+	private static State getShuffleState(int s1, int s2, LongIntMap ids, ArrayList<State> newstates, IntQueue worklist) {
+		int r = ids.putIfAbsent(LongIntMap.pack(s1, s2), newstates.size());
+		if (r == -1) {
+			r = newstates.size();
+			newstates.add(new State());
+			worklist.add(s1);
+			worklist.add(s2);
+		}
+		return newstates.get(r);
+	}
+
 	/**
 	 * Returns a string that is an interleaving of strings that are accepted by
 	 * <code>ca</code> but not by <code>a</code>. If no such string
@@ -129,13 +134,20 @@ final public class ShuffleOperations {
 				return null;
 		}
 		a.determinize();
+		State[][] ca_states = new State[ca.size()][];
 		Transition[][][] ca_transitions = new Transition[ca.size()][][];
+		int[][][] ca_targets = new int[ca.size()][][];
 		int i = 0;
-		for (Automaton a1 : ca)
-			ca_transitions[i++] = Automaton.getSortedTransitions(a1.getStates());
-		Transition[][] a_transitions = Automaton.getSortedTransitions(a.getStates());
+		for (Automaton a1 : ca) {
+			ca_states[i] = a1.getStateArray();
+			ca_transitions[i] = a1.getSortedTransitions();
+			ca_targets[i++] = a1.getSortedTransitionTargets();
+		}
+		State[] a_states = a.getStateArray();
+		Transition[][] a_transitions = a.getSortedTransitions();
+		int[][] a_targets = a.getSortedTransitionTargets();
 		TransitionComparator tc = new TransitionComparator(false);
-		ShuffleConfiguration init = new ShuffleConfiguration(ca, a);
+		ShuffleConfiguration init = new ShuffleConfiguration(ca.size());
 		LinkedList<ShuffleConfiguration> pending = new LinkedList<ShuffleConfiguration>();
 		Set<ShuffleConfiguration> visited = new HashSet<ShuffleConfiguration>();
 		pending.add(init);
@@ -144,11 +156,11 @@ final public class ShuffleOperations {
 			ShuffleConfiguration c = pending.removeFirst();
 			boolean good = true;
 			for (int i1 = 0; i1 < ca.size(); i1++)
-				if (!c.ca_states[i1].accept) {
+				if (!ca_states[i1][c.ca_states[i1]].accept) {
 					good = false;
 					break;
 				}
-			if (c.a_state.accept)
+			if (a_states[c.a_state].accept)
 				good = false;
 			if (good) {
 				StringBuilder sb = new StringBuilder();
@@ -161,11 +173,15 @@ final public class ShuffleOperations {
 					sb2.append(sb.charAt(j));
 				return sb2.toString();
 			}
-			Transition[] ta2 = a_transitions[c.a_state.number];
+			Transition[] ta2 = a_transitions[c.a_state];
+			int[] to2 = a_targets[c.a_state];
 			for (int i1 = 0; i1 < ca.size(); i1++) {
 				if (c.shuffle_suspended)
 					i1 = c.suspended1;
-				loop: for (Transition t1 : ca_transitions[i1][c.ca_states[i1].number]) {
+				Transition[] ta1 = ca_transitions[i1][c.ca_states[i1]];
+				int[] to1 = ca_targets[i1][c.ca_states[i1]];
+				loop: for (int k1 = 0; k1 < ta1.length; k1++) {
+					Transition t1 = ta1[k1];
 					List<Transition> lt = new ArrayList<Transition>();
 					int j = Arrays.binarySearch(ta2, t1, tc);
 					if (j < 0)
@@ -173,6 +189,7 @@ final public class ShuffleOperations {
 					if (j > 0 && ta2[j - 1].max >= t1.min)
 						j--;
 					while (j < ta2.length) {
+						int s2 = to2[j];
 						Transition t2 = ta2[j++];
 						char min = t1.min;
 						char max = t1.max;
@@ -181,7 +198,7 @@ final public class ShuffleOperations {
 						if (t2.max < max)
 							max = t2.max;
 						if (min <= max) {
-							add(suspend_shuffle, resume_shuffle, pending, visited, c, i1, t1, t2, min, max);
+							add(suspend_shuffle, resume_shuffle, pending, visited, c, i1, to1[k1], s2, min, max);
 							lt.add(new Transition(min, max, null));
 						} else
 							break;
@@ -196,7 +213,7 @@ final public class ShuffleOperations {
 							continue loop;
 						min = (char)(at[k].max + 1);
 					}
-					ShuffleConfiguration nc = new ShuffleConfiguration(c, i1, t1.to, min);
+					ShuffleConfiguration nc = new ShuffleConfiguration(c, i1, to1[k1], min);
 					StringBuilder sb = new StringBuilder();
 					ShuffleConfiguration b = nc;
 					while (b.prev != null) {
@@ -207,10 +224,10 @@ final public class ShuffleOperations {
 					for (int m = sb.length() - 1; m >= 0; m--)
 						sb2.append(sb.charAt(m));
 					if (c.shuffle_suspended)
-						sb2.append(BasicOperations.getShortestExample(nc.ca_states[c.suspended1], true));
+						sb2.append(BasicOperations.getShortestExample(ca_states[c.suspended1][nc.ca_states[c.suspended1]], true));
 					for (i1 = 0; i1 < ca.size(); i1++)
 						if (!c.shuffle_suspended || i1 != c.suspended1)
-							sb2.append(BasicOperations.getShortestExample(nc.ca_states[i1], true));
+							sb2.append(BasicOperations.getShortestExample(ca_states[i1][nc.ca_states[i1]], true));
 					return sb2.toString();
 				}
 				if (c.shuffle_suspended)
@@ -222,29 +239,29 @@ final public class ShuffleOperations {
 
 	private static void add(Character suspend_shuffle, Character resume_shuffle, 
 			                LinkedList<ShuffleConfiguration> pending, Set<ShuffleConfiguration> visited, 
-			                ShuffleConfiguration c, int i1, Transition t1, Transition t2, char min, char max) {
+			                ShuffleConfiguration c, int i1, int s1, int s2, char min, char max) {
 		final char HIGH_SURROGATE_BEGIN = '\uD800'; 
 		final char HIGH_SURROGATE_END = '\uDBFF'; 
 		if (suspend_shuffle != null && min <= suspend_shuffle && suspend_shuffle <= max && min != max) {
 			if (min < suspend_shuffle)
-				add(suspend_shuffle, resume_shuffle, pending, visited, c, i1, t1, t2, min, (char)(suspend_shuffle - 1));
-			add(suspend_shuffle, resume_shuffle, pending, visited, c, i1, t1, t2, suspend_shuffle, suspend_shuffle);
+				add(suspend_shuffle, resume_shuffle, pending, visited, c, i1, s1, s2, min, (char)(suspend_shuffle - 1));
+			add(suspend_shuffle, resume_shuffle, pending, visited, c, i1, s1, s2, suspend_shuffle, suspend_shuffle);
 			if (suspend_shuffle < max)
-				add(suspend_shuffle, resume_shuffle, pending, visited, c, i1, t1, t2, (char)(suspend_shuffle + 1), max);
+				add(suspend_shuffle, resume_shuffle, pending, visited, c, i1, s1, s2, (char)(suspend_shuffle + 1), max);
 		} else if (resume_shuffle != null && min <= resume_shuffle && resume_shuffle <= max && min != max) {
 			if (min < resume_shuffle)
-				add(suspend_shuffle, resume_shuffle, pending, visited, c, i1, t1, t2, min, (char)(resume_shuffle - 1));
-			add(suspend_shuffle, resume_shuffle, pending, visited, c, i1, t1, t2, resume_shuffle, resume_shuffle);
+				add(suspend_shuffle, resume_shuffle, pending, visited, c, i1, s1, s2, min, (char)(resume_shuffle - 1));
+			add(suspend_shuffle, resume_shuffle, pending, visited, c, i1, s1, s2, resume_shuffle, resume_shuffle);
 			if (resume_shuffle < max)
-				add(suspend_shuffle, resume_shuffle, pending, visited, c, i1, t1, t2, (char)(resume_shuffle + 1), max);
+				add(suspend_shuffle, resume_shuffle, pending, visited, c, i1, s1, s2, (char)(resume_shuffle + 1), max);
 		} else if (min < HIGH_SURROGATE_BEGIN && max >= HIGH_SURROGATE_BEGIN) {
-			add(suspend_shuffle, resume_shuffle, pending, visited, c, i1, t1, t2, min, (char)(HIGH_SURROGATE_BEGIN - 1));
-			add(suspend_shuffle, resume_shuffle, pending, visited, c, i1, t1, t2, HIGH_SURROGATE_BEGIN, max);
+			add(suspend_shuffle, resume_shuffle, pending, visited, c, i1, s1, s2, min, (char)(HIGH_SURROGATE_BEGIN - 1));
+			add(suspend_shuffle, resume_shuffle, pending, visited, c, i1, s1, s2, HIGH_SURROGATE_BEGIN, max);
 		} else if (min <= HIGH_SURROGATE_END && max > HIGH_SURROGATE_END) {
-			add(suspend_shuffle, resume_shuffle, pending, visited, c, i1, t1, t2, min, HIGH_SURROGATE_END);
-			add(suspend_shuffle, resume_shuffle, pending, visited, c, i1, t1, t2, (char)(HIGH_SURROGATE_END + 1), max);
+			add(suspend_shuffle, resume_shuffle, pending, visited, c, i1, s1, s2, min, HIGH_SURROGATE_END);
+			add(suspend_shuffle, resume_shuffle, pending, visited, c, i1, s1, s2, (char)(HIGH_SURROGATE_END + 1), max);
 		} else {
-			ShuffleConfiguration nc = new ShuffleConfiguration(c, i1, t1.to, t2.to, min);
+			ShuffleConfiguration nc = new ShuffleConfiguration(c, i1, s1, s2, min);
 			if (suspend_shuffle != null && min == suspend_shuffle) {
 				nc.shuffle_suspended = true;
 				nc.suspended1 = i1;
@@ -265,8 +282,8 @@ final public class ShuffleOperations {
 	static class ShuffleConfiguration {
 		
 		ShuffleConfiguration prev;
-		State[] ca_states;
-		State a_state;
+		int[] ca_states; // state indexes as in Automaton.getStateArray()
+		int a_state;
 		char min;
 		int hash;
 		boolean shuffle_suspended;
@@ -276,16 +293,12 @@ final public class ShuffleOperations {
 		@SuppressWarnings("unused")
 		private ShuffleConfiguration() {}
 		
-		ShuffleConfiguration(Collection<Automaton> ca, Automaton a) {
-			ca_states = new State[ca.size()];
-			int i = 0;
-			for (Automaton a1 : ca)
-				ca_states[i++] = a1.getInitialState();
-			a_state = a.getInitialState();
+		ShuffleConfiguration(int n) {
+			ca_states = new int[n];
 			computeHash();
 		}
 		
-		ShuffleConfiguration(ShuffleConfiguration c, int i1, State s1, char min) {
+		ShuffleConfiguration(ShuffleConfiguration c, int i1, int s1, char min) {
 			prev = c;
 			ca_states = c.ca_states.clone();
 			a_state = c.a_state;
@@ -294,7 +307,7 @@ final public class ShuffleOperations {
 			computeHash();
 		}
 
-		ShuffleConfiguration(ShuffleConfiguration c, int i1, State s1, State s2, char min) {
+		ShuffleConfiguration(ShuffleConfiguration c, int i1, int s1, int s2, char min) {
 			prev = c;
 			ca_states = c.ca_states.clone();
 			a_state = c.a_state;
@@ -327,10 +340,9 @@ final public class ShuffleOperations {
 		}
 		
 		private void computeHash() {
-			hash = 0;
+			hash = a_state;
 			for (int i = 0; i < ca_states.length; i++)
-				hash ^= ca_states[i].hashCode();
-			hash ^= a_state.hashCode() * 100;
+				hash = hash * 31 + ca_states[i];
 			if (shuffle_suspended || surrogate)
 				hash += suspended1;
 		}
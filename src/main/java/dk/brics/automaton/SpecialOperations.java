@@ -48,6 +48,7 @@ final public class SpecialOperations {
 	 * the set of new initial states.
 	 */
 	public static Set<State> reverse(Automaton a) {
+		a.unshare();
 		// reverse all edges
 		HashMap<State, HashSet<Transition>> m = new HashMap<State, HashSet<Transition>>();
 		Set<State> states = a.getStates();
@@ -57,7 +58,7 @@ final public class SpecialOperations {
 			r.accept = false;
 		}
 		for (State r : states)
-			for (Transition t : r.getTransitions())
+			for (Transition t : r.transitions)
 				m.get(t.to).add(new Transition(t.min, t.max, r));
 		for (State r : states)
 			r.transitions = m.get(r);
@@ -558,8 +559,9 @@ final public class SpecialOperations {
 	 * Prefix closes the given automaton.
 	 */
 	public static void prefixClose(Automaton a) {
+		a.unshare();
 		for (State s : a.getStates())
-			s.setAccept(true);
+			s.accept = true;
 		a.clearHashCode();
 		a.checkMinimizeAlways();
 	}
@@ -30,11 +30,14 @@
 package dk.brics.automaton;
 
 import java.io.Serializable;
+import java.util.AbstractSet;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /** 
  * <code>Automaton</code> state. 
@@ -51,14 +54,21 @@ public class State implements Serializable, Comparable<State> {
     int numVisits = 0;
 	
 	int id;
-	static int next_id;
+	static final AtomicInteger next_id = new AtomicInteger();
+	
+	/** 
+	 * Incremented when a state is modified through the public methods, which invalidates 
+	 * the reachable states cached by the automata (see {@link Automaton#getStateArray()}).
+	 * The operations modify the fields directly and invalidate the caches themselves.
+	 */
+	static final AtomicInteger mod_count = new AtomicInteger();
 	
 	/** 
 	 * Constructs a new state. Initially, the new state is a reject state. 
 	 */
 	public State() {
 		resetTransitions();
-		id = next_id++;
+		id = next_id.getAndIncrement();
 	}
 	
 	/** 
@@ -74,7 +84,7 @@ public class State implements Serializable, Comparable<State> {
 	 * @return transition set
 	 */
 	public Set<Transition> getTransitions()	{
-		return transitions;
+		return new TransitionSet(transitions);
 	}
 	
 	/**
@@ -82,6 +92,7 @@ public class State implements Serializable, Comparable<State> {
 	 * @param t transition
 	 */
 	public void addTransition(Transition t)	{
+		mod_count.incrementAndGet();
 		transitions.add(t);
 	}
 	
@@ -90,6 +101,7 @@ public class State implements Serializable, Comparable<State> {
 	 * @param accept if true, this state is an accept state
 	 */
 	public void setAccept(boolean accept) {
+		mod_count.incrementAndGet();
 		this.accept = accept;
 	}
 	
@@ -155,15 +167,78 @@ public class State implements Serializable, Comparable<State> {
 	@Override
 	public String toString() {
 		StringBuilder b = new StringBuilder();
+		Transition[] ts = transitions.toArray(new Transition[transitions.size()]);
+		int[] to = new int[ts.length];
+		for (int i = 0; i < ts.length; i++)
+			to[i] = ts[i].to.number;
+		appendString(b, number, ts, to);
+		return b.toString();
+	}
+	
+	/**
+	 * Appends a description of this state with the given transitions, using the given
+	 * numbers for this state and the destination states.
+	 */
+	void appendString(StringBuilder b, int number, Transition[] ts, int[] to) {
 		b.append("state ").append(number);
 		if (accept)
 			b.append(" [accept]");
 		else
 			b.append(" [reject]");
 		b.append(":\n");
-		for (Transition t : transitions)
-			b.append("  ").append(t.toString()).append("\n");
-		return b.toString();
+		for (int i = 0; i < ts.length; i++) {
+			b.append("  ");
+			ts[i].appendString(b, to[i]);
+			b.append("\n");
+		}
+	}
+	
+	/**
+	 * View of a transition set that counts modifications in {@link State#mod_count}.
+	 */
+	static final class TransitionSet extends AbstractSet<Transition> {
+		
+		final Set<Transition> transitions;
+		
+		TransitionSet(Set<Transition> transitions) {
+			this.transitions = transitions;
+		}
+		
+		@Override
+		public boolean add(Transition t) {
+			mod_count.incrementAndGet();
+			return transitions.add(t);
+		}
+		
+		@Override
+		public boolean contains(Object o) {
+			return transitions.contains(o);
+		}
+		
+		@Override
+		public Iterator<Transition> iterator() {
+			final Iterator<Transition> i = transitions.iterator();
+			return new Iterator<Transition>() {
+				
+				public boolean hasNext() {
+					return i.hasNext();
+				}
+				
+				public Transition next() {
+					return i.next();
+				}
+				
+				public void remove() {
+					mod_count.incrementAndGet();
+					i.remove();
+				}
+			};
+		}
+		
+		@Override
+		public int size() {
+			return transitions.size();
+		}
 	}
 	
 	/**
@@ -292,13 +292,13 @@ final public class StringUnionOperations {
 			return converted;
 
 		converted = new dk.brics.automaton.State();
-		converted.setAccept(s.is_final);
+		converted.accept = s.is_final;
 
 		visited.put(s, converted);
 		int i = 0;
 		char [] labels = s.labels;
 		for (StringUnionOperations.State target : s.states) {
-			converted.addTransition(new Transition(labels[i++], convert(target, visited)));
+			converted.transitions.add(new Transition(labels[i++], convert(target, visited)));
 		}
 
 		return converted;
@@ -0,0 +1,95 @@
+/*
+ * dk.brics.automaton
+ * 
+ * Copyright (c) 2001-2017 Anders Moeller
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package dk.brics.automaton;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Cache of automata for subexpressions of regular expressions, shared between compilations.
+ * <p>
+ * Within one compilation, {@link RegExp#toAutomaton()} builds the automaton for identical 
+ * subexpressions only once. If a cache is set in the {@link AutomatonContext} of the compilation
+ * (see {@link AutomatonContext#setSubexpressionCache(SubexpressionCache)}), the automata of all 
+ * nontrivial subexpressions are also looked up in and added to the cache. Subexpressions are 
+ * identified by their structure, and subexpressions with named automata are not cached.
+ * The cached automata are frozen (see {@link Automaton#freeze()}).
+ * <p>
+ * The cache is thread-safe. It holds at most a given number of entries, evicting the least recently used.
+ */
+final public class SubexpressionCache {
+	
+	private final LinkedHashMap<RegExp.Key, Automaton> map;
+	
+	/**
+	 * Constructs a new empty cache.
+	 * @param max_entries maximum number of entries
+	 */
+	public SubexpressionCache(final int max_entries) {
+		map = new LinkedHashMap<RegExp.Key, Automaton>(16, 0.75f, true) {
+			
+			static final long serialVersionUID = 10001;
+			
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<RegExp.Key, Automaton> eldest) {
+				return size() > max_entries;
+			}
+		};
+	}
+	
+	/**
+	 * Returns the frozen automaton for the given subexpression, null if not cached.
+	 */
+	synchronized Automaton get(RegExp.Key key) {
+		return map.get(key);
+	}
+	
+	/**
+	 * Adds the frozen automaton for the given subexpression.
+	 */
+	synchronized void put(RegExp.Key key, Automaton a) {
+		map.put(key, a);
+	}
+	
+	/**
+	 * Returns the number of entries.
+	 */
+	public synchronized int size() {
+		return map.size();
+	}
+	
+	/**
+	 * Removes all entries.
+	 */
+	public synchronized void clear() {
+		map.clear();
+	}
+}
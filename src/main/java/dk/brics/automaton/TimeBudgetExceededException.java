@@ -0,0 +1,18 @@
+package dk.brics.automaton;
+
+/**
+ * Exception to throw if a construction runs past the deadline of its context,
+ * see {@link BulkCompiler#setTimeout(long, java.util.concurrent.TimeUnit)}.
+ */
+public class TimeBudgetExceededException extends RuntimeException {
+
+	static final long serialVersionUID = 10001;
+
+	public TimeBudgetExceededException() {
+		this("time budget exceeded");
+	}
+
+	public TimeBudgetExceededException(String message) {
+		super(message);
+	}
+}
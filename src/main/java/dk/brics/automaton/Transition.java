@@ -177,17 +177,27 @@ public class Transition implements Serializable, Cloneable {
 	@Override
 	public String toString() {
 		StringBuilder b = new StringBuilder();
+		appendString(b, to.number);
+		return b.toString();
+	}
+
+	/**
+	 * Appends a description of this transition, using the given number for the destination state.
+	 */
+	void appendString(StringBuilder b, int to) {
 		appendCharString(min, b);
 		if (min != max) {
 			b.append("-");
 			appendCharString(max, b);
 		}
-		b.append(" -> ").append(to.number);
-		return b.toString();
+		b.append(" -> ").append(to);
 	}
 
-	void appendDot(StringBuilder b) {
-		b.append(" -> ").append(to.number).append(" [label=\"");
+	/**
+	 * Appends a Graphviz Dot edge for this transition, using the given number for the destination state.
+	 */
+	void appendDot(StringBuilder b, int to) {
+		b.append(" -> ").append(to).append(" [label=\"");
 		appendCharString(min, b);
 		if (min != max) {
 			b.append("-");
@@ -0,0 +1,52 @@
+package dk.brics.automaton;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class AutomatonContextTest {
+
+    @Test
+    void dfaBudget_isTakenFromContext() {
+        RegExp regexp = new RegExp("(a|b)*a(a|b){8}");
+        regexp.setContext(new AutomatonContext().setDfaBudget(100));
+
+        assertThatThrownBy(regexp::toAutomaton).isInstanceOf(DfaBudgetExceededException.class);
+        assertThat(new RegExp("(a|b)*a(a|b){8}").toAutomaton().getNumberOfStates()).isEqualTo(512);
+    }
+
+    @Test
+    void contexts_doNotInterfereAcrossThreads() {
+        AutomatonContext small = new AutomatonContext().setDfaBudget(10);
+        AutomatonContext valmari = new AutomatonContext().setMinimization(Automaton.MINIMIZE_VALMARI);
+
+        CompletableFuture<Boolean> f1 = CompletableFuture.supplyAsync(() -> small.call(() -> {
+            try {
+                new RegExp("(a|b)*a(a|b){5}").toAutomaton();
+                return false;
+            } catch (DfaBudgetExceededException e) {
+                return true;
+            }
+        }));
+        CompletableFuture<Integer> f2 = CompletableFuture.supplyAsync(() -> valmari.call(() ->
+                new RegExp("(a|b)*a(a|b){5}").toAutomaton().getNumberOfStates()));
+
+        assertThat(f1.join()).isTrue();
+        assertThat(f2.join()).isEqualTo(64);
+        assertThat(AutomatonContext.getCurrent()).isSameAs(AutomatonContext.getDefault());
+    }
+
+    @Test
+    void minimizeAlways_isTakenFromContext() {
+        Automaton a = BasicAutomata.makeString("ab");
+        Automaton b = BasicAutomata.makeString("ac");
+
+        Automaton u = new AutomatonContext().setMinimizeAlways(true).call(() -> a.union(b));
+
+        assertThat(u.isDeterministic()).isTrue();
+        assertThat(a.union(b).isDeterministic()).isFalse();
+    }
+}
@@ -0,0 +1,144 @@
+package dk.brics.automaton;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class AutomatonTest {
+
+    @Test
+    void fingerprint_isEqual_forEqualLanguages() {
+        Automaton a1 = new RegExp("(a|b)*abb").toAutomaton(false);
+        Automaton a2 = new RegExp("[ab]*a(bb)").toAutomaton();
+        Automaton a3 = BasicOperations.union(new RegExp("abb").toAutomaton(), new RegExp("[ab]+abb").toAutomaton());
+
+        assertThat(a1.fingerprint()).hasSize(32).isEqualTo(a2.fingerprint()).isEqualTo(a3.fingerprint());
+        assertThat(BasicAutomata.makeString("abc").fingerprint()).isEqualTo(new RegExp("a(b)c").toAutomaton().fingerprint());
+    }
+
+    @Test
+    void fingerprint_differs_whenHashCodeCollides() {
+        Automaton a1 = new RegExp("ab").toAutomaton();
+        Automaton a2 = new RegExp("ac").toAutomaton();
+
+        assertThat(a1.hashCode()).isEqualTo(a2.hashCode());
+        assertThat(a1.fingerprint()).isNotEqualTo(a2.fingerprint());
+        assertThat(BasicAutomata.makeEmpty().fingerprint()).isNotEqualTo(BasicAutomata.makeEmptyString().fingerprint());
+    }
+
+    @Test
+    void fingerprint_isUpdated_whenAutomatonIsModified() {
+        Automaton a = new RegExp("a+").toAutomaton();
+        String f = a.fingerprint();
+
+        assertThat(a.fingerprint()).isSameAs(f);
+
+        a.getInitialState().setAccept(true);
+        a.restoreInvariant();
+
+        assertThat(a.fingerprint()).isNotEqualTo(f).isEqualTo(new RegExp("a*").toAutomaton().fingerprint());
+    }
+
+    @Test
+    void states_areRecomputed_whenBuiltManually() {
+        Automaton a = new Automaton();
+        assertThat(a.getNumberOfStates()).isEqualTo(1);
+
+        State t = new State();
+        t.setAccept(true);
+        a.getInitialState().addTransition(new Transition('a', t));
+
+        assertThat(a.getNumberOfStates()).isEqualTo(2);
+        assertThat(a.toString()).doesNotContain("a -> 0");
+        assertThat(new RunAutomaton(a).run("a")).isTrue();
+
+        t.getTransitions().add(new Transition('b', a.getInitialState()));
+
+        assertThat(a.getNumberOfTransitions()).isEqualTo(2);
+        assertThat(a.run("aba")).isTrue();
+    }
+
+    @Test
+    void states_areRecomputed_whenEditedThroughGetStates() {
+        Automaton a = new RegExp("ab").toAutomaton();
+        assertThat(a.getNumberOfStates()).isEqualTo(3);
+
+        State t = new State();
+        t.setAccept(true);
+        for (State s : a.getStates())
+            if (!s.isAccept())
+                s.addTransition(new Transition('c', t));
+
+        assertThat(a.getNumberOfStates()).isEqualTo(4);
+        RunAutomaton r = new RunAutomaton(a);
+        assertThat(r.run("c")).isTrue();
+        assertThat(r.run("ac")).isTrue();
+        assertThat(r.run("ab")).isTrue();
+        assertThat(r.run("abc")).isFalse();
+
+        for (State s : a.getStates())
+            s.getTransitions().removeIf(tr -> tr.getMin() == 'c');
+
+        assertThat(a.getNumberOfStates()).isEqualTo(3);
+        assertThat(new RunAutomaton(a).run("c")).isFalse();
+    }
+
+    @Test
+    void stateCache_isKept_whenStatesAreRead() {
+        Automaton a = new RegExp("(ab|cd)+").toAutomaton();
+        Automaton b = new RegExp("x*y").toAutomaton();
+        State[] states = a.getStateArray();
+
+        for (State s : b.getStates())
+            s.getTransitions().size();
+        for (Transition t : a.getInitialState().getTransitions())
+            t.getDest().isAccept();
+        b.minimize();
+
+        assertThat(a.getStateArray()).isSameAs(states);
+    }
+
+    @Test
+    void readOnlyOperations_doNotNumberFrozenStates() {
+        Automaton f = new RegExp("(ab|cd)+").toAutomaton().freeze();
+        State[] states = f.getStateArray();
+        for (State s : states)
+            s.number = -1;
+        Automaton u = f.union(new RegExp("a[bc]*").toAutomaton());
+
+        assertThat(u.isDeterministic()).isFalse();
+        assertThat(u.run("abcd")).isTrue();
+        assertThat(u.toString()).contains("initial state: 0");
+        assertThat(u.toDot()).contains("initial -> 0");
+        assertThat(new RunAutomaton(f).run("cdab")).isTrue();
+        assertThat(BasicOperations.getSubsetCounterexample(f, u)).isNull();
+        assertThat(ShuffleOperations.shuffleSubsetOf(java.util.Collections.singleton(f), u, null, null)).isNull();
+        assertThat(states).allMatch(s -> s.number == -1);
+    }
+
+    @Test
+    void addEpsilons_rejectsSharedStates() {
+        Automaton f = new RegExp("ab").toAutomaton().freeze();
+        Automaton u = f.union(new RegExp("c").toAutomaton());
+        List<StatePair> pairs = new ArrayList<>();
+        for (State s : u.getAcceptStates())
+            pairs.add(new StatePair(u.getInitialState(), s));
+
+        assertThatThrownBy(() -> u.addEpsilons(pairs)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> f.addEpsilons(new ArrayList<>())).isInstanceOf(IllegalArgumentException.class);
+
+        Automaton c = u.clone();
+        pairs.clear();
+        for (State s : c.getAcceptStates())
+            pairs.add(new StatePair(c.getInitialState(), s));
+        c.addEpsilons(pairs);
+
+        assertThat(c.run("")).isTrue();
+        assertThat(u.run("")).isFalse();
+        assertThat(f.run("")).isFalse();
+    }
+}
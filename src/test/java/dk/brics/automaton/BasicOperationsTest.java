@@ -0,0 +1,228 @@
+package dk.brics.automaton;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+class BasicOperationsTest {
+
+    @Test
+    void subsetCounterexample_isNull_whenIncluded() {
+        Automaton a1 = new RegExp("ab(c|d)").toAutomaton();
+        Automaton a2 = new RegExp("a.c").toAutomaton(false).union(new RegExp("[a-z]+d").toAutomaton(false));
+
+        assertThat(BasicOperations.getSubsetCounterexample(a1, a2)).isNull();
+    }
+
+    @Test
+    void subsetCounterexample_isWitness_whenNotIncluded() {
+        Automaton a1 = new RegExp("[a-c]*d").toAutomaton();
+        Automaton a2 = new RegExp("(a|b)*d").toAutomaton(false).union(new RegExp("c+d").toAutomaton(false));
+
+        String witness = BasicOperations.getSubsetCounterexample(a1, a2);
+
+        assertThat(witness).isNotNull();
+        assertThat(a1.run(witness)).isTrue();
+        assertThat(a2.run(witness)).isFalse();
+    }
+
+    @Test
+    void subsetCounterexample_doesNotDeterminize() {
+        Automaton a1 = new RegExp("x*").toAutomaton();
+        Automaton a2 = new RegExp("x*y?").toAutomaton(false).union(new RegExp("xx").toAutomaton(false));
+
+        assertThat(a2.isDeterministic()).isFalse();
+        assertThat(BasicOperations.getSubsetCounterexample(a1, a2)).isNull();
+        assertThat(a2.isDeterministic()).isFalse();
+    }
+
+    @Test
+    void subsetCounterexample_agreesWithSubsetOf() {
+        String[] patterns = { "a*b", "(a|b)*", "a(b|c)*", "(ab)*", "b*a*", "[a-c]{2,3}", "()", "a+b+" };
+        for (String p1 : patterns)
+            for (String p2 : patterns) {
+                Automaton a1 = new RegExp(p1).toAutomaton(false);
+                Automaton a2 = new RegExp(p2).toAutomaton(false);
+                boolean included = BasicOperations.getSubsetCounterexample(a1, a2) == null;
+                assertThat(included).as(p1 + " <= " + p2).isEqualTo(a1.subsetOf(a2.clone()));
+            }
+    }
+
+    @Test
+    void subsetCounterexample_computesSimulationQuickly_nearStateLimit() {
+        // chains of 1000 and 999 states, where the naive fixpoint removes one layer of pairs per pass
+        Automaton a1 = BasicAutomata.makeChar('a').repeat(999, 999);
+        Automaton a2 = BasicAutomata.makeChar('a').repeat(998, 998);
+        assertThat(a1.getNumberOfStates() + a2.getNumberOfStates()).isEqualTo(1999);
+
+        String witness = assertTimeoutPreemptively(Duration.ofSeconds(10),
+                () -> BasicOperations.getSubsetCounterexample(a1, a2));
+
+        assertThat(witness).hasSize(999);
+        assertThat(BasicOperations.getSubsetCounterexample(a2, a2.union(a1))).isNull();
+    }
+
+    @Test
+    void subsetCounterexample_handlesOperandsSharingFrozenStates() {
+        Automaton f = new RegExp("(ab)*").toAutomaton().freeze();
+        Automaton g = f.optional();
+        Automaton h = f.concatenate(new RegExp("c").toAutomaton());
+
+        assertThat(BasicOperations.getSubsetCounterexample(g, f)).isNull();
+        assertThat(BasicOperations.getSubsetCounterexample(f, g)).isNull();
+        String witness = BasicOperations.getSubsetCounterexample(h, f);
+        assertThat(witness).isNotNull();
+        assertThat(h.run(witness)).isTrue();
+        assertThat(f.run(witness)).isFalse();
+        assertThat(BasicOperations.getSubsetCounterexample(f, h)).isEqualTo("");
+    }
+
+    @Test
+    void intersectionExample_isShortestCommonString() {
+        Automaton a1 = new RegExp("a*b+").toAutomaton();
+        Automaton a2 = new RegExp("(aa)+b*").toAutomaton(false);
+
+        assertThat(a1.intersects(a2)).isTrue();
+        assertThat(BasicOperations.getIntersectionExample(a1, a2)).isEqualTo("aab");
+    }
+
+    @Test
+    void intersectionExample_isNull_whenDisjoint() {
+        Automaton a1 = new RegExp("[0-9]+").toAutomaton();
+        Automaton a2 = new RegExp("[a-z]*").toAutomaton(false);
+
+        assertThat(a1.intersects(a2)).isFalse();
+        assertThat(BasicOperations.getIntersectionExample(a1, a2)).isNull();
+    }
+
+    @Test
+    void naryIntersection_equalsPairwiseIntersection() {
+        Automaton a1 = new RegExp("[a-c]*").toAutomaton();
+        Automaton a2 = new RegExp("(a|b)*c?").toAutomaton(false);
+        Automaton a3 = new RegExp(".*b.*").toAutomaton();
+
+        Automaton product = BasicOperations.intersection(Arrays.asList(a1, a2, a3));
+
+        assertThat(product).isEqualTo(a1.intersection(a2).intersection(a3));
+        assertThat(product.run("abc")).isTrue();
+        assertThat(product.run("ac")).isFalse();
+    }
+
+    @Test
+    void naryIntersection_isEmpty_whenAnyComponentIsDisjoint() {
+        Automaton product = BasicOperations.intersection(Arrays.asList(
+                new RegExp("a+").toAutomaton(),
+                new RegExp("a*b").toAutomaton(),
+                new RegExp("a{2,}").toAutomaton()));
+
+        assertThat(product.isEmpty()).isTrue();
+    }
+
+    @Test
+    void minimalUnion_equalsMinimizedUnion() {
+        List<Automaton> l = new ArrayList<>();
+        for (int i = 0; i < 200; i++)
+            l.add(new RegExp("k" + i + "(x|y)*").toAutomaton(false));
+        l.add(BasicAutomata.makeString("k17"));
+
+        Automaton union = BasicOperations.minimalUnion(l);
+        Automaton expected = BasicOperations.union(l);
+        expected.minimize();
+
+        assertThat(union.isDeterministic()).isTrue();
+        assertThat(union).isEqualTo(expected);
+        assertThat(union.getNumberOfStates()).isEqualTo(expected.getNumberOfStates());
+    }
+
+    @Test
+    void minimalUnion_isEmpty_whenAllComponentsAreEmpty() {
+        assertThat(BasicOperations.minimalUnion(Arrays.asList(BasicAutomata.makeEmpty(), BasicAutomata.makeEmpty())).isEmpty()).isTrue();
+    }
+
+    @Test
+    void repeat_ofCharClass_isMinimalChain() {
+        Automaton a = new RegExp("[a-z0-9]").toAutomaton();
+
+        Automaton r = BasicOperations.repeat(a, 1, 2000);
+
+        assertThat(r.isDeterministic()).isTrue();
+        assertThat(r.getNumberOfStates()).isEqualTo(2001);
+        assertThat(r.run("")).isFalse();
+        assertThat(r.run("a1")).isTrue();
+        assertThat(r.run("A")).isFalse();
+        assertThat(BasicOperations.repeat(a, 3)).isEqualTo(new RegExp("[a-z0-9]{3}[a-z0-9]*").toAutomaton());
+    }
+
+    @Test
+    void frozenAutomaton_isSharedByOperations_andNeverModified() {
+        Automaton a = new RegExp("(ab|cd)+").toAutomaton().freeze();
+        Automaton b = new RegExp("x*").toAutomaton().freeze();
+        String before = a.toString();
+
+        Automaton u = BasicOperations.union(a, b);
+        Automaton c = BasicOperations.concatenate(b, a);
+        Automaton o = BasicOperations.optional(a);
+
+        assertThat(u.getInitialState().getTransitions()).anyMatch(t -> a.getStates().contains(t.getDest()));
+        u.minimize();
+        c.minimize();
+        o.reduce();
+
+        assertThat(a.toString()).isEqualTo(before);
+        assertThat(a.isFrozen()).isTrue();
+        assertThat(u).isEqualTo(new RegExp("(ab|cd)+|x*").toAutomaton());
+        assertThat(c).isEqualTo(new RegExp("x*(ab|cd)+").toAutomaton());
+        assertThat(o).isEqualTo(new RegExp("((ab|cd)+)?").toAutomaton());
+    }
+
+    @Test
+    void frozenAutomaton_isClonedWhenMutationIsAllowed() {
+        Automaton a = new RegExp("a+").toAutomaton().freeze();
+        boolean b = Automaton.setAllowMutate(true);
+        try {
+            Automaton c = BasicOperations.concatenate(a, BasicAutomata.makeChar('b'));
+
+            assertThat(c.run("aab")).isTrue();
+            assertThat(a.run("aa")).isTrue();
+            assertThat(a.run("aab")).isFalse();
+        } finally {
+            Automaton.setAllowMutate(b);
+        }
+    }
+
+    @Test
+    void intersection_ofAutomataSharingFrozenStates() {
+        Automaton f = new RegExp("(ab|cd)+").toAutomaton().freeze();
+        Automaton u = BasicOperations.union(f, new RegExp("x*").toAutomaton());
+        Automaton c = BasicOperations.concatenate(new RegExp("x?").toAutomaton(), f);
+
+        assertThat(u.intersection(c)).isEqualTo(f);
+        assertThat(BasicOperations.getIntersectionExample(c, u)).isEqualTo("ab");
+        assertThat(c.subsetOf(u)).isFalse();
+    }
+
+    @Test
+    void stateCache_isInvalidatedByModification() {
+        Automaton a = new RegExp("ab*").toAutomaton();
+        State[] states = a.getStateArray();
+
+        assertThat(a.getStateArray()).isSameAs(states);
+        assertThat(a.getNumberOfStates()).isEqualTo(2);
+
+        State s = new State();
+        s.setAccept(true);
+        a.getInitialState().addTransition(new Transition('c', s));
+        a.restoreInvariant();
+
+        assertThat(a.getStateArray()).isNotSameAs(states);
+        assertThat(a.getNumberOfStates()).isEqualTo(3);
+        assertThat(a.run("c")).isTrue();
+        assertThat(a.intersection(new RegExp("[a-c]").toAutomaton()).run("c")).isTrue();
+    }
+}
@@ -0,0 +1,60 @@
+package dk.brics.automaton;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BulkCompilerTest {
+
+    @Test
+    void compile_isolatesFailuresAndDeduplicates() {
+        List<BulkCompiler.Request> requests = Arrays.asList(
+                new BulkCompiler.Request("mail", "[a-z]+@[a-z]+"),
+                new BulkCompiler.Request("syntax", "a(b"),
+                new BulkCompiler.Request("large", "(a|b)*a(a|b){20}"),
+                new BulkCompiler.Request("mail2", "[a-z]+@[a-z]+"));
+
+        List<BulkCompiler.Result> results = new BulkCompiler().setDfaBudget(1000).compile(requests);
+
+        assertThat(results).extracting(BulkCompiler.Result::getId).containsExactly("mail", "syntax", "large", "mail2");
+        assertThat(results).extracting(BulkCompiler.Result::getStatus).containsExactly(
+                BulkCompiler.Status.COMPILED, BulkCompiler.Status.FAILED, BulkCompiler.Status.FALLBACK, BulkCompiler.Status.COMPILED);
+        assertThat(results.get(0).getRunAutomaton().run("ab@cd")).isTrue();
+        assertThat(results.get(3).getRunAutomaton()).isSameAs(results.get(0).getRunAutomaton());
+        assertThat(results.get(1).getError()).isInstanceOf(IllegalArgumentException.class);
+        assertThat(results.get(2).getError()).isInstanceOf(DfaBudgetExceededException.class);
+        assertThat(results.get(2).getFallbackAutomaton().run("aabababababababababab")).isTrue();
+        assertThat(results.get(2).getFallbackAutomaton().run("babababababababababab")).isFalse();
+    }
+
+    @Test
+    void compile_stopsAtTimeoutAndReportsProgress() {
+        List<BulkCompiler.Request> requests = new ArrayList<>();
+        requests.add(new BulkCompiler.Request("slow", "(a|b)*a(a|b){18}"));
+        for (int i = 0; i < 100; i++)
+            requests.add(new BulkCompiler.Request("r" + i, "k" + i + "[0-9]{2,5}(x|y)*"));
+        List<Integer> progress = new ArrayList<>();
+
+        // a zero timeout has passed when a compilation first checks its deadline, independently of the clock
+        List<BulkCompiler.Result> results = new BulkCompiler()
+                .setDfaBudget(Long.MAX_VALUE)
+                .setTimeout(0, TimeUnit.MILLISECONDS)
+                .setFallback(false)
+                .setProgressListener((done, total) -> progress.add(done))
+                .compile(requests);
+
+        assertThat(results).extracting(BulkCompiler.Result::getStatus).containsOnly(BulkCompiler.Status.FAILED);
+        assertThat(results).allMatch(r -> r.getError() instanceof TimeBudgetExceededException);
+        assertThat(results).allMatch(r -> r.getFallbackAutomaton() == null);
+        assertThat(progress).isSorted().hasSize(101).endsWith(101);
+
+        results = new BulkCompiler().setTimeout(10, TimeUnit.MINUTES).compile(requests.subList(1, requests.size()));
+
+        assertThat(results).extracting(BulkCompiler.Result::getStatus).containsOnly(BulkCompiler.Status.COMPILED);
+    }
+}
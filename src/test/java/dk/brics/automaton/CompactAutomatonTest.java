@@ -0,0 +1,56 @@
+package dk.brics.automaton;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CompactAutomatonTest {
+
+    @Test
+    void conversion_preservesLanguage() {
+        Automaton a = new RegExp("(ab|c)*d?").toAutomaton(false);
+
+        CompactAutomaton c = new CompactAutomaton(a);
+
+        assertThat(c.getNumberOfStates()).isEqualTo(a.getNumberOfStates());
+        assertThat(c.getNumberOfTransitions()).isEqualTo(a.getNumberOfTransitions());
+        assertThat(c.toAutomaton()).isEqualTo(a);
+    }
+
+    @Test
+    void minimize_equalsMinimizedAutomaton() {
+        Automaton a = new RegExp("(a|b)*a(a|b){3}").toAutomaton(false);
+        Automaton expected = a.clone();
+        expected.minimize();
+
+        CompactAutomaton c = new CompactAutomaton(a).minimize();
+
+        assertThat(c.isDeterministic()).isTrue();
+        assertThat(c.getNumberOfStates()).isEqualTo(expected.getNumberOfStates());
+        assertThat(c.toAutomaton()).isEqualTo(expected);
+    }
+
+    @Test
+    void intersection_andReverse_matchAutomatonOperations() {
+        Automaton a1 = new RegExp("[a-c]*b[a-c]*").toAutomaton(false);
+        Automaton a2 = new RegExp("(ab|ac)*").toAutomaton();
+
+        CompactAutomaton c = new CompactAutomaton(a1).intersection(new CompactAutomaton(a2));
+
+        assertThat(c.toAutomaton()).isEqualTo(a1.intersection(a2));
+        assertThat(new CompactAutomaton(a1).reverse().toAutomaton()).isEqualTo(new RegExp("[a-c]*b[a-c]*").toAutomaton());
+        assertThat(new CompactAutomaton(new RegExp("abc").toAutomaton()).reverse().run("cba")).isTrue();
+    }
+
+    @Test
+    void run_acceptsSameStringsAsAutomaton() {
+        Automaton a = new RegExp("x(y|z)*x").toAutomaton(false);
+        CompactAutomaton nfa = new CompactAutomaton(a);
+        CompactAutomaton dfa = nfa.determinize();
+
+        for (String s : new String[] { "", "x", "xx", "xyzx", "xyz", "xyzxx" }) {
+            assertThat(nfa.run(s)).as(s).isEqualTo(a.run(s));
+            assertThat(dfa.run(s)).as(s).isEqualTo(a.run(s));
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package dk.brics.automaton;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CompiledPatternCacheTest {
+
+    @Test
+    void get_returnsCachedRunAutomaton() {
+        CompiledPatternCache cache = new CompiledPatternCache(1 << 20);
+
+        RunAutomaton r = cache.get("[a-z]+@[a-z]+");
+
+        assertThat(cache.get("[a-z]+@[a-z]+")).isSameAs(r);
+        assertThat(cache.get("[a-z]+@[a-z]+", RegExp.ALL, true, false)).isNotSameAs(r);
+        assertThat(cache.get("[a-z]+@[a-z]+", RegExp.NONE, true, true)).isNotSameAs(r);
+        assertThat(r.run("ab@cd")).isTrue();
+        CompiledPatternCache.Stats stats = cache.getStats();
+        assertThat(stats.getHitCount()).isEqualTo(1);
+        assertThat(stats.getMissCount()).isEqualTo(3);
+        assertThat(stats.getSize()).isEqualTo(3);
+    }
+
+    @Test
+    void get_evictsLeastRecentlyUsed() {
+        RunAutomaton sample = new RunAutomaton(new RegExp("a").toAutomaton(), false);
+        CompiledPatternCache cache = new CompiledPatternCache(3 * CompiledPatternCache.getWeight(sample));
+
+        RunAutomaton a = cache.get("a", RegExp.ALL, true, false);
+        cache.get("b", RegExp.ALL, true, false);
+        cache.get("c", RegExp.ALL, true, false);
+        cache.get("a", RegExp.ALL, true, false);
+        cache.get("d", RegExp.ALL, true, false);
+
+        assertThat(cache.get("a", RegExp.ALL, true, false)).isSameAs(a);
+        CompiledPatternCache.Stats stats = cache.getStats();
+        assertThat(stats.getEvictionCount()).isEqualTo(1);
+        assertThat(stats.getSize()).isEqualTo(3);
+        assertThat(stats.getWeight()).isLessThanOrEqualTo(3 * CompiledPatternCache.getWeight(sample));
+        cache.get("b", RegExp.ALL, true, false);
+        assertThat(cache.getStats().getMissCount()).isEqualTo(5);
+    }
+
+    @Test
+    void get_compilesOnceForConcurrentRequests() throws Exception {
+        CompiledPatternCache cache = new CompiledPatternCache(Long.MAX_VALUE);
+        int threads = 8;
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<RunAutomaton>> results = new ArrayList<>();
+            for (int i = 0; i < threads; i++)
+                results.add(executor.submit(() -> {
+                    start.await();
+                    return cache.get("(a|b)*a(a|b){10}", RegExp.ALL, false, true);
+                }));
+            start.countDown();
+            RunAutomaton r = results.get(0).get();
+            for (Future<RunAutomaton> f : results)
+                assertThat(f.get()).isSameAs(r);
+        } finally {
+            executor.shutdown();
+        }
+
+        assertThat(cache.getStats().getMissCount()).isEqualTo(1);
+        assertThat(cache.getStats().getHitCount()).isEqualTo(threads - 1);
+    }
+
+    @Test
+    void get_doesNotCacheFailures() {
+        CompiledPatternCache cache = new CompiledPatternCache(1 << 20);
+
+        assertThatThrownBy(() -> cache.get("(ab")).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> cache.get("(ab")).isInstanceOf(IllegalArgumentException.class);
+
+        assertThat(cache.getStats().getFailureCount()).isEqualTo(2);
+        assertThat(cache.getStats().getSize()).isEqualTo(0);
+    }
+
+    @Test
+    void get_compilesInContextOfCache() {
+        String p = "(a|b)*a(a|b){10}";
+        AutomatonContext low = new AutomatonContext().setDfaBudget(10);
+        CompiledPatternCache cache = new CompiledPatternCache(1 << 20);
+        CompiledPatternCache limited = new CompiledPatternCache(1 << 20, low);
+
+        assertThatThrownBy(() -> low.call(() -> new RegExp(p).toAutomaton())).isInstanceOf(DfaBudgetExceededException.class);
+        RunAutomaton r = low.call(() -> cache.get(p));
+        assertThat(r.run("abbbbbbbbbb")).isTrue();
+        assertThat(r.run("bbbbbbbbbbb")).isFalse();
+        assertThatThrownBy(() -> limited.get(p)).isInstanceOf(DfaBudgetExceededException.class);
+        assertThat(limited.get("ab*").run("abb")).isTrue();
+    }
+}
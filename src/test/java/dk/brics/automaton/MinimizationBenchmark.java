@@ -0,0 +1,237 @@
+/*
+ * dk.brics.automaton
+ * 
+ * Copyright (c) 2001-2017 Anders Moeller
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package dk.brics.automaton;
+
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Random;
+
+/**
+ * Benchmark of the minimization algorithms, validating the choices made by
+ * {@link MinimizationOperations#minimizeSubsetOrBrzozowski(Automaton)}.
+ * <p>
+ * For each pattern, the nondeterministic automaton and the determinized automaton are 
+ * minimized with each algorithm. Random deterministic automata with different numbers of states, 
+ * alphabet partitions and transitions per state are minimized in the same way. A result is validated 
+ * if <code>minimizeSubsetOrBrzozowski</code> (including the time for the trial determinizations) 
+ * is within a factor {@value #TOLERANCE} (plus {@value #SLACK_MICROS} microseconds) of the fastest algorithm.
+ * Run from the test classpath with <code>java dk.brics.automaton.MinimizationBenchmark</code>;
+ * the exit status is 1 if some selection is not validated.
+ */
+final public class MinimizationBenchmark {
+	
+	static final String[] PATTERNS = {
+		"(a|b)*a(a|b){3}",
+		"(a|b)*a(a|b){8}",
+		"(a|b)*a(a|b){11}",
+		"(a|b){6}a(a|b)*",
+		"(a|b){12}a(a|b)*",
+		"[a-z]*(foo|bar|baz)[0-9]+",
+		"([a-z]+@[a-z]+\\.(com|org))+",
+		"(ab|cd|ef)*(x[a-m]*|y[n-z]*)+z",
+		"((a|b)*c(a|b)*c)*",
+		"[0-9a-f]{1,4}(:[0-9a-f]{1,4}){3}(/[0-9]+)*",
+		"(.*[0-9].*&.*[a-z].*&.{8,})",
+	};
+	
+	static final int[] ALGORITHMS = {
+		Automaton.MINIMIZE_HUFFMAN, 
+		Automaton.MINIMIZE_BRZOZOWSKI, 
+		Automaton.MINIMIZE_HOPCROFT, 
+		Automaton.MINIMIZE_VALMARI, 
+		Automaton.MINIMIZE_PARALLEL,
+	};
+	
+	static final String[] NAMES = { "huffman", "brzozowski", "hopcroft", "valmari", "parallel", "subset/brz" };
+	
+	/**
+	 * Random deterministic automata: number of states, size of the alphabet, transitions per state.
+	 * Brzozowski's algorithm is not run on these, as the reverse automata blow up.
+	 */
+	static final int[][] RANDOM = {
+		{ 200, 2, 2 },
+		{ 200, 256, 1 },
+		{ 200, 256, 8 },
+		{ 2000, 2, 2 },
+		{ 2000, 256, 1 },
+		{ 2000, 2048, 8 },
+	};
+	
+	/** Maximum number of states of the determinized automaton for running Huffman's quadratic algorithm. */
+	static final int HUFFMAN_LIMIT = 2000;
+	
+	/** Maximum number of states of the random automata for running Huffman's algorithm. */
+	static final int RANDOM_HUFFMAN_LIMIT = 200;
+	
+	static final int REPETITIONS = 5;
+	
+	static final double TOLERANCE = 1.5;
+	
+	static final long SLACK_MICROS = 200;
+	
+	private MinimizationBenchmark() {}
+	
+	/**
+	 * Runs the benchmark and prints the results to standard output.
+	 */
+	public static void main(String[] args) {
+		System.exit(run(System.out) ? 0 : 1);
+	}
+	
+	/**
+	 * Runs the benchmark and prints the running times (in microseconds) to the given stream.
+	 * @return true if all selections are validated
+	 */
+	public static boolean run(PrintStream out) {
+		return new AutomatonContext().setDfaBudget(Long.MAX_VALUE).call(() -> {
+			boolean ok = true;
+			out.printf("%-45s %3s %6s", "pattern", "", "states");
+			for (String name : NAMES)
+				out.printf(" %10s", name);
+			out.println();
+			for (String p : PATTERNS)
+				for (int det = 0; det < 2; det++) {
+					Automaton a = new RegExp(p).toAutomaton(false);
+					if (det == 1)
+						a.determinize();
+					Automaton d = a.clone();
+					d.determinize();
+					long[] times = time(a, d.getNumberOfStates() <= HUFFMAN_LIMIT, true);
+					long best = Long.MAX_VALUE;
+					for (int i = 0; i < ALGORITHMS.length; i++)
+						if (times[i] >= 0)
+							best = Math.min(best, times[i]);
+					boolean valid = times[ALGORITHMS.length] <= best * TOLERANCE + SLACK_MICROS;
+					ok &= valid;
+					out.printf("%-45s %3s %6d", p, det == 1 ? "DFA" : "NFA", a.getNumberOfStates());
+					for (long t : times)
+						out.printf(" %10s", t < 0 ? "-" : Long.toString(t));
+					out.println(valid ? "" : "  NOT VALIDATED");
+				}
+			for (int[] r : RANDOM) {
+				Automaton a = makeRandom(r[0], r[1], r[2], r[0] * 31 + r[1] * 7 + r[2]);
+				long[] times = time(a, a.getNumberOfStates() <= RANDOM_HUFFMAN_LIMIT, false);
+				long best = Long.MAX_VALUE;
+				for (int i = 0; i < ALGORITHMS.length; i++)
+					if (times[i] >= 0)
+						best = Math.min(best, times[i]);
+				boolean valid = times[ALGORITHMS.length] <= best * TOLERANCE + SLACK_MICROS;
+				ok &= valid;
+				out.printf("%-45s %3s %6d", "random, alphabet " + r[1] + ", " + r[2] + " per state", "DFA", a.getNumberOfStates());
+				for (long t : times)
+					out.printf(" %10s", t < 0 ? "-" : Long.toString(t));
+				out.println(valid ? "" : "  NOT VALIDATED");
+			}
+			return ok;
+		});
+	}
+	
+	/**
+	 * Returns a random deterministic automaton with <code>n</code> states, where each state has
+	 * transitions on <code>d</code> of <code>k</code> characters. The states form a chain, so they are all
+	 * reachable, and the other transitions have random destinations. 
+	 */
+	static Automaton makeRandom(int n, int k, int d, long seed) {
+		Random random = new Random(seed);
+		State[] states = new State[n];
+		for (int i = 0; i < n; i++) {
+			states[i] = new State();
+			states[i].setAccept(random.nextInt(3) == 0);
+		}
+		for (int i = 0; i < n; i++) {
+			BitSet used = new BitSet();
+			for (int j = 0; j < Math.min(d, k); j++) {
+				int c;
+				do
+					c = random.nextInt(k);
+				while (used.get(c));
+				used.set(c);
+				State to = j == 0 && i + 1 < n ? states[i + 1] : states[random.nextInt(n)];
+				states[i].addTransition(new Transition((char)('a' + 2 * c), to));
+			}
+		}
+		Automaton a = new Automaton();
+		a.setInitialState(states[0]);
+		a.setDeterministic(true);
+		a.restoreInvariant();
+		return a;
+	}
+	
+	/**
+	 * Returns the best running times in microseconds of minimizing clones of the given automaton 
+	 * with each algorithm, followed by <code>minimizeSubsetOrBrzozowski</code>, or -1 for algorithms that are skipped.
+	 * The algorithms are run in turn, and the first round is not timed. The garbage collector is run 
+	 * before each run to avoid charging one algorithm with the garbage of another.
+	 */
+	private static long[] time(Automaton a, boolean huffman, boolean brzozowski) {
+		long[] times = new long[ALGORITHMS.length + 1];
+		Arrays.fill(times, Long.MAX_VALUE);
+		for (int r = 0; r <= REPETITIONS; r++)
+			for (int i = 0; i <= ALGORITHMS.length; i++) {
+				int algorithm = i < ALGORITHMS.length ? ALGORITHMS[i] : Automaton.MINIMIZE_SUBSET_OR_BRZOZOWSKI;
+				if ((algorithm == Automaton.MINIMIZE_HUFFMAN && !huffman) || (algorithm == Automaton.MINIMIZE_BRZOZOWSKI && !brzozowski)) {
+					times[i] = -1;
+					continue;
+				}
+				Automaton b = a.clone();
+				System.gc();
+				long t = System.nanoTime();
+				minimize(b, algorithm);
+				t = System.nanoTime() - t;
+				if (r > 0)
+					times[i] = Math.min(times[i], t / 1000);
+			}
+		return times;
+	}
+	
+	private static void minimize(Automaton a, int algorithm) {
+		switch (algorithm) {
+		case Automaton.MINIMIZE_HUFFMAN:
+			MinimizationOperations.minimizeHuffman(a);
+			break;
+		case Automaton.MINIMIZE_BRZOZOWSKI:
+			MinimizationOperations.minimizeBrzozowski(a);
+			break;
+		case Automaton.MINIMIZE_HOPCROFT:
+			MinimizationOperations.minimizeHopcroft(a);
+			break;
+		case Automaton.MINIMIZE_VALMARI:
+			MinimizationOperations.minimizeValmari(a);
+			break;
+		case Automaton.MINIMIZE_PARALLEL:
+			MinimizationOperations.minimizeParallel(a);
+			break;
+		default:
+			MinimizationOperations.minimizeSubsetOrBrzozowski(a);
+		}
+	}
+}
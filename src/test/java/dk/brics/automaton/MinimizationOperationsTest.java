@@ -0,0 +1,144 @@
+package dk.brics.automaton;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MinimizationOperationsTest {
+
+    private static Automaton minimize(String regexp, int algorithm) {
+        return new AutomatonContext().setMinimization(algorithm).setDfaBudget(100_000).call(() -> {
+            Automaton a = new RegExp(regexp).toAutomaton(false);
+            a.minimize();
+            return a;
+        });
+    }
+
+    @Test
+    void parallel_agreesWithHopcroft() {
+        String[] patterns = { "(ab|cd)*e?", "[a-f]+x[^a]*", "(a|b)*a(a|b){4}", "()", "#", "([0-9]{1,3}\\.){3}[0-9]{1,3}", "(a*b*)*c&.*bc" };
+        for (String p : patterns) {
+            Automaton expected = minimize(p, Automaton.MINIMIZE_HOPCROFT);
+            Automaton actual = minimize(p, Automaton.MINIMIZE_PARALLEL);
+
+            assertThat(actual.getNumberOfStates()).as(p).isEqualTo(expected.getNumberOfStates());
+            assertThat(actual.getNumberOfTransitions()).as(p).isEqualTo(expected.getNumberOfTransitions());
+            assertThat(actual.fingerprint()).as(p).isEqualTo(expected.fingerprint());
+        }
+    }
+
+    @Test
+    void parallel_minimizesLargeAutomaton() {
+        Automaton a = minimize("(a|b)*a(a|b){12}", Automaton.MINIMIZE_PARALLEL);
+
+        assertThat(a.getNumberOfStates()).isEqualTo(8192);
+        assertThat(a.run("baabababababab")).isTrue();
+        assertThat(a.run("abbbbbbbbbbbbb")).isFalse();
+    }
+
+    @Test
+    void parallel_mergesDeadStatesIntoSink() {
+        Automaton a = new Automaton();
+        State s = new State();
+        State dead = new State();
+        s.setAccept(true);
+        a.getInitialState().addTransition(new Transition('a', s));
+        a.getInitialState().addTransition(new Transition('b', dead));
+        dead.addTransition(new Transition('c', dead));
+
+        new AutomatonContext().setMinimization(Automaton.MINIMIZE_PARALLEL).run(a::minimize);
+
+        assertThat(a.getNumberOfStates()).isEqualTo(2);
+        assertThat(a.getNumberOfTransitions()).isEqualTo(1);
+        assertThat(a.run("a")).isTrue();
+    }
+
+    @Test
+    void subsetOrBrzozowski_agreesWithHopcroft() {
+        String[] patterns = { "(a|b)*a(a|b){8}", "(a|b){8}a(a|b)*", "(ab|cd)*e?", "[a-f]+x[^a]*", "(a*b*)*c&.*bc", "()" };
+        for (String p : patterns) {
+            Automaton expected = minimize(p, Automaton.MINIMIZE_HOPCROFT);
+            Automaton actual = minimize(p, Automaton.MINIMIZE_SUBSET_OR_BRZOZOWSKI);
+
+            assertThat(actual.isDeterministic()).as(p).isTrue();
+            assertThat(actual.getNumberOfStates()).as(p).isEqualTo(expected.getNumberOfStates());
+            assertThat(actual.fingerprint()).as(p).isEqualTo(expected.fingerprint());
+        }
+    }
+
+    @Test
+    void incremental_agreesWithHopcroft() {
+        String[] patterns = { "(ab|cd)*e?", "[a-f]+x[^a]*", "(a|b)*a(a|b){4}", "()", "#", "(a*b*)*c&.*bc", "(a{30}|ca{29})b" };
+        for (String p : patterns) {
+            Automaton expected = minimize(p, Automaton.MINIMIZE_HOPCROFT);
+            Automaton actual = new RegExp(p).toAutomaton(false);
+
+            assertThat(MinimizationOperations.minimizeIncremental(actual, 1, TimeUnit.MINUTES)).as(p).isTrue();
+            assertThat(actual.getNumberOfStates()).as(p).isEqualTo(expected.getNumberOfStates());
+            assertThat(actual.fingerprint()).as(p).isEqualTo(expected.fingerprint());
+        }
+    }
+
+    @Test
+    void incremental_partialResultIsEquivalent() throws Exception {
+        Automaton a = BasicOperations.union(Arrays.asList(
+                BasicAutomata.makeString("aaaaaaaaaaaaaaaaaaaaaaaaaaaaaab"),
+                BasicAutomata.makeString("caaaaaaaaaaaaaaaaaaaaaaaaaaaaab")));
+        a.determinize();
+        int states = a.getNumberOfStates();
+        IncrementalMinimizer m = new IncrementalMinimizer(a);
+
+        assertThat(m.run(0, TimeUnit.NANOSECONDS)).isFalse();
+        assertThat(m.isComplete()).isFalse();
+        assertThat(m.getProgress()).isLessThan(1);
+        assertThat(m.getAutomaton().getNumberOfStates()).isLessThanOrEqualTo(states);
+        assertThat(m.getAutomaton()).isEqualTo(a);
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            RunAutomaton r = m.runInBackground(executor).get();
+
+            assertThat(m.isComplete()).isTrue();
+            assertThat(m.getProgress()).isEqualTo(1);
+            assertThat(m.getAutomaton().getNumberOfStates()).isEqualTo(32);
+            assertThat(r.run("aaaaaaaaaaaaaaaaaaaaaaaaaaaaaab")).isTrue();
+            assertThat(r.run("caaaaaaaaaaaaaaaaaaaaaaaaaaaaab")).isTrue();
+            assertThat(r.run("caaaaaaaaaaaaaaaaaaaaaaaaaaaaaab")).isFalse();
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void acyclic_agreesWithHopcroft() {
+        List<Automaton> words = new ArrayList<>();
+        for (String w : new String[] { "if", "int", "interface", "for", "float", "final", "finally", "while", "whilst" })
+            words.add(BasicAutomata.makeString(w));
+        Automaton a = BasicOperations.union(words);
+        Automaton b = a.clone();
+
+        assertThat(MinimizationOperations.minimizeAcyclic(a)).isTrue();
+        MinimizationOperations.minimizeHopcroft(b);
+
+        assertThat(a.isDeterministic()).isTrue();
+        assertThat(a.getNumberOfStates()).isEqualTo(b.getNumberOfStates());
+        assertThat(a.getNumberOfTransitions()).isEqualTo(b.getNumberOfTransitions());
+        assertThat(a.fingerprint()).isEqualTo(b.fingerprint());
+    }
+
+    @Test
+    void acyclic_rejectsCycles() {
+        Automaton a = new RegExp("ab(cd)*").toAutomaton(false);
+        String before = a.toString();
+
+        assertThat(MinimizationOperations.minimizeAcyclic(a)).isFalse();
+        assertThat(a.toString()).isEqualTo(before);
+    }
+}
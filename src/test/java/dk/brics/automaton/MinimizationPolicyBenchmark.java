@@ -0,0 +1,118 @@
+/*
+ * dk.brics.automaton
+ * 
+ * Copyright (c) 2001-2017 Anders Moeller
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package dk.brics.automaton;
+
+import java.io.PrintStream;
+import java.util.Arrays;
+
+/**
+ * Benchmark of the minimization policy of {@link RegExp#toAutomaton()}.
+ * <p>
+ * Each pattern is converted to a minimal automaton with {@link MinimizationPolicy#ALWAYS}
+ * and with the default {@link MinimizationPolicy}, and the results are checked to be equal.
+ * Run from the test classpath with <code>java dk.brics.automaton.MinimizationPolicyBenchmark</code>;
+ * the exit status is 1 if some results differ.
+ */
+final public class MinimizationPolicyBenchmark {
+	
+	static final String[] PATTERNS = {
+		"(a|b)*a(a|b){8}",
+		"[a-z]*(foo|bar|baz)[0-9]+",
+		"([a-z]+@[a-z]+\\.(com|org))+",
+		"(ab|cd|ef)*(x[a-m]*|y[n-z]*)+z",
+		"((a|b)*c(a|b)*c)*",
+		"[0-9a-f]{1,4}(:[0-9a-f]{1,4}){3}(/[0-9]+)*",
+		"(.*[0-9].*&.*[a-z].*&.{8,})",
+		"[a-zA-Z0-9._%+-]+@[a-zA-Z0-9.-]+\\.[a-zA-Z]{2,6}",
+		"(25[0-5]|2[0-4][0-9]|[01]?[0-9][0-9]?)(\\.(25[0-5]|2[0-4][0-9]|[01]?[0-9][0-9]?)){3}",
+		"[0-9]{4}-(0[1-9]|1[0-2])-(0[1-9]|[12][0-9]|3[01])(T([01][0-9]|2[0-3])(:[0-5][0-9]){2}(\\.[0-9]{1,9})?(Z|[+-][0-9]{2}:[0-9]{2}))?",
+		"(https?|ftp)://([a-z0-9-]+\\.)+[a-z]{2,}(:[0-9]{1,5})?(/[a-zA-Z0-9_.~%-]*)*(\\?[a-z]+=[a-z0-9]*(&[a-z]+=[a-z0-9]*)*)?",
+		"((GET|POST|PUT|DELETE|HEAD) /[a-z/]* HTTP/1\\.[01])",
+		"(((a|b|c)d|e(f|g))h|i(j|k(l|m)))*n",
+		"~(.*(ab|ba).*)&(a|b|c){0,12}",
+		"(x(y|z){2,5}w)*(v(y|z){1,3})+",
+		"([A-Z][a-z]+ ){1,3}[0-9]{1,5}( [A-Z][a-z]+)*",
+		"'([^'\\\\]|\\\\.)*'(, *'([^'\\\\]|\\\\.)*')*",
+		"(if|then|else|while|for|do|return|[a-z_][a-z0-9_]*)",
+	};
+	
+	static final int REPETITIONS = 10;
+	
+	private MinimizationPolicyBenchmark() {}
+	
+	/**
+	 * Runs the benchmark and prints the results to standard output.
+	 */
+	public static void main(String[] args) {
+		System.exit(run(System.out) ? 0 : 1);
+	}
+	
+	/**
+	 * Runs the benchmark and prints the running times (in microseconds) to the given stream.
+	 * @return true if the results of both policies are equal for all patterns
+	 */
+	public static boolean run(PrintStream out) {
+		boolean ok = true;
+		MinimizationPolicy[] policies = { MinimizationPolicy.ALWAYS, new MinimizationPolicy() };
+		AutomatonContext[] contexts = new AutomatonContext[policies.length];
+		for (int i = 0; i < policies.length; i++)
+			contexts[i] = new AutomatonContext().setDfaBudget(Long.MAX_VALUE).setMinimizationPolicy(policies[i]);
+		long[] totals = new long[policies.length];
+		out.printf("%-50s %6s %10s %10s %8s%n", "pattern", "states", "always", "policy", "speedup");
+		for (String p : PATTERNS) {
+			RegExp r = new RegExp(p);
+			long[] times = new long[policies.length];
+			Arrays.fill(times, Long.MAX_VALUE);
+			Automaton[] results = new Automaton[policies.length];
+			for (int k = 0; k <= REPETITIONS; k++)
+				for (int i = 0; i < policies.length; i++) {
+					System.gc();
+					long t = System.nanoTime();
+					results[i] = contexts[i].call(() -> r.toAutomaton());
+					t = System.nanoTime() - t;
+					if (k > 0)
+						times[i] = Math.min(times[i], t / 1000);
+				}
+			boolean equal = results[1].equals(results[0]);
+			ok &= equal;
+			for (int i = 0; i < policies.length; i++)
+				totals[i] += times[i];
+			out.printf("%-50s %6d %10d %10d %8.2f%s%n", abbreviate(p), results[0].getNumberOfStates(), 
+					times[0], times[1], (double)times[0] / Math.max(times[1], 1), equal ? "" : "  DIFFERENT");
+		}
+		out.printf("%-50s %6s %10d %10d %8.2f%n", "total", "", totals[0], totals[1], (double)totals[0] / Math.max(totals[1], 1));
+		return ok;
+	}
+	
+	private static String abbreviate(String s) {
+		return s.length() <= 50 ? s : s.substring(0, 47) + "...";
+	}
+}
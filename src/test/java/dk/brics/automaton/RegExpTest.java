@@ -2,6 +2,14 @@ package dk.brics.automaton;
 
 import org.junit.jupiter.api.Test;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.junit.jupiter.api.Assertions.*;
@@ -62,25 +70,46 @@ class RegExpTest {
 
     @Test
     public void throwException_when_lowerBoundIsTooLarge() {
-        assertThatThrownBy(() -> new RegExp("a{300,1000}"))
+        assertThatThrownBy(() -> new RegExp("(ab){300,1000}"))
                 .isInstanceOf(IllegalArgumentException.class)
                 .hasMessage("bound 300 is too large to be compiled (must be <= 100)");
     }
 
     @Test
     public void throwException_when_upperBoundIsTooLarge() {
-        assertThatThrownBy(() -> new RegExp("a{1,1000}"))
+        assertThatThrownBy(() -> new RegExp("(ab){1,1000}"))
                 .isInstanceOf(IllegalArgumentException.class)
                 .hasMessage("bound 1000 is too large to be compiled (must be <= 100)");
     }
 
     @Test
     public void throwException_when_singleBoundIsTooLarge() {
-        assertThatThrownBy(() -> new RegExp("a{1000}"))
+        assertThatThrownBy(() -> new RegExp("(ab){1000}"))
                 .isInstanceOf(IllegalArgumentException.class)
                 .hasMessage("bound 1000 is too large to be compiled (must be <= 100)");
     }
 
+    @Test
+    public void repetitionOfCharClass_allowsLargeBounds() {
+        Automaton a = new RegExp("[a-z0-9]{1,2000}").toAutomaton();
+        StringBuilder b = new StringBuilder();
+        for (int i = 0; i < 2000; i++)
+            b.append(i % 2 == 0 ? 'x' : '7');
+
+        assertThat(a.getNumberOfStates()).isEqualTo(2001);
+        assertThat(a.run("")).isFalse();
+        assertThat(a.run(b.toString())).isTrue();
+        assertThat(a.run(b + "x")).isFalse();
+        assertThat(new RegExp("\\d{500,}").toAutomaton().getNumberOfStates()).isEqualTo(501);
+        assertThat(new RegExp("[^x]{150}").toAutomaton().run(b.substring(0, 150).replace('x', 'y'))).isTrue();
+        assertThat(new RegExp("a{1000}").toAutomaton()).isEqualTo(BasicAutomata.makeString(b.substring(0, 1000).replaceAll(".", "a")));
+        assertThatThrownBy(() -> new RegExp("(foo|bar){0,500}"))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("bound 500 is too large to be compiled (must be <= 100)");
+        assertThatThrownBy(() -> new AutomatonContext().setDfaBudget(1000).call(() -> new RegExp("[a-z]{1000}").toAutomaton()))
+                .isInstanceOf(DfaBudgetExceededException.class);
+    }
+
     @Test
     public void failToParse_lookAheadAssertion() {
         assertThatThrownBy(() -> new RegExp("(?![a-z]+)"))
@@ -115,4 +144,319 @@ class RegExpTest {
         Automaton auto = regex.toAutomaton();
         System.out.println(auto.toDot());
     }
-}
\ No newline at end of file
+
+    @Test
+    public void identicalSubexpressions_areSharedWithinCompilation() {
+        Automaton named = new RegExp("[a-c]+").toAutomaton();
+        Map<String, Automaton> automata = new HashMap<>();
+        automata.put("w", named);
+
+        Automaton a = new RegExp("([0-9]+\\.){3}[0-9]+|<w>@<w>|(<w>)?").toAutomaton(automata);
+
+        assertThat(a.isFrozen()).isFalse();
+        assertThat(named.isFrozen()).isFalse();
+        assertThat(a).isEqualTo(new RegExp("([0-9]+\\.){3}[0-9]+|[a-c]+@[a-c]+|([a-c]+)?").toAutomaton());
+    }
+
+    @Test
+    public void subexpressionCache_isSharedAcrossCompilations() {
+        SubexpressionCache cache = new SubexpressionCache(100);
+        AutomatonContext context = new AutomatonContext().setSubexpressionCache(cache);
+        Map<String, Automaton> automata = new HashMap<>();
+        automata.put("w", new RegExp("xy").toAutomaton());
+
+        Automaton a = context.call(() -> new RegExp("(ab|cd)*x").toAutomaton());
+        int size = cache.size();
+        Automaton b = context.call(() -> new RegExp("y(ab|cd)*").toAutomaton());
+        Automaton c = context.call(() -> new RegExp("(<w>)*").toAutomaton(automata));
+
+        assertThat(size).isGreaterThan(0);
+        assertThat(cache.size()).isEqualTo(size + 1);
+        assertThat(a.isFrozen()).isFalse();
+        assertThat(a.run("abcdx")).isTrue();
+        assertThat(b.run("yabab")).isTrue();
+        assertThat(c.run("xyxy")).isTrue();
+    }
+
+    @Test
+    public void longPattern_isParsedIntoFlatExpression() {
+        StringBuilder literal = new StringBuilder();
+        StringBuilder alternatives = new StringBuilder();
+        for (int i = 0; i < 100_000; i++)
+            literal.append((char) ('a' + i % 26));
+        for (int i = 0; i < 5_000; i++)
+            alternatives.append(i > 0 ? "|" : "").append("k").append(i);
+
+        RegExp r = new RegExp(literal.toString());
+        RegExp u = new RegExp(alternatives.toString());
+        Automaton a = u.toAutomaton();
+
+        assertThat(r.kind).isEqualTo(RegExp.Kind.REGEXP_STRING);
+        assertThat(r.s).isEqualTo(literal.toString());
+        assertThat(u.kind).isEqualTo(RegExp.Kind.REGEXP_UNION);
+        assertThat(u.exps).hasSize(5_000);
+        assertThat(a.run("k4999")).isTrue();
+        assertThat(a.run("k5000")).isFalse();
+    }
+
+    @Test
+    public void nestedGroups_areParsedIteratively() {
+        StringBuilder b = new StringBuilder();
+        for (int i = 0; i < 20_000; i++)
+            b.append('(');
+        b.append("ab");
+        for (int i = 0; i < 20_000; i++)
+            b.append(')');
+
+        assertThat(new RegExp(b.toString()).toString()).isEqualTo("\"ab\"");
+        assertThat(new RegExp("x(ab|(c|d)|e)y&x.*").toString()).isEqualTo("(x(\"ab\"|c|d|e)y&x(.)*)");
+    }
+
+    @Test
+    public void toString_printsNestedUnionsAndIntersectionsFlat() {
+        assertThat(new RegExp("(a|(b|c))").toString()).isEqualTo("(a|b|c)");
+        assertThat(new RegExp("((a|b)|c)").toString()).isEqualTo("(a|b|c)");
+        assertThat(new RegExp("(a&(b&c))").toString()).isEqualTo("(a&b&c)");
+        assertThat(new RegExp("a(b|c)(d|e)").toString()).isEqualTo("a(b|c)(d|e)");
+    }
+
+    @Test
+    public void minimizationPolicy_decidesIntermediateMinimization() {
+        List<MinimizationPolicy.Operation> parents = new ArrayList<>();
+        MinimizationPolicy never = new MinimizationPolicy() {
+            @Override
+            public boolean minimize(Operation op, Operation parent, Automaton a) {
+                parents.add(parent);
+                return false;
+            }
+        };
+        String p = "~(a(b|c)*)&(x|([a-z]|0){2,4})+";
+
+        Automaton expected = new AutomatonContext().setMinimizationPolicy(MinimizationPolicy.ALWAYS).call(() -> new RegExp(p).toAutomaton());
+        Automaton a = new AutomatonContext().setMinimizationPolicy(never).call(() -> new RegExp(p).toAutomaton());
+        Automaton b = new RegExp(p).toAutomaton();
+
+        assertThat(parents).containsExactlyInAnyOrder(
+                MinimizationPolicy.Operation.INTERSECTION, MinimizationPolicy.Operation.COMPLEMENT,
+                MinimizationPolicy.Operation.CONCATENATION, MinimizationPolicy.Operation.REPEAT,
+                MinimizationPolicy.Operation.INTERSECTION, MinimizationPolicy.Operation.REPEAT,
+                MinimizationPolicy.Operation.UNION, MinimizationPolicy.Operation.REPEAT_COUNTED);
+        assertThat(a.getNumberOfStates()).isEqualTo(expected.getNumberOfStates());
+        assertThat(b.getNumberOfStates()).isEqualTo(expected.getNumberOfStates());
+        assertThat(a).isEqualTo(expected);
+        assertThat(b).isEqualTo(expected);
+    }
+
+    @Test
+    public void estimateComplexity_detectsExponentialWindows() {
+        for (String p : new String[] { ".*a.{12}", "(a|b)*a(a|b){8}", ".*foo", "[a-z]*[0-9]{20}", "~(.*(ab|ba).*)&(a|b|c){0,12}" }) {
+            RegExp r = new RegExp(p);
+            RegExp.Complexity c = r.estimateComplexity();
+
+            assertThat(c.getNfaStatesBound()).as(p).isGreaterThanOrEqualTo(r.toAutomaton(false).getNumberOfStates());
+            assertThat(c.getDfaStatesBound()).as(p).isGreaterThanOrEqualTo(r.toAutomaton().getNumberOfStates());
+            assertThat(c.getDfaStatesEstimate()).as(p).isLessThanOrEqualTo(c.getDfaStatesBound());
+        }
+
+        assertThat(new RegExp(".*a.{12}").estimateComplexity().getDfaStatesEstimate()).isGreaterThanOrEqualTo(4096);
+        assertThat(new RegExp(".*a.{50}").estimateComplexity().getDfaStatesEstimate()).isGreaterThan(1L << 50);
+        assertThat(new RegExp(".*foo").estimateComplexity().getDfaStatesEstimate()).isLessThan(20);
+        assertThat(new RegExp("[a-z]*[0-9]{20}").estimateComplexity().getDfaStatesEstimate()).isLessThan(100);
+        assertThat(new RegExp("<w>x").estimateComplexity().getDfaStatesBound()).isEqualTo(Long.MAX_VALUE);
+    }
+
+    @Test
+    public void parallelCompilation_agreesWithSequential() {
+        StringBuilder b = new StringBuilder();
+        for (int i = 0; i < 50; i++)
+            b.append(i > 0 ? "|" : "").append("k").append(i).append("(ab|c[d-f])*[0-9]{").append(1 + i % 4).append("}");
+        String[] patterns = { b.toString(), "(.*a.*){2,}&(.*b.*){1,}&.*c.*&.*d.*&[a-e]{4,9}", "((ab)*|c)&(a|b|c)*&<n>" };
+        Map<String, Automaton> automata = new HashMap<>();
+        automata.put("n", new RegExp("(ab)*c?").toAutomaton());
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            AutomatonContext context = new AutomatonContext().setCompilationPool(pool);
+            for (String p : patterns) {
+                Automaton expected = new RegExp(p).toAutomaton(automata);
+                Automaton actual = context.call(() -> new RegExp(p).toAutomaton(automata));
+
+                assertThat(actual.getNumberOfStates()).as(p).isEqualTo(expected.getNumberOfStates());
+                assertThat(actual).as(p).isEqualTo(expected);
+            }
+            assertThatThrownBy(() -> context.call(() -> new RegExp("a|b|<m>").toAutomaton(automata)))
+                    .isInstanceOf(IllegalArgumentException.class);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void parallelCompilation_constructsSharedSubexpressionsOnce() {
+        AtomicInteger repeats = new AtomicInteger();
+        MinimizationPolicy policy = new MinimizationPolicy() {
+            @Override
+            public boolean minimize(Operation op, Operation parent, Automaton a) {
+                if (op == Operation.REPEAT)
+                    repeats.incrementAndGet();
+                return super.minimize(op, parent, a);
+            }
+        };
+        AtomicInteger copies = new AtomicInteger();
+        Automaton n = new Automaton() {
+            @Override
+            public Automaton clone() {
+                copies.incrementAndGet();
+                return super.clone();
+            }
+        };
+        n.setInitialState(new RegExp("x[0-9]+").toAutomaton().getInitialState());
+        Map<String, Automaton> automata = new HashMap<>();
+        automata.put("n", n);
+        StringBuilder b = new StringBuilder();
+        for (int i = 0; i < 16; i++)
+            b.append(i > 0 ? "|" : "").append("k").append(i).append("(ab|cd)*<n>");
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            AutomatonContext context = new AutomatonContext().setCompilationPool(pool).setMinimizationPolicy(policy);
+            Automaton a = context.call(() -> new RegExp(b.toString()).toAutomaton(automata));
+
+            assertThat(repeats.get()).isEqualTo(1);
+            assertThat(copies.get()).isEqualTo(1);
+            assertThat(a).isEqualTo(new RegExp(b.toString()).toAutomaton(automata));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void toAutomaton_sharesFrozenNamedAutomata() {
+        Automaton n = new RegExp("(ab)*c?").toAutomaton().freeze();
+        String before = n.toString();
+        Map<String, Automaton> frozen = new HashMap<>();
+        frozen.put("n", n);
+        Map<String, Automaton> plain = new HashMap<>();
+        plain.put("n", n.clone());
+        for (String p : new String[] { "<n>", "<n>x<n>|<n>*", "~<n>&<n>*", "(<n>|d){2,4}<n>?" }) {
+            RegExp r = new RegExp(p);
+            r.setAllowMutate(true);
+            Automaton a = r.toAutomaton(frozen);
+
+            assertThat(a).as(p).isEqualTo(new RegExp(p).toAutomaton(plain));
+            assertThat(a.isFrozen()).as(p).isFalse();
+            assertThat(n.toString()).as(p).isEqualTo(before);
+        }
+
+        // a frozen named automaton that counts the copies made of it
+        int[] copies = new int[1];
+        Automaton counted = new Automaton() {
+            @Override
+            public Automaton clone() {
+                if (isFrozen())
+                    copies[0]++;
+                return super.clone();
+            }
+        };
+        counted.setInitialState(n.clone().getInitialState());
+        counted.freeze();
+        Map<String, Automaton> automata = new HashMap<>();
+        automata.put("n", counted);
+        AutomatonProvider provider = name -> counted;
+        for (String p : new String[] { "<n>|x", "x(<n>)?<n>", "(<n>|d){2,4}" }) {
+            Automaton a = new RegExp(p).toAutomaton(automata);
+            Automaton b = new RegExp(p).toAutomaton(provider, false);
+
+            assertThat(copies[0]).as(p).isZero();
+            assertThat(a).as(p).isEqualTo(new RegExp(p).toAutomaton(plain));
+            assertThat(b).as(p).isEqualTo(a);
+        }
+    }
+
+    @Test
+    public void anchors_areRecordedAndUsedByMatcher() {
+        assertThat(new RegExp("^v?[0-9]+").isStartAnchored()).isTrue();
+        assertThat(new RegExp("^v?[0-9]+").isEndAnchored()).isFalse();
+        assertThat(new RegExp("^a|^b").isStartAnchored()).isTrue();
+        assertThat(new RegExp("^a|b").isStartAnchored()).isFalse();
+        assertThat(new RegExp("a|b$").isEndAnchored()).isFalse();
+        assertThat(new RegExp("(a|b)$").isEndAnchored()).isTrue();
+
+        assertThat(findAll("^v?[0-9]+", "v12 34")).containsExactly(0, 3);
+        assertThat(findAll("^v?[0-9]+", "x12")).isEmpty();
+        assertThat(findAll("[0-9]+$", "12a345")).containsExactly(3, 6);
+        assertThat(findAll("^[0-9]+$", "123a5")).isEmpty();
+        assertThat(findAll("a*$", "baa")).containsExactly(1, 3, 3, 3);
+        assertThat(findAll("^a*", "bbb")).containsExactly(0, 0);
+    }
+
+    @Test
+    public void endAnchoredMatcher_scansInputOnce() {
+        StringBuilder input = new StringBuilder();
+        for (int i = 0; i < 200_000; i++)
+            input.append('a');
+        String s = input.toString();
+        assertThat(findAll("(a|ab)+$", s + "b")).containsExactly(0, 200_001);
+        assertTimeoutPreemptively(Duration.ofSeconds(5), () -> {
+            assertThat(findAll("a+c$", s + "b")).isEmpty();
+            assertThat(findAll("[ab]*b$", s + "b")).containsExactly(0, 200_001);
+        });
+    }
+
+    private static List<Integer> findAll(String pattern, String input) {
+        RegExp regexp = new RegExp(pattern);
+        RunAutomaton runAutomaton = new RunAutomaton(regexp.toAutomaton(), true, regexp.isStartAnchored(), regexp.isEndAnchored());
+        AutomatonMatcher matcher = runAutomaton.newMatcher(input);
+        List<Integer> bounds = new ArrayList<>();
+        while (matcher.find()) {
+            bounds.add(matcher.start());
+            bounds.add(matcher.end());
+        }
+        return bounds;
+    }
+
+    @Test
+    public void simplify_preservesLanguage() {
+        assertThat(new RegExp("a|a").simplify().toString()).isEqualTo("a");
+        assertThat(new RegExp("(x*)*").simplify().toString()).isEqualTo("(x)*");
+        assertThat(new RegExp("(x?)+").simplify().toString()).isEqualTo("(x)*");
+        assertThat(new RegExp("x{0,1}").simplify().toString()).isEqualTo("(x)?");
+        assertThat(new RegExp("a|b|c|[d-f]").simplify().toString()).isEqualTo("[\\a-\\f]");
+        assertThat(new RegExp("abc|abd").simplify().toString()).isEqualTo("\"ab\"[\\c-\\d]");
+        assertThat(new RegExp("^a|^a$").simplify().isStartAnchored()).isTrue();
+
+        String[] patterns = { "foo|foobar|food|fool|bar|baz|bazaar", "((x*)*y|(x?)+z|(x+)?w)*", "(a|\"\")b{1,1}c{0,0}",
+                "~~(ab|ac)&(a.|@)", "(x+){3,}|(x?){2,4}|#", "([a-f]|[0-9]|a|.)*(abc|abd|ab|x){2}" };
+        for (String p : patterns) {
+            RegExp regexp = new RegExp(p);
+            assertThat(regexp.simplify().toAutomaton()).as(p).isEqualTo(regexp.toAutomaton());
+        }
+    }
+
+    @Test
+    public void toAutomatonWithoutMinimization_sharesSubexpressionsWithoutDeterminizing() {
+        String p = "((a|b)*a(a|b){14})?x|((a|b)*a(a|b){14})?y";
+
+        Automaton a = new AutomatonContext().setDfaBudget(100).call(() -> new RegExp(p).toAutomaton(false));
+
+        assertThat(a.isDeterministic()).isFalse();
+        assertThat(a.run("abbbbbbbbbbbbbby")).isTrue();
+        assertThat(a.run("bbbbbbbbbbbbbbbx")).isFalse();
+        assertThat(a.run("x")).isTrue();
+    }
+
+    @Test
+    public void toAutomaton_returnsPrivateStates() {
+        Automaton n = new RegExp("(ab)*c?").toAutomaton().freeze();
+        Map<String, Automaton> automata = new HashMap<>();
+        automata.put("n", n);
+        for (String p : new String[] { "<n>|x", "x<n>", "(de)*f|(de)*f" }) {
+            Automaton a = new RegExp(p).toAutomaton(automata, false);
+            for (State s : a.getStates())
+                s.setAccept(true);
+
+            assertThat(a.isFrozen()).as(p).isFalse();
+            assertThat(a.run("d")).as(p).isEqualTo(p.contains("d"));
+            assertThat(n.run("a")).as(p).isFalse();
+            assertThat(new RegExp(p).toAutomaton(automata, false).run("d")).as(p).isFalse();
+        }
+    }
+}
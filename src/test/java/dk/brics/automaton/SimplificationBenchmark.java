@@ -0,0 +1,122 @@
+/*
+ * dk.brics.automaton
+ * 
+ * Copyright (c) 2001-2017 Anders Moeller
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ * 3. The name of the author may not be used to endorse or promote products
+ *    derived from this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR ``AS IS'' AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY DIRECT, INDIRECT,
+ * INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package dk.brics.automaton;
+
+import java.io.PrintStream;
+
+/**
+ * Benchmark of {@link RegExp#simplify()}.
+ * <p>
+ * Each pattern is converted to a minimal automaton directly and after simplification
+ * (the time of which is included), and the results are checked to be equal. The patterns 
+ * contain the kinds of redundancy found in generated regular expressions.
+ * Run from the test classpath with <code>java dk.brics.automaton.SimplificationBenchmark</code>;
+ * the exit status is 1 if some results differ.
+ */
+final public class SimplificationBenchmark {
+	
+	static final String[] PATTERNS = {
+		"(a|b|c|d|e|f|g|h|i|j|k|l|m|n|o|p|q|r|s|t|u|v|w|x|y|z)+@(a|b|c|d|e|f|g|h|i|j|k|l|m|n|o|p|q|r|s|t|u|v|w|x|y|z)+",
+		"((x*)*y|(x?)+z|(x+)?w)*",
+		"(foo|foo|bar|bar|baz){1,4}",
+		"(0|1|2|3|4|5|6|7|8|9){1,3}(\\.(0|1|2|3|4|5|6|7|8|9){1,3}){3}",
+		"(ab){0,1}(cd){0,1}(ef){0,1}(gh){0,1}(ij){0,1}",
+		"(((a*)*)*|((b?)+)+|((c+)?)*)+d",
+		"(GET /index|GET /images|GET /items|POST /index|POST /items|PUT /items|DELETE /items)( HTTP/1\\.0| HTTP/1\\.1)",
+		"(interface|internal|interval|intern|into|int|integer|integral|instance|instanceof|inline|input|inner)[ \\t]+",
+		"([a-f]|[0-9]|[A-F]|a|b|c|0){8}-([a-f]|[0-9]|[A-F]){4}-([a-f]|[0-9]|[A-F]){4}",
+		keywords(),
+	};
+	
+	static final int REPETITIONS = 10;
+	
+	private SimplificationBenchmark() {}
+	
+	/**
+	 * Returns a union of words with many common prefixes.
+	 */
+	private static String keywords() {
+		String[] stems = { "account", "address", "admin", "append", "apply", "archive", "assert", "assign" };
+		String[] suffixes = { "", "s", "ed", "ing", "er", "ers", "able", "ment", "ments", "ation" };
+		StringBuilder b = new StringBuilder();
+		for (String s : stems)
+			for (String t : suffixes)
+				b.append(b.length() > 0 ? "|" : "").append(s).append(t);
+		return b.toString();
+	}
+	
+	/**
+	 * Runs the benchmark and prints the results to standard output.
+	 */
+	public static void main(String[] args) {
+		System.exit(run(System.out) ? 0 : 1);
+	}
+	
+	/**
+	 * Runs the benchmark and prints the estimated numbers of NFA states and the running times 
+	 * (in microseconds) to the given stream.
+	 * @return true if the automata with and without simplification are equal for all patterns
+	 */
+	public static boolean run(PrintStream out) {
+		boolean ok = true;
+		AutomatonContext context = new AutomatonContext().setDfaBudget(Long.MAX_VALUE);
+		long[] totals = new long[2];
+		out.printf("%-50s %6s %6s %10s %10s %8s%n", "pattern", "nfa", "nfa'", "direct", "simplify", "speedup");
+		for (String p : PATTERNS) {
+			RegExp r = new RegExp(p);
+			long[] times = { Long.MAX_VALUE, Long.MAX_VALUE };
+			Automaton[] results = new Automaton[2];
+			for (int k = 0; k <= REPETITIONS; k++)
+				for (int i = 0; i < 2; i++) {
+					boolean simplify = i == 1;
+					System.gc();
+					long t = System.nanoTime();
+					results[i] = context.call(() -> (simplify ? r.simplify() : r).toAutomaton());
+					t = System.nanoTime() - t;
+					if (k > 0)
+						times[i] = Math.min(times[i], t / 1000);
+				}
+			boolean equal = results[1].equals(results[0]);
+			ok &= equal;
+			for (int i = 0; i < 2; i++)
+				totals[i] += times[i];
+			out.printf("%-50s %6d %6d %10d %10d %8.2f%s%n", abbreviate(p), 
+					r.estimateComplexity().getNfaStatesEstimate(), r.simplify().estimateComplexity().getNfaStatesEstimate(),
+					times[0], times[1], (double)times[0] / Math.max(times[1], 1), equal ? "" : "  DIFFERENT");
+		}
+		out.printf("%-50s %6s %6s %10d %10d %8.2f%n", "total", "", "", totals[0], totals[1], (double)totals[0] / Math.max(totals[1], 1));
+		return ok;
+	}
+	
+	private static String abbreviate(String s) {
+		return s.length() <= 50 ? s : s.substring(0, 47) + "...";
+	}
+}